@@ -34,7 +34,8 @@ public class AonFlowHandler implements AonFlowHandlerIF {
     protected static Logger logger = Logger.getLogger(AonFlowHandler.class);
 
 
-    // set the frequency with which the shared class is polled to see if all threads have finshed their work.
+    // set the frequency with which a handler is polled to see if all its threads have finshed their work,
+    // used only if a handler could not be waited on directly.
 //    static final int POLLING_FREQUENCY_IN_SECONDS = 10;
     static final int POLLING_FREQUENCY_IN_SECONDS = 1;
     
@@ -113,7 +114,7 @@ public class AonFlowHandler implements AonFlowHandlerIF {
             dh.writeDistrictReport ( reportFileName );
         
         logger.info( "setting up SpBuildLoadHandlers." );
-        sp = setupSpBuildLoadHandlers( dh.getTripTableRowSums(), dh.getMulticlassTripTables() );
+        sp = setupSpBuildLoadHandlers( dh.getTripTableRowSums(), dh.getMulticlassSparseTripTables() );
         
         return true;
         
@@ -169,6 +170,13 @@ public class AonFlowHandler implements AonFlowHandlerIF {
         for ( int i=0; i < sp.length; i++ ) {
 
             double[][] handlerResults = sp[i].getResults();
+            
+            // an rpc handler returns null if getResults() failed, e.g. because one of its threads did.
+            if ( handlerResults == null ) {
+                logger.error( "SpBuildLoadHandler " + i + " returned no aon link flows." );
+                throw new RuntimeException( "SpBuildLoadHandler " + i + " returned no aon link flows." );
+            }
+            
             for (int m=0; m < handlerResults.length; m++)
                 for (int k=0; k < handlerResults[m].length; k++)
                     aonFlow[m][k] += handlerResults[m][k];
@@ -180,7 +188,7 @@ public class AonFlowHandler implements AonFlowHandlerIF {
     }
     
     
-    private SpBuildLoadHandlerIF[] setupSpBuildLoadHandlers( double[][] tripTableRowSums, double[][][] multiclassDemandMatrices ) {
+    private SpBuildLoadHandlerIF[] setupSpBuildLoadHandlers( double[][] tripTableRowSums, SparseTripTable[] multiclassDemandMatrices ) {
 
         // get the specific handler names from the config file that begin with the SpBuildLoadHandler handler name.
         String[] spHandlerNames = null;
@@ -217,15 +225,16 @@ public class AonFlowHandler implements AonFlowHandlerIF {
         // get the list of [userclass, origin taz] work elements and distribute work elements by handler and threads in handlers
         int [][][][] workElementsArray = getWorkElementsArray( handlerThreads, totalThreads, tripTableRowSums );        
         
-        // get the demand table row arrays associated with each work element
-        double[][][][] workElementsDemand = getWorkElementDemand ( workElementsArray, multiclassDemandMatrices );
+        // get the destinations with demand and their trips for each work element
+        int[][][][] workElementsDestinations = getWorkElementDestinations ( workElementsArray, multiclassDemandMatrices );
+        double[][][][] workElementsTrips = getWorkElementTrips ( workElementsArray, multiclassDemandMatrices );
         
         
         
         // for each handler name, create a SpBuildLoadHandler, set it up, and start it running
         int returnCount = 0;
         for ( int i=0; i < spHandlerNames.length; i++ ) {
-            returnCount += sp[i].setup( spHandlerNames[i], rpcConfigFile, workElementsArray[i], workElementsDemand[i], nh.getNumUserClasses(), nh.getLinkCount(), nh.getNodeCount(), nh.getNumCentroids(), nh.getIa(), nh.getIb(), nh.getIpa(), nh.getSortedLinkIndexA(), nh.getIndexNode(), nh.getNodeIndex(), nh.getCentroid(), nh.getValidLinksForAllClasses(), nh.setLinkGeneralizedCost(), nh.getTurnPenaltyIndices(), nh.getTurnPenaltyArray() );
+            returnCount += sp[i].setup( spHandlerNames[i], rpcConfigFile, workElementsArray[i], workElementsDestinations[i], workElementsTrips[i], nh.getNumUserClasses(), nh.getLinkCount(), nh.getNodeCount(), nh.getNumCentroids(), nh.getIa(), nh.getIb(), nh.getIpa(), nh.getSortedLinkIndexA(), nh.getIndexNode(), nh.getNodeIndex(), nh.getCentroid(), nh.getValidLinksForAllClasses(), nh.setLinkGeneralizedCost(), nh.getTurnPenaltyIndices(), nh.getTurnPenaltyArray() );
         }
 
 
@@ -236,6 +245,18 @@ public class AonFlowHandler implements AonFlowHandlerIF {
     
     private void waitForAllHandlers() {
         
+        // wait on each handler in turn; each call returns as soon as that handler's threads are done.
+        boolean allReturned = true;
+        for ( int i=0; i < sp.length; i++ ) {
+            if ( ! sp[i].waitForHandler() ) {
+                logger.warn ( "could not wait on SpBuildLoadHandler " + i + ", polling for completion instead." );
+                allReturned = false;
+            }
+        }
+        
+        if ( allReturned )
+            return;
+        
         // wait here until all distributed handlers have indicated they are finished.
         while ( getNumberOfHandlersCompleted () < sp.length ) {
 
@@ -269,11 +290,12 @@ public class AonFlowHandler implements AonFlowHandlerIF {
     // Work elements consist of a [user class, origin taz].
     // There will by numUserClasses*numCentroids total potential work elements.
     // A work element will be created only if there is demand from the origin taz for the user class.
-    // This list will be divided up among the available SpBuildLoadHandler worker threads.
+    // This list will be divided up among the available SpBuildLoadHandlers in proportion to their number of threads.
+    // Each handler gets a single list which its threads share dynamically, so the returned array has one thread dimension per handler.
     private int[][][][] getWorkElementsArray( int[] handlerThreads, int totalThreads, double[][] tripTableRowSums ) {
 
         // create an array of work elements to be split up and distributed to work handlers
-        int[][] workElements = new int[networkNumUserClasses*networkNumCentroids][networkNumCentroids];
+        int[][] workElements = new int[networkNumUserClasses*networkNumCentroids][2];
 
         int numberElements=0;
         for (int m=0; m < networkNumUserClasses; m++) {
@@ -290,32 +312,26 @@ public class AonFlowHandler implements AonFlowHandlerIF {
         }
 
         
-        int numberElementsPerThread = numberElements/totalThreads;
-        int remainder = numberElements - numberElementsPerThread*totalThreads;
-
-        // return the work elements array - int[numHandlers][numThreads][numElements][2]
-        int[][][][] returnElements = new int[handlerThreads.length][][][];
+        // return the work elements array - int[numHandlers][1][numElements][2]
+        int[][][][] returnElements = new int[handlerThreads.length][1][][];
 
         int k = 0;
-        int r = 0;
+        int threadsAssigned = 0;
         for (int i=0; i < handlerThreads.length; i++) {
             
-            returnElements[i] = new int[handlerThreads[i]][][];
-
-            for (int j=0; j < handlerThreads[i]; j++) {
-                int dimension = numberElementsPerThread;
-                if ( r < remainder ) {
-                    dimension++;
-                    r++;
-                }
-                returnElements[i][j] = new int[dimension][2];
+            // the last handler takes whatever is left after rounding.
+            threadsAssigned += handlerThreads[i];
+            int lastElement = (int)( (long)numberElements*threadsAssigned/totalThreads );
+            if ( i == handlerThreads.length - 1 )
+                lastElement = numberElements;
+            
+            int dimension = lastElement - k;
+            returnElements[i][0] = new int[dimension][2];
 
-                for (int m=0; m < dimension; m++) {
-                    returnElements[i][j][m][0] = workElements[k][0];
-                    returnElements[i][j][m][1] = workElements[k][1];
-                    k++;
-                }
-                
+            for (int m=0; m < dimension; m++) {
+                returnElements[i][0][m][0] = workElements[k][0];
+                returnElements[i][0][m][1] = workElements[k][1];
+                k++;
             }
             
         }
@@ -326,21 +342,23 @@ public class AonFlowHandler implements AonFlowHandlerIF {
 
     
     
-    // create a ragged array of demand matrix rows of trips for each work element that will be distributed to handlers and subsequently handler threads.
+    // create ragged arrays of the destinations with trips, and of those trips, in the demand matrix row for each work element that will be
+    // distributed to handlers and subsequently handler threads.  Only the non-zero cells of each row are sent, so loading a tree skips
+    // destinations with no demand.
     // the work elemnts don't change, so these can be set once in the SpBuildLoadHandlers and reused each time a new shortest path tree is loaded.
-    double [][][][] getWorkElementDemand ( int[][][][] workElementArray, double[][][] multiclassDemandMatrices ) {
+    int [][][][] getWorkElementDestinations ( int[][][][] workElementArray, SparseTripTable[] multiclassDemandMatrices ) {
     
-        double [][][][] demandPerElement = new double[workElementArray.length][][][];
+        int [][][][] destinationsPerElement = new int[workElementArray.length][][][];
         
         // loop over handlers
         for (int i=0; i < workElementArray.length; i++) {
             
-            demandPerElement[i] = new double[workElementArray[i].length][][];
+            destinationsPerElement[i] = new int[workElementArray[i].length][][];
             
             // loop over threads per handler
             for (int j=0; j < workElementArray[i].length; j++) {
                 
-                demandPerElement[i][j] = new double[workElementArray[i][j].length][];
+                destinationsPerElement[i][j] = new int[workElementArray[i][j].length][];
 
                 // loop over work elements per thread per handler
                 for (int m=0; m < workElementArray[i][j].length; m++) {
@@ -348,14 +366,40 @@ public class AonFlowHandler implements AonFlowHandlerIF {
                     int userclass =  workElementArray[i][j][m][0];
                     int origTaz =  workElementArray[i][j][m][1];
 
-                    demandPerElement[i][j][m] = new double[multiclassDemandMatrices[userclass][origTaz].length];
+                    destinationsPerElement[i][j][m] = multiclassDemandMatrices[userclass].getRowDestinations( origTaz );
+                    
+                }
+                
+            }
+            
+        }
+        
+        return destinationsPerElement;
+        
+    }
+    
+    
+    double [][][][] getWorkElementTrips ( int[][][][] workElementArray, SparseTripTable[] multiclassDemandMatrices ) {
+    
+        double [][][][] tripsPerElement = new double[workElementArray.length][][][];
+        
+        // loop over handlers
+        for (int i=0; i < workElementArray.length; i++) {
+            
+            tripsPerElement[i] = new double[workElementArray[i].length][][];
+            
+            // loop over threads per handler
+            for (int j=0; j < workElementArray[i].length; j++) {
+                
+                tripsPerElement[i][j] = new double[workElementArray[i][j].length][];
 
-                    // loop over columns in the demand matrix row associated with the userclass and origin taz defined in the work element
-                    for (int c=0; c < multiclassDemandMatrices[userclass][origTaz].length; c++) {
+                // loop over work elements per thread per handler
+                for (int m=0; m < workElementArray[i][j].length; m++) {
                     
-                        demandPerElement[i][j][m][c] = multiclassDemandMatrices[userclass][origTaz][c];
-                        
-                    }
+                    int userclass =  workElementArray[i][j][m][0];
+                    int origTaz =  workElementArray[i][j][m][1];
+
+                    tripsPerElement[i][j][m] = multiclassDemandMatrices[userclass].getRowTrips( origTaz );
                     
                 }
                 
@@ -363,7 +407,19 @@ public class AonFlowHandler implements AonFlowHandlerIF {
             
         }
         
-        return demandPerElement;
+        return tripsPerElement;
+        
+    }
+    
+
+    // trees are saved by default; if they are not, trees are built only as far as the destinations with demand from each origin.
+    public int setSaveShortestPathTrees ( boolean saveTrees ) {
+        
+        int returnCount = 0;
+        for ( int h=0; h < sp.length; h++ )
+            returnCount += sp[h].setSaveShortestPathTrees( saveTrees );
+        
+        return returnCount;
         
     }
     
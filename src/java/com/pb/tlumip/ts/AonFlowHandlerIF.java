@@ -7,5 +7,6 @@ public interface AonFlowHandlerIF {
     public boolean setup( String reportFileName, String rpcConfigFile, String demandOutputFileName, String sdtFileName, String ldtFileName, double ptSampleRate, String ctFileName, String etFileName, int startHour, int endHour, char[] highwayModeCharacters, NetworkHandlerIF nh );
     public double[][] getMulticlassAonLinkFlows ();
     public int[][][] getSavedShortestPathTrees ();
+    public int setSaveShortestPathTrees ( boolean saveTrees );
 
 }
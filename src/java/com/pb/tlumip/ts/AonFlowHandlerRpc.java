@@ -123,4 +123,23 @@ public class AonFlowHandlerRpc implements AonFlowHandlerIF {
         return returnArray;
 
     }
+
+
+    public int setSaveShortestPathTrees ( boolean saveTrees ) {
+
+        int returnValue = -1;
+        
+        try {
+            Vector<Object> params = new Vector<Object>();
+            params.add( saveTrees );
+            returnValue = (Integer)rc.execute(HANDLER_NAME+".setSaveShortestPathTrees", params);
+        } catch (RpcException e) {
+            logger.error( e );
+        } catch (IOException e) {
+            logger.error(  e );
+        }
+        
+        return returnValue;
+
+    }
 }
@@ -34,14 +34,12 @@ import com.pb.common.matrix.ZipMatrixWriter;
 import com.pb.common.matrix.Matrix;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Set;
-import java.util.StringTokenizer;
 import java.util.TreeMap;
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -88,12 +86,15 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
 
     float[] userClassPces;
 
-    double[][][] multiclassVehicleTripTable = null;
+    SparseTripTable[] multiclassVehicleTripTable = null;
     
     double[][] multiclassVehicleTripTableRowSums = null;
 
 	double[][][] multiclassVehicleDistrictTable = null;
     
+    // SDT and LDT trip lists read in this VM, by file path, length and modification time, shared by the DemandHandlers for every period.
+    static final HashMap<String, PersonTripListReader> tripListReaders = new HashMap<String, PersonTripListReader>();
+    
 
 
     public DemandHandler() {
@@ -179,8 +180,6 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     public boolean buildHighwayDemandObject() {
         
         int i=0;
-        int j=0;
-        int k=0;
         
         // load the trips from PT and CT trip lists into multiclass o/d demand matrices for assignment
         try {
@@ -194,13 +193,11 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
             multiclassVehicleTripTable = createMulticlassDemandMatrices ();
             
             
-            multiclassVehicleTripTableRowSums = new double[multiclassVehicleTripTable.length][multiclassVehicleTripTable[0].length];
+            multiclassVehicleTripTableRowSums = new double[multiclassVehicleTripTable.length][];
             
             // summarize the trip table rows for each user class
             for (i=0; i < multiclassVehicleTripTable.length; i++)
-                for (j=0; j < multiclassVehicleTripTable[i].length; j++)
-                    for (k=0; k < multiclassVehicleTripTable[i][j].length; k++)
-                        multiclassVehicleTripTableRowSums[i][j] += multiclassVehicleTripTable[i][j][k];
+                multiclassVehicleTripTableRowSums[i] = multiclassVehicleTripTable[i].getRowSums();
             
             
             return true;
@@ -211,11 +208,9 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
             logger.error ("num zones = " + networkNumCentroids);
             logger.error ("error building multiclass od demand matrices for " + timePeriod + " period.");
             logger.error ("multiclassTripTable.length=" + multiclassVehicleTripTable.length);
-            logger.error ("multiclassTripTable[0].length=" + multiclassVehicleTripTable[0].length);
-            logger.error ("multiclassTripTable[0][0].length=" + multiclassVehicleTripTable[0][0].length);
+            logger.error ("multiclassTripTable[0].getSize()=" + multiclassVehicleTripTable[0].getSize());
             logger.error ("multiclassTripTableRowSums.length=" + multiclassVehicleTripTableRowSums.length);
-            logger.error ("multiclassTripTableRowSums[0].length=" + multiclassVehicleTripTableRowSums[0].length);
-            logger.error ("i=" + i + ", j=" + j + ", k=" + k, e);
+            logger.error ("i=" + i, e);
             throw new RuntimeException();
             
         }
@@ -224,7 +219,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     
     
     public double[] getTripTableRow ( int userClass, int row ) {
-        return multiclassVehicleTripTable[userClass][row];
+        return multiclassVehicleTripTable[userClass].getRow( row );
     }
     
     
@@ -234,8 +229,14 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     }
     
     
+    /**
+     * Return the trip tables as dense arrays, expanded from the sparse tables kept for assignment.
+     */
     public double[][][] getMulticlassTripTables () {
-        return multiclassVehicleTripTable;
+        double[][][] tripTables = new double[multiclassVehicleTripTable.length][][];
+        for (int m=0; m < multiclassVehicleTripTable.length; m++)
+            tripTables[m] = multiclassVehicleTripTable[m].toDense();
+        return tripTables;
     }
     
     
@@ -245,6 +246,36 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     }
     
     
+    public SparseTripTable[] getMulticlassSparseTripTables () {
+        return multiclassVehicleTripTable;
+    }
+    
+    
+    // the sparse tables are sent to other VMs as their arrays, by user class.
+    public int[][] getMulticlassTripTableRowStartsRpc () {
+        int[][] rowStarts = new int[multiclassVehicleTripTable.length][];
+        for (int m=0; m < multiclassVehicleTripTable.length; m++)
+            rowStarts[m] = multiclassVehicleTripTable[m].getRowStart();
+        return rowStarts;
+    }
+    
+    
+    public int[][] getMulticlassTripTableDestinationsRpc () {
+        int[][] destinations = new int[multiclassVehicleTripTable.length][];
+        for (int m=0; m < multiclassVehicleTripTable.length; m++)
+            destinations[m] = multiclassVehicleTripTable[m].getDestinations();
+        return destinations;
+    }
+    
+    
+    public double[][] getMulticlassTripTableTripsRpc () {
+        double[][] trips = new double[multiclassVehicleTripTable.length][];
+        for (int m=0; m < multiclassVehicleTripTable.length; m++)
+            trips[m] = multiclassVehicleTripTable[m].getTrips();
+        return trips;
+    }
+    
+    
     public double[][] getTripTableRowSums () {
         return multiclassVehicleTripTableRowSums;
     }
@@ -255,11 +286,11 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         return rowSums;
     }
     
-    private double[][][] createMulticlassDemandMatrices () {
+    private SparseTripTable[] createMulticlassDemandMatrices () {
         
 		String myDateString;
 		
-    	double[][][] multiclassTripTable = new double[networkNumUserClasses][][];
+    	SparseTripTable[] multiclassTripTable = new SparseTripTable[networkNumUserClasses];
 		
 
 		// check that at least one valid user class has been defined
@@ -286,7 +317,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
             tripModeList.add( String.valueOf(TripModeType.SR2) );
             tripModeList.add( String.valueOf(TripModeType.SR3P) );
             
-			multiclassTripTable[0] = getTripTablesForModes ( tripModeList );
+			multiclassTripTable[0] = getSparseTripTableForModes ( tripModeList );
 		}
 		else {
 			logger.info ("no auto class defined, so " + timePeriod + " PT trip list was not read." );
@@ -299,7 +330,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
 
             myDateString = DateFormat.getDateTimeInstance().format(new Date());
             logger.info ("reading " + timePeriod + " CT trip list at: " + myDateString);
-            double[][][] truckTripTables = getTruckAssignmentGroupTripTableFromCTList ();
+            SparseTripTable[] truckTripTables = getTruckAssignmentGroupTripTableFromCTList ();
 
             // read ET trip list and accumulate into o/d truck trip matrices.
             myDateString = DateFormat.getDateTimeInstance().format(new Date());
@@ -320,12 +351,13 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
                 File outputFile = new File(demandOutputFileName.replace(DEMAND_OUTPUT_MODE_STRING,"" + highwayModeCharacters[m])
                                                                .replace(DEMAND_OUTPUT_TIME_PERIOD_STRING,timePeriod));
                 logger.info("Writing demand matrix: " + outputFile);
-                float[][] demandMatrix = new float[multiclassTripTable[m].length-1][multiclassTripTable[m][0].length-1];
+                float[][] demandMatrix = new float[multiclassTripTable[m].getSize()-1][multiclassTripTable[m].getSize()-1];
                 int[] zones = new int[demandMatrix.length+1];
                 for (int i = 0; i < demandMatrix.length; i++) {
                     zones[i+1] = networkIndexNodeArray[i];
+                    double[] tripRow = multiclassTripTable[m].getRow( i );
                     for (int j = 0; j < demandMatrix[0].length; j++)
-                        demandMatrix[i][j] = (float) multiclassTripTable[m][i][j]/userClassPces[m]; //want actual vehicles, not passenger car equivalents
+                        demandMatrix[i][j] = (float) tripRow[j]/userClassPces[m]; //want actual vehicles, not passenger car equivalents
                 }
                 ZipMatrixWriter zmw = new ZipMatrixWriter(outputFile);
                 String mName = outputFile.getName();
@@ -359,192 +391,150 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     
     public double[][] getTripTablesForModes ( ArrayList<String> tripModes ) {
         
-        double[][] sdtTripTable = getTripTableFromSdtLdtListsForModes ( tripModes, sdtFileName );
-        double[][] ldtTripTable = getTripTableFromSdtLdtListsForModes ( tripModes, ldtFileName );
+        return getSparseTripTableForModes ( tripModes ).toDense();
+            
+    }
+
+    
+    private SparseTripTable getSparseTripTableForModes ( ArrayList<String> tripModes ) {
+        
+        SparseTripTable sdtTripTable = getTripTableFromSdtLdtListsForModes ( tripModes, sdtFileName );
+        SparseTripTable ldtTripTable = getTripTableFromSdtLdtListsForModes ( tripModes, ldtFileName );
 
         // add ldt trips to sdt trip table and return that combined table
-        for (int o=0; o < sdtTripTable.length; o++)
-            for (int d=0; d < sdtTripTable[o].length; d++)
-                sdtTripTable[o][d] += ldtTripTable[o][d];
+        sdtTripTable.addTable ( ldtTripTable );
         
         return sdtTripTable;
             
     }
     
 
-    private double[][] getTripTableFromSdtLdtListsForModes ( ArrayList<String> tripModes, String fileName ) {
+    /**
+     * Return the SDT or LDT trip list reader for fileName, reading the file the first time it is
+     * asked for.  The reader keeps the trips of every period and mode, so trip tables for other
+     * modes, e.g. in each transit assignment, and for the other periods assigned in this VM, do
+     * not read the file again.  A file rewritten since it was read, e.g. by the next model year,
+     * has a new length or modification time, so it is read again.
+     */
+    private PersonTripListReader getTripListReader ( String fileName ) {
         
-        int orig;
-        int dest;
-        int startTime;
-        int o;
-        int d;
-        int totalValid = 0;
-        int totalPeriod = 0;
-        int total = 0;
-        String mode;
-        double totalVehicle = 0;
-
-        BufferedReader in = null;
-        String fileHeader = null;
-        String s;
-        
-        double[][] tripTable = null;
-        try {
-            tripTable = new double[networkNumCentroids+1][networkNumCentroids+1];
-        }
-        catch ( Exception e) {
-            logger.error("could not allocate trip table array for " + networkNumCentroids + " zones.", e);
+        if ( fileName == null || fileName.equals("") ) {
+            logger.error ( "error opening person trip list file: " + fileName, new IOException("null input file name.") );
             throw new RuntimeException();
         }
-
-        TreeMap<String, Integer> totalModeFreqMap = new TreeMap<String, Integer>();
-        TreeMap<String, Integer> periodModeFreqMap = new TreeMap<String, Integer>();
-
         
-
-        // open the SDT or LDT trip list file for reading
-        try {
-            if ( fileName != null && ! fileName.equals("") ) {
-                in = new BufferedReader(new FileReader(fileName));
-                fileHeader = in.readLine();
-            }
-            else {
-                new IOException("null input file name.");
+        File file = new File( fileName );
+        String key = file.getAbsolutePath() + "," + file.length() + "," + file.lastModified();
+        
+        synchronized ( tripListReaders ) {
+            
+            PersonTripListReader reader = tripListReaders.get( key );
+            if ( reader == null || ! reader.isForNetwork( networkNumCentroids, networkNodeIndexArray ) ) {
+            
+                reader = new PersonTripListReader( networkNumCentroids, networkNodeIndexArray );
+                try {
+                    reader.read( fileName );
+                }
+                catch (IOException e) {
+                    logger.error ( String.format("reading trip list file = %s.", fileName), e);
+                    throw new RuntimeException();
+                }
+                catch (Exception e) {
+                    logger.error ( String.format("reading line %d of trip list file = %s.", reader.getLineCount(), fileName), e);
+                    throw new RuntimeException();
+                }
+            
+                logger.info("read " + reader.getLineCount() + " lines from " + fileName + "." );
+                tripListReaders.put( key, reader );
+            
             }
-        }
-        catch (IOException e) {
-            logger.error ( "error opening person trip list file: " + fileName, e );
-        }
         
+            return reader;
         
-
-        // get the field indices for the fields we want to read
-        StringTokenizer st = new StringTokenizer(fileHeader, ",\n\r");
-        int[] intFieldFlags = new int[st.countTokens()];
-        int[] stringFieldFlags = new int[st.countTokens()];
-
-        int i =0;
-        while ( st.hasMoreTokens() ) {
-            s = st.nextToken();
-            if ( s.equals("origin") )
-                intFieldFlags[i] = 1;
-            else if ( s.equals("destination") )
-                intFieldFlags[i] = 2;
-            else if ( s.equals("tripStartTime") )
-                intFieldFlags[i] = 3;
-            else if ( s.equals("tripMode") )
-                stringFieldFlags[i] = 1;
-            i++;
         }
         
-        // define values arrays for 3 ints and 1 String
-        int[] intValues = new int[3+1];
-        String[] stringValues = new String[1+1];
-                
-
-        
-        // parse fields for the values we were interested in.
-        int lineCount =0;
-        try {
-            
-            while ( (s = in.readLine()) != null) {
-                lineCount++;
-                
-                // get the int values
-                i = 0;
-                st = new StringTokenizer(s, ",\n\r");
-                while ( st.hasMoreTokens() ) {
-                    String stringValue = st.nextToken();
-                    if ( intFieldFlags[i] > 0 )
-                        intValues[intFieldFlags[i]] = (int)Float.parseFloat(stringValue);
-                    i++;
-                }
-                
-                // get the String values
-                i = 0;
-                st = new StringTokenizer(s, ",\n\r");
-                while ( st.hasMoreTokens() ) {
-                    String stringValue = st.nextToken();
-                    if ( stringFieldFlags[i] > 0 )
-                        stringValues[stringFieldFlags[i]] = stringValue;
-                    i++;
-                }
-                
-                orig = intValues[1];
-                dest = intValues[2];
-                startTime = intValues[3];
-                mode = stringValues[1];
-                total++;
-
-                int value = 0;
-                if ( totalModeFreqMap.containsKey(mode) )
-                    value = (Integer)totalModeFreqMap.get(mode);
-                totalModeFreqMap.put ( mode, (value+1) );
+    }
+    
 
+    /**
+     * Release the trip list readers kept by the DemandHandlers in this VM.  Called when the demand
+     * for every period of a model run has been built, so the trips aren't held until the next run.
+     */
+    public static void clearTripListReaders () {
+        synchronized ( tripListReaders ) {
+            tripListReaders.clear();
+        }
+    }
+    
 
-                // SDT and LDT use vehicle class 0 (a).
-                double tripFactor = userClassPces[0];
+    private SparseTripTable getTripTableFromSdtLdtListsForModes ( ArrayList<String> tripModes, String fileName ) {
+        
+        int totalValid = 0;
+        int totalPeriod = 0;
+        int total = 0;
+        double totalVehicle = 0;
 
+        SparseTripTable tripTable = new SparseTripTable( networkNumCentroids+1 );
 
+        PersonTripListReader reader = getTripListReader( fileName );
+        int period = reader.addPeriod( startHour, endHour );
+        
+        TreeMap<String, Integer> totalModeFreqMap = new TreeMap<String, Integer>();
+        TreeMap<String, Integer> periodModeFreqMap = new TreeMap<String, Integer>();
 
-                o = networkNodeIndexArray[orig];
-                d = networkNodeIndexArray[dest];
-                
-                if ( tripStartsInCurrentPeriod ( startTime ) ) {
-                        
-                    // accumulate a frequency table of all trips within period by mode
-                    totalPeriod++;
-                    value = 0;
-                    if ( periodModeFreqMap.containsKey(mode) )
-                        value = (Integer)periodModeFreqMap.get(mode);
-                    periodModeFreqMap.put ( mode, (value+1) );
-
-                
-                    // accumulate all specified period and mode person trips.
-                    // highway trips are accumulated as vehicle trips
-                    for (i=0; i < tripModes.size(); i++) {
-                        if ( ((String)tripModes.get(i)).equalsIgnoreCase( mode ) ) {
-                            
-                            double trips = 0.0;
-                            if ( mode.equalsIgnoreCase(TripModeType.SR2.name()) )
-                                trips = tripFactor/2.0;
-                            else if ( mode.equalsIgnoreCase(TripModeType.SR3P.name()) )
-                                trips = tripFactor/AVERAGE_SR3P_AUTO_OCCUPANCY;
-                            else
-                                trips = tripFactor;
-                            
-                            tripTable[o][d] += trips*ptSampleRate;
-                            totalValid++;
-
-                            // accumulate district/district trip summaries by user class
-                            multiclassVehicleDistrictTable[0][alphaDistrictIndex[orig]][alphaDistrictIndex[dest]] += trips*ptSampleRate;
-                            
-                            break;
-                        }
-                        
-                    }
+        // SDT and LDT use vehicle class 0 (a).
+        double tripFactor = userClassPces[0];
 
+        for (int m=0; m < reader.getNumModes(); m++) {
+            
+            String mode = reader.getModeName( m );
+            
+            total += reader.getModeFrequency( m );
+            totalModeFreqMap.put( mode, reader.getModeFrequency( m ) );
+            
+            if ( reader.getPeriodModeFrequency( period, m ) == 0 )
+                continue;
+            
+            // accumulate a frequency table of all trips within period by mode
+            totalPeriod += reader.getPeriodModeFrequency( period, m );
+            periodModeFreqMap.put( mode, reader.getPeriodModeFrequency( period, m ) );
+            
+            boolean specifiedMode = false;
+            for (int i=0; i < tripModes.size(); i++) {
+                if ( tripModes.get(i).equalsIgnoreCase( mode ) ) {
+                    specifiedMode = true;
+                    break;
                 }
-                        
+            }
+            
+            if ( ! specifiedMode )
+                continue;
+            
+            // accumulate all specified period and mode person trips.
+            // highway trips are accumulated as vehicle trips
+            double trips = 0.0;
+            if ( mode.equalsIgnoreCase(TripModeType.SR2.name()) )
+                trips = tripFactor/2.0;
+            else if ( mode.equalsIgnoreCase(TripModeType.SR3P.name()) )
+                trips = tripFactor/AVERAGE_SR3P_AUTO_OCCUPANCY;
+            else
+                trips = tripFactor;
+            
+            int[] packedTrips = reader.getTrips( period, m );
+            int numTrips = reader.getTripCount( period, m );
+            for (int k=0; k < numTrips; k++) {
+                int o = reader.getOrigin( packedTrips[k] );
+                int d = reader.getDestination( packedTrips[k] );
                 
+                tripTable.addTrips( o, d, trips*ptSampleRate );
+                
+                // accumulate district/district trip summaries by user class
+                multiclassVehicleDistrictTable[0][alphaDistrictIndex[networkIndexNodeArray[o]]][alphaDistrictIndex[networkIndexNodeArray[d]]] += trips*ptSampleRate;
             }
-        }
-        catch (NumberFormatException e) {
-            logger.error ( String.format("reading trip list file = %s.", fileName), e);
-            throw new RuntimeException();
-        }
-        catch (IOException e) {
-            logger.error ( String.format("reading trip list file = %s.", fileName), e);
-            throw new RuntimeException();
-        }
-        catch (Exception e) {
-            logger.error ( String.format("reading line %d of trip list file = %s.", lineCount, fileName), e);
-            throw new RuntimeException();
+            totalValid += numTrips;
+            
         }
 
-        logger.info("read " + lineCount + " lines from " + fileName + "." );
-
 
         
         Set<String> keys = periodModeFreqMap.keySet();
@@ -555,7 +545,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         logger.info ( "-----------------------------------------------------" );
         double cumPct = 0.0;
         while ( it.hasNext() ) {
-            mode = (String)it.next();
+            String mode = (String)it.next();
             int value = (Integer)periodModeFreqMap.get(mode);
             double pct = value*100.0/totalPeriod;
             cumPct += pct;
@@ -575,7 +565,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         logger.info ( "-----------------------------------------------------" );
         cumPct = 0.0;
         while ( it.hasNext() ) {
-            mode = (String)it.next();
+            String mode = (String)it.next();
             int value = (Integer)totalModeFreqMap.get(mode);
             double pct = value*100.0/total;
             cumPct += pct;
@@ -587,14 +577,11 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         
         logger.info ( "");
         logger.info ( String.format( "%d person trips read from %s for %d to %d period triptable, %d of which were for specified modes:", totalPeriod, fileName, startHour, endHour, totalValid) );
-        for (i=0; i < tripModes.size(); i++)
+        for (int i=0; i < tripModes.size(); i++)
             logger.info( (String)tripModes.get(i) );
         
 
-        totalVehicle = 0.0;
-        for(i=0; i < tripTable.length; i++)
-            for(int j=0; j < tripTable[i].length; j++)
-                totalVehicle += tripTable[i][j];
+        totalVehicle = tripTable.getTotal();
         
         logger.info ( "");
         logger.info ( String.format( "%.0f total vehicle trips read from %s for %d to %d period triptable:", totalVehicle, fileName, startHour, endHour) );
@@ -607,19 +594,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
 
     private boolean tripStartsInCurrentPeriod ( int tripStartTime ) {
         
-        boolean tripStartsInCurrentPeriod = false;
-        
-        // if startHour > endHour, the period wraps midnight, so two checks are required
-        if ( startHour > endHour) {
-            if ( ( tripStartTime >= startHour && tripStartTime <= 2400 ) || ( tripStartTime >= 0 && tripStartTime <= endHour ) )
-                tripStartsInCurrentPeriod = true;
-        }
-        else {
-            if ( tripStartTime >= startHour && tripStartTime <= endHour )
-                tripStartsInCurrentPeriod = true;
-        }
-        
-        return tripStartsInCurrentPeriod;
+        return PersonTripListReader.tripStartsInPeriod( tripStartTime, startHour, endHour );
         
     }
 
@@ -627,7 +602,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     
     
     
-    private double[][][] getTruckAssignmentGroupTripTableFromCTList () {
+    private SparseTripTable[] getTruckAssignmentGroupTripTableFromCTList () {
 
         int orig;
         int dest;
@@ -644,7 +619,9 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
 
         double[] tripsByUserClass = new double[highwayModeCharacters.length];
         double[] tripsByAssignmentGroup = new double[networkNumUserClasses];
-        double[][][] tripTable = new double[networkNumUserClasses][networkNumCentroids+1][networkNumCentroids+1];
+        SparseTripTable[] tripTable = new SparseTripTable[networkNumUserClasses];
+        for (int i=0; i < tripTable.length; i++)
+            tripTable[i] = new SparseTripTable( networkNumCentroids+1 );
 
 
 
@@ -696,7 +673,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
                     // accumulate all peak period highway mode trips
                     if ( tripStartsInCurrentPeriod ( startTime ) ) {
     
-                        tripTable[group-1][o][d] += tripFactor;
+                        tripTable[group-1].addTrips( o, d, tripFactor );
                         tripsByUserClass[mode-1] += tripFactor;
                         tripsByAssignmentGroup[group-1] += tripFactor;
 
@@ -734,9 +711,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         
         double totalVehicle = 0.0;
         for(int i=0; i < tripTable.length; i++)
-            for(int j=0; j < tripTable[i].length; j++)
-                for(int k=0; k < tripTable[i][j].length; k++)
-                    totalVehicle += tripTable[i][j][k];
+            totalVehicle += tripTable[i].getTotal();
         
         logger.info ( "");
         logger.info ( String.format( "%.0f total vehicle trips read from %s for %d to %d period triptable:", totalVehicle, ctFileName, startHour, endHour) );
@@ -748,7 +723,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
     
     
     
-    private double[][][] getExternalAssignmentGroupTripTableFromETList ( double[][][] tripTable ) {
+    private SparseTripTable[] getExternalAssignmentGroupTripTableFromETList ( SparseTripTable[] tripTable ) {
 
         int orig;
         int dest;
@@ -821,7 +796,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
                     // accumulate all peak period highway mode trips
                     if ( tripStartsInCurrentPeriod ( startTime ) ) {
     
-                        tripTable[group-1][o][d] += truckVolume*tripFactor;
+                        tripTable[group-1].addTrips( o, d, truckVolume*tripFactor );
                         tripsByUserClass[mode-1] += truckVolume*tripFactor;
                         tripsByAssignmentGroup[group-1] += truckVolume*tripFactor;
 
@@ -859,9 +834,7 @@ public class DemandHandler implements DemandHandlerIF, Serializable {
         
         double totalVehicle = 0.0;
         for(int i=0; i < tripTable.length; i++)
-            for(int j=0; j < tripTable[i].length; j++)
-                for(int k=0; k < tripTable[i][j].length; k++)
-                    totalVehicle += tripTable[i][j][k];
+            totalVehicle += tripTable[i].getTotal();
         
         logger.info ( "");
         logger.info ( String.format( "%.0f total external vehicle trips read from %s for %d to %d period triptable:", totalVehicle, etFileName, startHour, endHour) );
@@ -11,6 +11,7 @@ public interface DemandHandlerIF {
     public int logDistrictReport();
     public int writeDistrictReport ( String fileName );    
     public double[][][] getMulticlassTripTables();
+    public SparseTripTable[] getMulticlassSparseTripTables();
     public double[][] getTripTableRowSums();
     public double[] getTripTableRow(int userClass, int row);
     public double[][] getTripTableForMode ( String tripMode );
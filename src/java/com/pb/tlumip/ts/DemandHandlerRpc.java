@@ -179,6 +179,29 @@ public class DemandHandlerRpc implements DemandHandlerIF, Serializable {
     }
     
     
+    public SparseTripTable[] getMulticlassSparseTripTables () {
+
+        SparseTripTable[] tripTables = null;
+        
+        try {
+            int[][] rowStarts = (int[][])rc.execute(HANDLER_NAME+".getMulticlassTripTableRowStartsRpc", new Vector<Object>());
+            int[][] destinations = (int[][])rc.execute(HANDLER_NAME+".getMulticlassTripTableDestinationsRpc", new Vector<Object>());
+            double[][] trips = (double[][])rc.execute(HANDLER_NAME+".getMulticlassTripTableTripsRpc", new Vector<Object>());
+            
+            tripTables = new SparseTripTable[rowStarts.length];
+            for (int m=0; m < tripTables.length; m++)
+                tripTables[m] = new SparseTripTable( rowStarts[m].length - 1, rowStarts[m], destinations[m], trips[m] );
+        } catch (RpcException e) {
+            logger.error( e );
+        } catch (IOException e) {
+            logger.error(  e );
+        }
+
+        return tripTables;
+
+    }
+    
+    
     public double[][] getTripTableRowSums () {
 
         double[][] returnArray = null;
@@ -36,6 +36,27 @@ public class FW {
 
     Logger logger = Logger.getLogger(FW.class);
 
+    // methods for determining the direction of each iteration, set by the FW_DIRECTION property
+    static final int FRANK_WOLFE = 0;
+    static final int CONJUGATE_FRANK_WOLFE = 1;
+    static final int BICONJUGATE_FRANK_WOLFE = 2;
+    static final String[] DIRECTION_NAMES = { "FW", "CFW", "BFW" };
+    
+    // upper bound on the weight given to the previous direction, so some of the new AON flows are always used
+    static final double MAX_CONJUGATE_WEIGHT = 0.9999;
+    
+    // relative flow perturbation and minimum absolute perturbation used to compute vdf derivatives
+    static final double DERIVATIVE_STEP = 1.0e-04;
+    static final double MIN_DERIVATIVE_STEP = 1.0e-02;
+
+    // the line search stops when the objective derivative is reduced to this fraction of its value at the current flows,
+    // or when the step size is known to within LINE_SEARCH_INTERVAL.
+    static final double LINE_SEARCH_TOLERANCE = 1.0e-06;
+    static final double LINE_SEARCH_INTERVAL = 1.0e-07;
+
+    // relative gaps for which the number of iterations needed to reach them is reported
+    static final double[] REPORTED_GAPS = { 0.01, 0.005, 0.001, 0.0005, 0.0001, 0.00005, 0.00001 };
+
     char[] highwayModeCharacters;
     
     ResourceBundle componentRb;
@@ -45,6 +66,26 @@ public class FW {
     
     double [] lambdas;
     
+    int directionMethod = FRANK_WOLFE;
+    
+    // target flows for the current and two previous iterations; flow moves toward targetFlow by lambda
+    double[][] targetFlow;
+    double[][] prevTargetFlow;
+    double[][] prevPrevTargetFlow;
+    
+    // proportion of each iteration's AON flows in the target and current flows, for select link analysis
+    double[] targetProps;
+    double[] prevTargetProps;
+    double[] prevPrevTargetProps;
+    double[] flowProps;
+    
+    double[] directionWeights = new double[3];
+    
+    // vdf derivatives at the current flows, if already computed in this iteration
+    double[] currentVdfDerivatives;
+    
+    int lineSearchEvaluations;
+    
     int numAutoClasses;
     int numLinks;
 	int maxFwIters;
@@ -74,6 +115,22 @@ public class FW {
 
         lambdas = new double[maxFwIters];
 
+        // get the method used for the iteration direction, plain Frank-Wolfe if none is specified
+        try {
+            String direction = componentRb.getString( "FW_DIRECTION" );
+            directionMethod = -1;
+            for (int i=0; i < DIRECTION_NAMES.length; i++)
+                if ( DIRECTION_NAMES[i].equalsIgnoreCase( direction.trim() ) )
+                    directionMethod = i;
+            if ( directionMethod < 0 ) {
+                logger.error ( "FW_DIRECTION specified as: " + direction + ", but must be either 'FW', 'CFW', or 'BFW'." );
+                throw new RuntimeException();
+            }
+        }
+        catch ( MissingResourceException e ) {
+            // do nothing; missing key is valid; plain Frank-Wolfe directions will be used.
+        }
+
         // get network related variables needed in FW object
         numLinks = nh.getLinkCount();
         numAutoClasses = nh.getNumUserClasses();
@@ -110,6 +167,18 @@ public class FW {
     	    double glb = 0.0;
     
     		double[][] flow = new double[numAutoClasses][numLinks];
+            double[] relGaps = new double[maxFwIters];
+            
+            if ( directionMethod != FRANK_WOLFE ) {
+                targetFlow = new double[numAutoClasses][numLinks];
+                prevTargetFlow = new double[numAutoClasses][numLinks];
+                prevPrevTargetFlow = new double[numAutoClasses][numLinks];
+                targetProps = new double[maxFwIters];
+                prevTargetProps = new double[maxFwIters];
+                prevPrevTargetProps = new double[maxFwIters];
+                flowProps = new double[maxFwIters];
+            }
+            logger.info ( "FW iterations will use " + DIRECTION_NAMES[directionMethod] + " directions." );
 
             
             // set validLinks true for a link if true for any of the classes of that link.
@@ -178,6 +247,9 @@ public class FW {
             
             ah.setup( summaryFile, nh.getRpcConfigFileName(), demandOutputFile, globalRb.getString("sdt.person.trips"), globalRb.getString("ldt.vehicle.trips"), ptSampleRate, globalRb.getString("ct.truck.trips"), globalRb.getString("et.truck.trips"), startHour, endHour, highwayModeCharacters, nh );
             
+            // trees are needed in full only if they're written to the path file; otherwise each is built only as far as its origin's demand.
+            ah.setSaveShortestPathTrees( pathDiskObjectFile != null );
+            
             
             // loop thru FW iterations
             for (int iter=0; iter < maxFwIters; iter++) {
@@ -206,9 +278,15 @@ public class FW {
                 }
                     
                 
-                // use bisect to do Frank-Wolfe averaging -- returns true if exact solution
+                // the flows to move toward are the AON flows, or for conjugate methods a combination of them with earlier targets.
+                double[][] target = aonFlow;
+                currentVdfDerivatives = null;
+                if ( directionMethod != FRANK_WOLFE )
+                    target = getConjugateTarget ( iter, validLinks, aonFlow, flow );
+                
+                // use a line search to do Frank-Wolfe averaging -- returns true if exact solution
                 if (iter > 0) {
-                    if ( bisect ( iter, validLinks, aonFlow, flow ) ) {
+                    if ( lineSearch ( iter, validLinks, target, flow ) ) {
                         logger.error ("Exact FW optimal solution found.  Unlikely, better check into this!");
                         iter = maxFwIters;
                     }
@@ -227,8 +305,12 @@ public class FW {
                 if ( ( lub - gap ) > glb )
                     glb = lub - gap;
 
+                relGaps[iter] = Math.abs( (lub - glb)/glb );
+                
                 logger.info ("Iteration " + String.format("%3d", iter)
+                                    + ( directionMethod == FRANK_WOLFE ? "" : String.format( "    Betas= %6.4f %6.4f %6.4f", directionWeights[0], directionWeights[1], directionWeights[2] ) )
                                     + "    Lambda= " + String.format("%8.4f", lambdas[iter])
+                                    + "    LsEvals= " + String.format("%2d", ( iter > 0 ? lineSearchEvaluations : 0 ))
                                     + "    LUB= "    + String.format("%16.4f", lub)
                                     + "    Gap= "    + String.format("%16.4f", gap)
                                     + "    GLB= "    + String.format("%16.4f", glb)
@@ -242,7 +324,7 @@ public class FW {
                 for (int k=0; k < totalLinkFlow.length; k++) {
                     totalLinkFlow[k] = 0;
                     for (int m=0; m < numAutoClasses; m++) {
-                        flow[m][k] = flow[m][k] + lambdas[iter]*(aonFlow[m][k] - flow[m][k]);
+                        flow[m][k] = flow[m][k] + lambdas[iter]*(target[m][k] - flow[m][k]);
                         totalLinkFlow[k] += flow[m][k];
                     }
                 }
@@ -259,6 +341,11 @@ public class FW {
                     
                 
                 
+                if ( directionMethod != FRANK_WOLFE ) {
+                    for (int i=0; i <= iter; i++)
+                        flowProps[i] = flowProps[i] + lambdas[iter]*(targetProps[i] - flowProps[i]);
+                }
+                
                 iterationsCompleted++;
                 
                 if ( Math.abs( (lub - glb)/glb ) < fwGap )
@@ -267,6 +354,8 @@ public class FW {
             } // end of FW iter loop
     
     
+            logIterationsPerGap ( relGaps, iterationsCompleted );
+            
             nh.logLinkTimeFreqs ();
             nh.linkSummaryReport(flow);
             
@@ -305,57 +394,301 @@ public class FW {
     }
 
     
-    //Bisection routine to calculate opitmal lambdas during each frank-wolfe iteration.
-    private boolean bisect ( int iter, boolean[] validLinks, double[][] aonFlow, double[][] flow ) {
+    /**
+     * Return the target flows for this iteration for the conjugate (CFW) or bi-conjugate (BFW)
+     * Frank-Wolfe methods.  The target is a combination of the AON flows and the targets of the
+     * previous one (CFW) or two (BFW) iterations, chosen so that the direction from the current
+     * flows is conjugate to the previous directions with respect to the Hessian of the objective
+     * function at the current flows.  That Hessian is diagonal, with the vdf derivatives of the
+     * total link flows on the diagonal.  The first iteration uses the AON flows, and BFW uses a
+     * CFW direction on the second iteration and after any full step.
+     */
+    private double[][] getConjugateTarget ( int iter, boolean[] validLinks, double[][] aonFlow, double[][] flow ) {
+        
+        // rotate the target arrays, keeping the previous two targets
+        double[][] tempFlow = prevPrevTargetFlow;
+        prevPrevTargetFlow = prevTargetFlow;
+        prevTargetFlow = targetFlow;
+        targetFlow = tempFlow;
+        
+        double[] tempProps = prevPrevTargetProps;
+        prevPrevTargetProps = prevTargetProps;
+        prevTargetProps = targetProps;
+        targetProps = tempProps;
+
+        double beta0 = 1.0;
+        double beta1 = 0.0;
+        double beta2 = 0.0;
         
-        double x=0.0;
-        double xleft=0.0;
-        double xright=1.0;
+        if ( iter > 0 ) {
 
-        int numBisectIterations = (int)(Math.log(1.0e-07)/Math.log(0.5) + 1.5);
-        double gap = ofGap( validLinks, aonFlow, flow );
+            double[] x = getTotalFlows( flow );
+            double[] y = getTotalFlows( aonFlow );
+            double[] s1 = getTotalFlows( prevTargetFlow );
+            double[] der = getVdfDerivatives( validLinks, x );
+            currentVdfDerivatives = der;
+            
+            double tau = lambdas[iter-1];
+            
+            if ( directionMethod == BICONJUGATE_FRANK_WOLFE && iter > 1 && tau < 1.0 ) {
+                
+                double[] s2 = getTotalFlows( prevPrevTargetFlow );
+                
+                double muNumerator = 0.0;
+                double muDenominator = 0.0;
+                double nuNumerator = 0.0;
+                double nuDenominator = 0.0;
+                for (int k=0; k < numLinks; k++) {
+                    if ( validLinks[k] ) {
+                        double dFw = y[k] - x[k];
+                        double d1 = s1[k] - x[k];
+                        double d2 = tau*s1[k] - x[k] + (1.0 - tau)*s2[k];
+                        muNumerator += d2*der[k]*dFw;
+                        muDenominator += d2*der[k]*(s2[k] - s1[k]);
+                        nuNumerator += d1*der[k]*dFw;
+                        nuDenominator += d1*der[k]*d1;
+                    }
+                }
 
-        
-        if ( Math.abs(gap) <= 1.0e-07 ) {
+                double mu = 0.0;
+                if ( muDenominator != 0.0 )
+                    mu = Math.max( 0.0, -muNumerator/muDenominator );
+                
+                double nu = mu*tau/(1.0 - tau);
+                if ( nuDenominator != 0.0 )
+                    nu += -nuNumerator/nuDenominator;
+                nu = Math.max( 0.0, nu );
+                
+                beta0 = 1.0/(1.0 + mu + nu);
+                beta1 = nu*beta0;
+                beta2 = mu*beta0;
+                
+            }
+            else {
+                
+                double numerator = 0.0;
+                double denominator = 0.0;
+                for (int k=0; k < numLinks; k++) {
+                    if ( validLinks[k] ) {
+                        double d1 = s1[k] - x[k];
+                        numerator += d1*der[k]*(y[k] - x[k]);
+                        denominator += d1*der[k]*(y[k] - s1[k]);
+                    }
+                }
+
+                double alpha = 0.0;
+                if ( denominator != 0.0 )
+                    alpha = Math.min( MAX_CONJUGATE_WEIGHT, Math.max( 0.0, numerator/denominator ) );
+                
+                beta0 = 1.0 - alpha;
+                beta1 = alpha;
+                
+            }
             
+        }
+
+        for (int m=0; m < numAutoClasses; m++)
+            for (int k=0; k < numLinks; k++)
+                targetFlow[m][k] = beta0*aonFlow[m][k] + beta1*prevTargetFlow[m][k] + beta2*prevPrevTargetFlow[m][k];
+
+        for (int i=0; i < iter; i++)
+            targetProps[i] = beta1*prevTargetProps[i] + beta2*prevPrevTargetProps[i];
+        targetProps[iter] = beta0;
+        
+        directionWeights[0] = beta0;
+        directionWeights[1] = beta1;
+        directionWeights[2] = beta2;
+        
+        return targetFlow;
+        
+    }
+
+    
+
+    private double[] getTotalFlows ( double[][] classFlows ) {
+        
+        double[] totalLinkFlow = new double[numLinks];
+        for (int m=0; m < numAutoClasses; m++)
+            for (int k=0; k < numLinks; k++)
+                totalLinkFlow[k] += classFlows[m][k];
+        
+        return totalLinkFlow;
+    }
+
+    
+
+    /**
+     * Return the derivatives of the link congested times with respect to total link flow, by
+     * forward differences of the vdfs.  Link volumes are left set to the perturbed flows, so
+     * callers must set them again before using link times.
+     */
+    private double[] getVdfDerivatives ( boolean[] validLinks, double[] totalLinkFlow ) {
+
+        nh.setVolau(totalLinkFlow);
+        nh.applyVdfs();
+        double[] cTime = nh.getCongestedTime();
+
+        double[] step = new double[numLinks];
+        double[] perturbedFlow = new double[numLinks];
+        for (int k=0; k < numLinks; k++) {
+            step[k] = Math.max( DERIVATIVE_STEP*totalLinkFlow[k], MIN_DERIVATIVE_STEP );
+            perturbedFlow[k] = totalLinkFlow[k] + step[k];
+        }
+        
+        nh.setVolau(perturbedFlow);
+        nh.applyVdfs();
+        double[] perturbedTime = nh.getCongestedTime();
+        
+        double[] derivatives = new double[numLinks];
+        for (int k=0; k < numLinks; k++)
+            if ( validLinks[k] )
+                derivatives[k] = Math.max( 0.0, (perturbedTime[k] - cTime[k])/step[k] );
+        
+        return derivatives;
+    }
+
+    
+
+    private void logIterationsPerGap ( double[] relGaps, int iterationsCompleted ) {
+
+        logger.info ("");
+        logger.info ( String.format( "%-6s iterations to reach relative gap", DIRECTION_NAMES[directionMethod] ) );
+        for (int g=0; g < REPORTED_GAPS.length; g++) {
+            int iterations = -1;
+            for (int i=0; i < iterationsCompleted; i++) {
+                if ( relGaps[i] < REPORTED_GAPS[g] ) {
+                    iterations = i + 1;
+                    break;
+                }
+            }
+            if ( iterations > 0 )
+                logger.info ( String.format( "%10.4f%% %8d", 100.0*REPORTED_GAPS[g], iterations ) );
+            else
+                logger.info ( String.format( "%10.4f%% %8s", 100.0*REPORTED_GAPS[g], "-" ) );
+        }
+        logger.info ("");
+        
+    }
+
+    
+
+    /**
+     * Line search for the optimal lambda in each frank-wolfe iteration.  The objective function
+     * derivative along the direction, bisectGap(), is increasing in lambda, so its root is found
+     * with a Newton step from lambda=0, using the vdf derivatives at the current flows, followed
+     * by secant steps.  Every step is kept inside the interval known to contain the root, and a
+     * bisection step is taken instead if a step falls outside it or fails to halve it, so no more
+     * link cost evaluations are needed than for bisection.  Typically only a handful are.
+     */
+    private boolean lineSearch ( int iter, boolean[] validLinks, double[][] aonFlow, double[][] flow ) {
+        
+        int maxEvaluations = (int)(Math.log(LINE_SEARCH_INTERVAL)/Math.log(0.5) + 1.5);
+
+        double g0 = bisectGap( 0.0, validLinks, aonFlow, flow );
+        lineSearchEvaluations = 1;
+
+        if ( Math.abs(g0) <= 1.0e-07 ) {
             lambdas[iter] = 0.5;
             return(true);
-            
         }
-        else {
-            
-            if (gap <= 0)
-                xleft = x;
-            else
-                xright = x;
+        
+        // the objective does not decrease in this direction
+        if ( g0 > 0 ) {
+            lambdas[iter] = 0.0;
+            return(false);
+        }
+        
+
+        // the root is in (xleft, xright]; g(xright) is not known until xright has been evaluated.
+        double xleft = 0.0;
+        double xright = 1.0;
+        boolean rightEvaluated = false;
+        
+        
+        // Newton step from 0: the derivative of bisectGap() is the sum of vdf derivative times squared direction flows.
+        double[] der = currentVdfDerivatives;
+        if ( der == null ) {
+            der = getVdfDerivatives( validLinks, getTotalFlows( flow ) );
+            lineSearchEvaluations += 2;
+        }
+
+        double[] totalDirection = getTotalFlows( aonFlow );
+        double[] totalFlow = getTotalFlows( flow );
+        double slope = 0.0;
+        for (int k=0; k < numLinks; k++) {
+            if ( validLinks[k] ) {
+                double d = totalDirection[k] - totalFlow[k];
+                slope += der[k]*d*d;
+            }
+        }
+
+        double x = ( slope > 0.0 ? -g0/slope : 1.0 );
+        if ( x <= 0.0 || x > 1.0 )
+            x = 1.0;
+
+        double xPrev = 0.0;
+        double gPrev = g0;
+        double lambda = -1.0;
+        
+        while ( lineSearchEvaluations < maxEvaluations ) {
+
+            double width = xright - xleft;
             
-            x = (xleft + xright)/2.0;
+            double gap = bisectGap( x, validLinks, aonFlow, flow );
+            lineSearchEvaluations++;
             
             if(logger.isDebugEnabled()) {
-                logger.debug ("iter=" + iter + ", gap=" + gap + ", xleft=" + xleft + ", xright=" + xright + ", x=" + x);
+                logger.debug ("iter=" + iter + ", n=" + lineSearchEvaluations + ", gap=" + gap + ", xleft=" + xleft + ", xright=" + xright + ", x=" + x);
             }
 
-            for (int n=0; n < numBisectIterations; n++) {
-                
-                gap = bisectGap(x, validLinks, aonFlow, flow );
-                
-                if (gap <= 0)
-                    xleft = x;
-                else
-                    xright = x;
-                
-                x = (xleft + xright)/2.0;
-                
-                if(logger.isDebugEnabled()) {
-                    logger.debug ("iter=" + iter + ", n=" + n + ", gap=" + gap + ", xleft=" + xleft + ", xright=" + xright + ", x=" + x);
+            if ( Math.abs(gap) <= LINE_SEARCH_TOLERANCE*Math.abs(g0) ) {
+                lambda = x;
+                break;
+            }
+            
+            if ( gap < 0 ) {
+                xleft = x;
+                // the full step is optimal
+                if ( x == 1.0 ) {
+                    lambda = x;
+                    break;
                 }
-                
             }
+            else {
+                xright = x;
+                rightEvaluated = true;
+            }
+
+            if ( xright - xleft < LINE_SEARCH_INTERVAL ) {
+                lambda = (xleft + xright)/2.0;
+                break;
+            }
+
             
-            lambdas[iter] = x;
-            return(false);
+            // secant step through the last two points, or bisection if it leaves the interval or the interval didn't shrink enough
+            double xNext = -1.0;
+            if ( gap != gPrev )
+                xNext = x - gap*(x - xPrev)/(gap - gPrev);
+            
+            if ( !rightEvaluated ) {
+                if ( xNext <= xleft || xNext > 1.0 )
+                    xNext = 1.0;
+            }
+            else if ( xNext <= xleft || xNext >= xright || xright - xleft > 0.5*width ) {
+                xNext = (xleft + xright)/2.0;
+            }
+
+            xPrev = x;
+            gPrev = gap;
+            x = xNext;
             
         }
+
+        if ( lambda < 0 )
+            lambda = ( rightEvaluated ? (xleft + xright)/2.0 : xleft );
+        
+        lambdas[iter] = lambda;
+        return(false);
         
     }
 
@@ -424,20 +757,27 @@ public class FW {
     }
 
 
+    /**
+     * Return the derivative of the objective function at lambda=x along the direction from flow to
+     * aonFlow: the link costs at flow + x*(aonFlow - flow) times the direction flows (aonFlow - flow).
+     * The direction is not scaled by (1 - x), so the derivative is not 0 at x=1 unless the full step
+     * is optimal, and its own derivative is the sum of vdf derivatives times squared direction flows.
+     */
     private double bisectGap (double x, boolean[] validLinks, double[][] aonFlow, double[][] flow ) {
 
-        double[] totAonFlow = new double[numLinks];
+        double[] direction = new double[numLinks];
         double[] totalLinkFlow = new double[numLinks];
         
         // sum total flow over all user classes for each link 
         for (int k=0; k < totalLinkFlow.length; k++) {
-            totAonFlow[k] = 0.0;
+            double totAonFlow = 0.0;
             totalLinkFlow[k] = 0.0;
             for (int m=0; m < numAutoClasses; m++) {
                 totalLinkFlow[k] += flow[m][k];
-                totAonFlow[k] += aonFlow[m][k];
+                totAonFlow += aonFlow[m][k];
             }
-            totalLinkFlow[k] = totalLinkFlow[k] + x*(totAonFlow[k] - totalLinkFlow[k]);
+            direction[k] = totAonFlow - totalLinkFlow[k];
+            totalLinkFlow[k] = totalLinkFlow[k] + x*direction[k];
         }
         
         nh.setVolau(totalLinkFlow);
@@ -449,8 +789,7 @@ public class FW {
         double gap = 0.0;
         for (int k=0; k < totalLinkFlow.length; k++)
             if ( validLinks[k] )
-                gap += ( cTime[k] + totalLinkCost[k] )*( totAonFlow[k] - totalLinkFlow[k] );
-                //gap += cTime[k]*(totAonFlow[k] - totalLinkFlow[k]) + totalLinkCost[k]*(1.0 - x);
+                gap += ( cTime[k] + totalLinkCost[k] )*direction[k];
 
 
         return(gap);
@@ -461,6 +800,10 @@ public class FW {
     private double[] getFWFlowProps () {
         // Determine the proportions of O/D flow assigned during each FW iteration.
 
+        // with conjugate directions, the proportions were tracked as the targets were combined.
+        if ( directionMethod != FRANK_WOLFE )
+            return flowProps;
+        
         double[] Proportions = new double[maxFwIters];
 
         for (int i=0; i < maxFwIters; i++) {
@@ -496,53 +839,26 @@ public class FW {
     }
 
     
+    /**
+     * Write the trees saved in this iteration, for all user classes, to a ShortestPathTreeArchive
+     * file, from which select link and other path based post-processing can read any tree.
+     */
     private void saveShortestPathTreeFile( String pathName, int iteration, int[][][] savedTrees ){
 
-        FileWriter writer;
-        PrintWriter outStream = null;
-        
         char[] userClassChars = nh.getUserClasses();
-        int numZones = nh.getNumCentroids();
         int numNodes = nh.getNodeCount();
         
+        String fileName = pathName + "savedTrees_" + iteration + ".bin";
         
-        for ( int h=0; h < savedTrees.length; h++ ) {
-            
-            String fileName = pathName + "savedTrees_" + userClassChars[h] + "_" + iteration;
-            
-            
-            try {
-                writer = new FileWriter(new File( fileName ));
-                outStream = new PrintWriter (new BufferedWriter( writer ) );
-            }
-            catch(IOException e){
-                logger.fatal( String.format( "Exception occurred opening saved shortest path tree file: %s.", fileName ) );
-                throw new RuntimeException(e);
-            }
-            
-
-            String headerRecord = String.format("predecessorLinkId Arrays by origin for: iteration=%d, userClass=%c, numZones=%d, numNodes=%d", iteration, userClassChars[h], numZones, numNodes );
-            outStream.println( headerRecord );                    
-            
-            for( int i=0; i < savedTrees[h].length; i++ ) {
-                
-                if ( savedTrees[h][i] != null ) {
-                    outStream.print( i );
-                    outStream.print( " " );
-                    for ( int j=1; j < savedTrees[h][i].length - 1 ; j++ ) {
-                        outStream.print( savedTrees[h][i][j] );
-                        outStream.print( " " );
-                    }
-                    outStream.print( savedTrees[h][i][savedTrees[h][i].length - 1] );
-                    outStream.print( "\n" );
-                }
-                
-            }
-            
-            outStream.close();
-            logger.info( "done writing " + fileName );
-
+        try {
+            ShortestPathTreeArchive.write( fileName, iteration, userClassChars, numNodes + 1, savedTrees );
         }
+        catch(IOException e){
+            logger.fatal( String.format( "Exception occurred writing saved shortest path tree file: %s.", fileName ) );
+            throw new RuntimeException(e);
+        }
+        
+        logger.info( "done writing " + fileName );
 
     }
 
@@ -0,0 +1,234 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Binary heap of candidate links used by the shortest path tree builders.
+ *
+ * Heap elements are link indices ordered by the label of their b-node, with ties broken on the
+ * external b-node number, so the order in which nodes are settled is the same as the original
+ * ShortestPathTreeH.Heap.  At most one element per b-node is held in the heap.  The heap position
+ * of each node is tracked so that a decrease-key is a single percolateUp() from that position,
+ * and positions are stamped with an epoch so that clear() does not have to touch per-node arrays.
+ *
+ */
+public class IndexedLinkHeap {
+
+    protected static Logger logger = Logger.getLogger(IndexedLinkHeap.class);
+
+    static final double COMPARE_EPSILON = 1.0e-07;
+
+    // position value for a node that was added to and then removed from the heap in the current epoch
+    static final int REMOVED = -1;
+
+    private int[] ia;
+    private int[] ib;
+    private int[] indexNode;
+    private double[] nodeLabels;
+
+    private int[] data;
+    private int last;
+
+    // heap position of each node, valid only if nodeEpoch[node] == epoch.
+    private int[] position;
+    private int[] nodeEpoch;
+    private int epoch;
+
+
+    public IndexedLinkHeap( int size, int[] ia, int[] ib, int[] indexNode, double[] nodeLabels ) {
+        this.ia = ia;
+        this.ib = ib;
+        this.indexNode = indexNode;
+        this.nodeLabels = nodeLabels;
+
+        data = new int[size];
+        position = new int[size];
+        nodeEpoch = new int[size];
+        epoch = 1;
+        last = -1;
+    }
+
+
+    public int peek() {
+        if (last == -1) return -1;   // no item left
+        return data[0];              // return element at top of heap
+    }
+
+
+    public boolean isEmpty() {
+        return last == -1;
+    }
+
+
+    public int size() {
+        return last + 1;
+    }
+
+
+    /**
+     * Empty the heap.  Node positions are invalidated by advancing the epoch, so this is O(1)
+     * except when the epoch counter wraps around.
+     */
+    public void clear() {
+        last = -1;
+        epoch++;
+        if ( epoch == Integer.MAX_VALUE ) {
+            Arrays.fill( nodeEpoch, 0 );
+            epoch = 1;
+        }
+    }
+
+
+    /**
+     * Add link x to the heap, or if a link ending at the same b-node is already in the heap,
+     * replace it with x and move it up to reflect the decreased node label.  A node that has
+     * already been removed from the heap since the last clear() is not added again.
+     */
+    public void add(int x) {
+
+        if(logger.isDebugEnabled()) {
+            logger.debug("adding " + x + ", last=" + last + "   " + indexNode[ia[x]] + "   " + indexNode[ib[x]] + "   " + nodeLabels[ib[x]]);
+        }
+
+        int node = ib[x];
+
+        if ( nodeEpoch[node] == epoch ) {
+            int idx = position[node];
+            if ( idx != REMOVED ) {
+                data[idx] = x;
+                percolateUp(idx);
+            }
+        }
+        else {
+            data[++last] = x;
+            position[node] = last;
+            nodeEpoch[node] = epoch;
+            percolateUp(last);
+        }
+
+    }
+
+
+    public int remove() {
+        if (last == -1) return -1;   // no item left
+        return remove(0);
+    }
+
+
+    /**
+     * remove element i from the heap.
+     *
+     */
+    public int remove(int i) {
+        if (last == -1) return -1;   // no item left
+        int min = data[i];
+        position[ib[min]] = REMOVED;
+
+        if (i == last) {
+            last--;
+        }
+        else {
+            int moved = data[last];
+            data[i] = moved;             // move last element into the vacated slot
+            position[ib[moved]] = i;
+            last--;                      // reduce heap size
+            percolateDown(i);            // move element down, or up if it settled in place
+            if ( position[ib[moved]] == i )
+                percolateUp(i);
+        }
+
+        if(logger.isDebugEnabled()) {
+            logger.debug("remove " + min + ", last=" + last);
+        }
+        return min;
+    }
+
+
+    // true if link ka should be above link kb in the heap.
+    private boolean precedes( int ka, int kb ) {
+        double diff = nodeLabels[ib[ka]] - nodeLabels[ib[kb]];
+        if ( diff < -COMPARE_EPSILON )
+            return true;
+        else if ( diff <= COMPARE_EPSILON && indexNode[ib[ka]] < indexNode[ib[kb]] )
+            return true;
+        return false;
+    }
+
+
+    //Let element move up and settle
+    private void percolateUp(int idx) {
+        int k = data[idx];
+        while ( idx > 0 ) {
+            int parentIdx = (idx - 1) / 2;
+            int kParent = data[parentIdx];
+            if ( !precedes( k, kParent ) )
+                break;
+
+            // move larger parent down
+            data[idx] = kParent;
+            position[ib[kParent]] = idx;
+            idx = parentIdx;
+        }
+        data[idx] = k;
+        position[ib[k]] = idx;
+    }
+
+
+    private void percolateDown(int idx) {
+        int k = data[idx];
+        int childIdx = idx * 2 + 1;
+        while ( childIdx <= last ) {
+            int kChild = data[childIdx];
+            if ( childIdx + 1 <= last && precedes( data[childIdx+1], kChild ) ) {
+                childIdx++;
+                kChild = data[childIdx];
+            }
+            if ( !precedes( kChild, k ) )
+                break;
+
+            data[idx] = kChild;
+            position[ib[kChild]] = idx;
+            idx = childIdx;
+            childIdx = idx * 2 + 1;
+        }
+        data[idx] = k;
+        position[ib[k]] = idx;
+    }
+
+
+    //Print heap contents to console (note in sorted order)
+    public void dataPrint() {
+        dataPrint( logger );
+    }
+
+
+    public void dataPrint( Logger printLogger ) {
+        int k;
+
+        for (int i = 0; i <= last; i++) {
+            k = data[i];
+            printLogger.info("[heap]:  i=" + i + ", k=" + k + ", ib[k]=" + ib[k] + ", an=" + indexNode[ia[k]] + ", bn=" + indexNode[ib[k]] + ", nodeLabels[ib]=" + nodeLabels[ib[k]]);
+        }
+        printLogger.info("");
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+
+/**
+ * The client side of NetworkArrayServer.  One connection is kept open and calls from several
+ * threads are made one at a time over it.
+ *
+ */
+public class NetworkArrayClient {
+
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+
+    public NetworkArrayClient ( String host, int port ) throws IOException {
+
+        socket = new Socket( host, port );
+        socket.setTcpNoDelay( true );
+
+        in = new DataInputStream( new BufferedInputStream( socket.getInputStream(), NetworkArrayServer.BUFFER_SIZE ) );
+        out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream(), NetworkArrayServer.BUFFER_SIZE ) );
+
+    }
+
+
+    /**
+     * Call methodName on the server's handler and return the value it returns.  An IOException
+     * means the connection failed; a RuntimeException means the connection is still good but the
+     * method could not be called or threw an exception, whose message is given.
+     */
+    public synchronized Object execute ( String methodName, Object[] args ) throws IOException {
+
+        try {
+            NetworkArrayProtocol.writeValue( out, methodName );
+            NetworkArrayProtocol.writeValue( out, args.length );
+            for (int i=0; i < args.length; i++)
+                NetworkArrayProtocol.writeValue( out, args[i] );
+            out.flush();
+        }
+        catch (IllegalArgumentException e) {
+            // part of the request may have been written, so the connection cannot be used again.
+            close();
+            IOException ioe = new IOException( methodName + ": " + e.getMessage() );
+            ioe.initCause( e );
+            throw ioe;
+        }
+
+        boolean ok = (Boolean)NetworkArrayProtocol.readValue( in );
+        Object result = NetworkArrayProtocol.readValue( in );
+
+        if ( ! ok )
+            throw new RuntimeException( "NetworkArrayServer call failed, " + result );
+
+        return result;
+
+    }
+
+
+    public synchronized void close() {
+        try {
+            socket.close();
+        }
+        catch (IOException e) {
+        }
+    }
+
+}
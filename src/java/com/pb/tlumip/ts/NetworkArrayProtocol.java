@@ -0,0 +1,274 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+
+/**
+ * The binary encoding used between NetworkArrayClient and NetworkArrayServer.  Each value is
+ * written as a one byte type tag, a little-endian int length, and for arrays the elements as
+ * little-endian primitives, so a link array is sent as one block of bytes rather than as XML
+ * text for every element.
+ *
+ * A request is the method name followed by the number of arguments and the arguments.  A reply
+ * is a boolean, true if the method returned normally, followed by the value returned or by the
+ * message of the exception thrown.
+ *
+ * Supported values are null, Integer, Double, Boolean, String, one dimensional int, double,
+ * float, boolean and char arrays, and two dimensional arrays of those types whose rows may be null.
+ *
+ */
+public class NetworkArrayProtocol {
+
+    static final byte NULL = 0;
+    static final byte INT = 1;
+    static final byte DOUBLE = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+    static final byte INT_ARRAY = 5;
+    static final byte DOUBLE_ARRAY = 6;
+    static final byte FLOAT_ARRAY = 7;
+    static final byte BOOLEAN_ARRAY = 8;
+    static final byte CHAR_ARRAY = 9;
+    static final byte ARRAY_2D = 10;
+
+    private NetworkArrayProtocol () {
+    }
+
+
+    public static void writeValue ( DataOutputStream out, Object value ) throws IOException {
+
+        if ( value == null ) {
+            writeHeader( out, NULL, 0 );
+        }
+        else if ( value instanceof Integer ) {
+            writeHeader( out, INT, (Integer)value );
+        }
+        else if ( value instanceof Double ) {
+            writeHeader( out, DOUBLE, 8 );
+            ByteBuffer b = newBuffer( 8 );
+            b.putDouble( (Double)value );
+            out.write( b.array() );
+        }
+        else if ( value instanceof Boolean ) {
+            writeHeader( out, BOOLEAN, ((Boolean)value) ? 1 : 0 );
+        }
+        else if ( value instanceof String ) {
+            byte[] bytes = ((String)value).getBytes( "UTF-8" );
+            writeHeader( out, STRING, bytes.length );
+            out.write( bytes );
+        }
+        else if ( value instanceof int[] ) {
+            int[] array = (int[])value;
+            writeHeader( out, INT_ARRAY, array.length );
+            ByteBuffer b = newBuffer( 4*array.length );
+            b.asIntBuffer().put( array );
+            out.write( b.array() );
+        }
+        else if ( value instanceof double[] ) {
+            double[] array = (double[])value;
+            writeHeader( out, DOUBLE_ARRAY, array.length );
+            ByteBuffer b = newBuffer( 8*array.length );
+            b.asDoubleBuffer().put( array );
+            out.write( b.array() );
+        }
+        else if ( value instanceof float[] ) {
+            float[] array = (float[])value;
+            writeHeader( out, FLOAT_ARRAY, array.length );
+            ByteBuffer b = newBuffer( 4*array.length );
+            b.asFloatBuffer().put( array );
+            out.write( b.array() );
+        }
+        else if ( value instanceof boolean[] ) {
+            boolean[] array = (boolean[])value;
+            writeHeader( out, BOOLEAN_ARRAY, array.length );
+            byte[] bytes = new byte[array.length];
+            for (int i=0; i < array.length; i++)
+                bytes[i] = (byte)( array[i] ? 1 : 0 );
+            out.write( bytes );
+        }
+        else if ( value instanceof char[] ) {
+            char[] array = (char[])value;
+            writeHeader( out, CHAR_ARRAY, array.length );
+            ByteBuffer b = newBuffer( 2*array.length );
+            b.asCharBuffer().put( array );
+            out.write( b.array() );
+        }
+        else if ( value instanceof Object[] && getRowType( value.getClass().getComponentType() ) != NULL ) {
+            Object[] rows = (Object[])value;
+            writeHeader( out, ARRAY_2D, rows.length );
+            out.writeByte( getRowType( value.getClass().getComponentType() ) );
+            for (int i=0; i < rows.length; i++)
+                writeValue( out, rows[i] );
+        }
+        else {
+            throw new IllegalArgumentException( "values of type " + value.getClass().getName() + " cannot be sent." );
+        }
+
+    }
+
+
+    public static Object readValue ( DataInputStream in ) throws IOException {
+
+        byte type = in.readByte();
+        int length = readInt( in );
+
+        switch ( type ) {
+
+            case NULL:
+                return null;
+
+            case INT:
+                return length;
+
+            case DOUBLE:
+                return readBuffer( in, 8 ).getDouble();
+
+            case BOOLEAN:
+                return length != 0;
+
+            case STRING: {
+                byte[] bytes = new byte[length];
+                in.readFully( bytes );
+                return new String( bytes, "UTF-8" );
+            }
+
+            case INT_ARRAY: {
+                int[] array = new int[length];
+                readBuffer( in, 4*length ).asIntBuffer().get( array );
+                return array;
+            }
+
+            case DOUBLE_ARRAY: {
+                double[] array = new double[length];
+                readBuffer( in, 8*length ).asDoubleBuffer().get( array );
+                return array;
+            }
+
+            case FLOAT_ARRAY: {
+                float[] array = new float[length];
+                readBuffer( in, 4*length ).asFloatBuffer().get( array );
+                return array;
+            }
+
+            case BOOLEAN_ARRAY: {
+                byte[] bytes = new byte[length];
+                in.readFully( bytes );
+                boolean[] array = new boolean[length];
+                for (int i=0; i < length; i++)
+                    array[i] = ( bytes[i] != 0 );
+                return array;
+            }
+
+            case CHAR_ARRAY: {
+                char[] array = new char[length];
+                readBuffer( in, 2*length ).asCharBuffer().get( array );
+                return array;
+            }
+
+            case ARRAY_2D: {
+                byte rowType = in.readByte();
+                Object[] rows;
+                switch ( rowType ) {
+                    case INT_ARRAY: rows = new int[length][]; break;
+                    case DOUBLE_ARRAY: rows = new double[length][]; break;
+                    case FLOAT_ARRAY: rows = new float[length][]; break;
+                    case BOOLEAN_ARRAY: rows = new boolean[length][]; break;
+                    case CHAR_ARRAY: rows = new char[length][]; break;
+                    default: throw new IOException( "invalid row type " + rowType + " for a two dimensional array." );
+                }
+                for (int i=0; i < length; i++)
+                    rows[i] = readValue( in );
+                return rows;
+            }
+
+            default:
+                throw new IOException( "invalid value type " + type + "." );
+
+        }
+
+    }
+
+
+    /**
+     * Return the parameter type a method takes for an argument that was read as value, e.g.
+     * int for an Integer.
+     */
+    public static Class getParameterType ( Object value ) {
+
+        if ( value instanceof Integer )
+            return int.class;
+        else if ( value instanceof Double )
+            return double.class;
+        else if ( value instanceof Boolean )
+            return boolean.class;
+        else
+            return value.getClass();
+
+    }
+
+
+    private static byte getRowType ( Class rowClass ) {
+
+        if ( rowClass == int[].class )
+            return INT_ARRAY;
+        else if ( rowClass == double[].class )
+            return DOUBLE_ARRAY;
+        else if ( rowClass == float[].class )
+            return FLOAT_ARRAY;
+        else if ( rowClass == boolean[].class )
+            return BOOLEAN_ARRAY;
+        else if ( rowClass == char[].class )
+            return CHAR_ARRAY;
+        else
+            return NULL;
+
+    }
+
+
+    private static void writeHeader ( DataOutputStream out, byte type, int length ) throws IOException {
+        out.writeByte( type );
+        // DataOutputStream writes big-endian, so the int is written a byte at a time.
+        out.writeByte( length );
+        out.writeByte( length >>> 8 );
+        out.writeByte( length >>> 16 );
+        out.writeByte( length >>> 24 );
+    }
+
+
+    private static int readInt ( DataInputStream in ) throws IOException {
+        return readBuffer( in, 4 ).getInt();
+    }
+
+
+    private static ByteBuffer newBuffer ( int numBytes ) {
+        return ByteBuffer.allocate( numBytes ).order( ByteOrder.LITTLE_ENDIAN );
+    }
+
+
+    private static ByteBuffer readBuffer ( DataInputStream in, int numBytes ) throws IOException {
+        byte[] bytes = new byte[numBytes];
+        in.readFully( bytes );
+        return ByteBuffer.wrap( bytes ).order( ByteOrder.LITTLE_ENDIAN );
+    }
+
+}
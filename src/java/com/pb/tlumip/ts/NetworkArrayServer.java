@@ -0,0 +1,191 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * A socket server that calls the methods of a handler object, e.g. the NetworkHandler, for
+ * NetworkArrayClient objects, with arguments and return values in the binary form defined by
+ * NetworkArrayProtocol.  Each client connection is served by its own daemon thread, and calls
+ * on one connection are made one at a time.
+ *
+ */
+public class NetworkArrayServer {
+
+    protected static transient Logger logger = Logger.getLogger(NetworkArrayServer.class);
+
+    static final int BUFFER_SIZE = 65536;
+
+    private Object handler;
+    private ServerSocket serverSocket;
+
+
+    /**
+     * Create a server for handler listening on port, or on any free port if port is 0.
+     */
+    public NetworkArrayServer ( Object handler, int port ) throws IOException {
+        this.handler = handler;
+        serverSocket = new ServerSocket( port );
+    }
+
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    public void start() {
+
+        Thread acceptThread = TsThreads.newDaemonThread( new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        }, "NetworkArrayServer" );
+        acceptThread.start();
+
+    }
+
+
+    public void stop() {
+        try {
+            serverSocket.close();
+        }
+        catch (IOException e) {
+            logger.error( "IOException closing NetworkArrayServer socket.", e );
+        }
+    }
+
+
+    private void acceptConnections() {
+
+        while ( ! serverSocket.isClosed() ) {
+
+            final Socket socket;
+            try {
+                socket = serverSocket.accept();
+            }
+            catch (IOException e) {
+                if ( ! serverSocket.isClosed() )
+                    logger.error( "IOException accepting NetworkArrayServer connection.", e );
+                return;
+            }
+
+            Thread connectionThread = TsThreads.newDaemonThread( new Runnable() {
+                public void run() {
+                    serveConnection( socket );
+                }
+            }, "NetworkArrayServer connection" );
+            connectionThread.start();
+
+        }
+
+    }
+
+
+    private void serveConnection( Socket socket ) {
+
+        try {
+
+            socket.setTcpNoDelay( true );
+            DataInputStream in = new DataInputStream( new BufferedInputStream( socket.getInputStream(), BUFFER_SIZE ) );
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream(), BUFFER_SIZE ) );
+
+            while ( true ) {
+
+                String methodName;
+                try {
+                    methodName = (String)NetworkArrayProtocol.readValue( in );
+                }
+                catch (EOFException e) {
+                    // client closed the connection
+                    break;
+                }
+
+                int numArgs = (Integer)NetworkArrayProtocol.readValue( in );
+                Object[] args = new Object[numArgs];
+                Class[] parameterTypes = new Class[numArgs];
+                for (int i=0; i < numArgs; i++) {
+                    args[i] = NetworkArrayProtocol.readValue( in );
+                    parameterTypes[i] = NetworkArrayProtocol.getParameterType( args[i] );
+                }
+
+                Object result = null;
+                String errorMessage = null;
+                try {
+                    Method method = handler.getClass().getMethod( methodName, parameterTypes );
+                    result = method.invoke( handler, args );
+                }
+                catch (InvocationTargetException e) {
+                    logger.error( "exception in " + methodName + "() called through NetworkArrayServer.", e.getCause() );
+                    errorMessage = methodName + ": " + e.getCause();
+                }
+                catch (Exception e) {
+                    logger.error( "could not call " + methodName + "() through NetworkArrayServer.", e );
+                    errorMessage = methodName + ": " + e;
+                }
+
+                if ( errorMessage == null ) {
+                    try {
+                        // encode first, so a value that cannot be sent is reported as an error.
+                        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                        NetworkArrayProtocol.writeValue( new DataOutputStream( bytes ), result );
+                        NetworkArrayProtocol.writeValue( out, Boolean.TRUE );
+                        bytes.writeTo( out );
+                    }
+                    catch (IllegalArgumentException e) {
+                        errorMessage = methodName + ": " + e.getMessage();
+                    }
+                }
+
+                if ( errorMessage != null ) {
+                    NetworkArrayProtocol.writeValue( out, Boolean.FALSE );
+                    NetworkArrayProtocol.writeValue( out, errorMessage );
+                }
+
+                out.flush();
+
+            }
+
+        }
+        catch (IOException e) {
+            logger.error( "IOException serving NetworkArrayServer connection.", e );
+        }
+        finally {
+            try {
+                socket.close();
+            }
+            catch (IOException e) {
+            }
+        }
+
+    }
+
+}
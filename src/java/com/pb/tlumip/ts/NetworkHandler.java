@@ -16,13 +16,17 @@
  */
 package com.pb.tlumip.ts;
 
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Vector;
 
 import com.pb.common.datafile.DataReader;
 import com.pb.common.rpc.DafNode;
 
 import com.pb.tlumip.ts.assign.Network;
+import com.pb.tlumip.ts.transit.AuxLinkImpedances;
 import com.pb.tlumip.ts.transit.AuxTrNet;
 import com.pb.tlumip.ts.transit.TrRoute;
 
@@ -42,8 +46,47 @@ public class NetworkHandler implements NetworkHandlerIF {
     
     ShortestPathTreeH sp = null;
     NetworkDataServer ns = null;
+    NetworkArrayServer arrayServer = null;
     String rpcConfigFile = null;
 
+    // incremented whenever a highway network object is set up, see getArrayVersions().
+    int networkVersion = 0;
+    
+    // the link attribute whose array each getter returns, for getters whose arrays NetworkHandlerRpc
+    // may cache.  Getters mapped to null return arrays that do not change once the network is set up.
+    // getArrayVersions() returns a version for each getter in the order they are put here.
+    static final LinkedHashMap<String,String> CACHEABLE_ARRAYS = new LinkedHashMap<String,String>();
+    static final HashMap<String,Integer> CACHEABLE_ARRAY_INDEX = new HashMap<String,Integer>();
+    static {
+        String[] fixedArrays = { "getIa", "getIb", "getIpa", "getIpb", "getSortedLinkIndexA", "getSortedLinkIndexB",
+            "getIndexNode", "getNodeIndex", "getNodes", "getNodeX", "getNodeY", "getInternalNodeToNodeTableRow",
+            "getCentroid", "getExternalZoneLabels", "getAlphaDistrictIndex", "getValidLinksForAllClasses",
+            "getValidLinksForTransitPaths", "getTurnPenaltyIndices", "getTurnPenaltyArray", "getUserClassPces",
+            "getAssignmentGroupChars" };
+        for (int i=0; i < fixedArrays.length; i++)
+            CACHEABLE_ARRAYS.put( fixedArrays[i], null );
+
+        CACHEABLE_ARRAYS.put( "getDist", "dist" );
+        CACHEABLE_ARRAYS.put( "getLanes", "lanes" );
+        CACHEABLE_ARRAYS.put( "getFreeFlowTime", "freeFlowTime" );
+        CACHEABLE_ARRAYS.put( "getFreeFlowSpeed", "freeFlowSpeed" );
+        CACHEABLE_ARRAYS.put( "getLinkType", "type" );
+        CACHEABLE_ARRAYS.put( "getVdfIndex", "vdf" );
+        CACHEABLE_ARRAYS.put( "getTaz", "taz" );
+        CACHEABLE_ARRAYS.put( "getDrops", "drops" );
+        CACHEABLE_ARRAYS.put( "getUniqueIds", "uniqueIds" );
+        CACHEABLE_ARRAYS.put( "getCapacity", "capacity" );
+        CACHEABLE_ARRAYS.put( "getOriginalCapacity", "originalCapacity" );
+        CACHEABLE_ARRAYS.put( "getTotalCapacity", "totalCapacity" );
+        CACHEABLE_ARRAYS.put( "getTransitTime", "transitTime" );
+        CACHEABLE_ARRAYS.put( "getCongestedTime", "congestedTime" );
+        CACHEABLE_ARRAYS.put( "getVolau", "volau" );
+        CACHEABLE_ARRAYS.put( "getTotalLinkCost", "totalLinkCost" );
+
+        for (String methodName : CACHEABLE_ARRAYS.keySet())
+            CACHEABLE_ARRAY_INDEX.put( methodName, CACHEABLE_ARRAY_INDEX.size() );
+    }
+
     
     public NetworkHandler() {
         ns = NetworkDataServer.getInstance( this, networkDataServerPort, dataServerName );
@@ -94,6 +137,47 @@ public class NetworkHandler implements NetworkHandlerIF {
     
     public void stopDataServer() {
         ns.stopServer();
+        if ( arrayServer != null ) {
+            arrayServer.stop();
+            arrayServer = null;
+        }
+    }
+    
+    /**
+     * Start the server NetworkHandlerRpc clients use to get and set link and node arrays in binary
+     * form, if it is not already running, and return its address as host:port.  This method is not
+     * part of NetworkHandlerIF; NetworkHandlerRpc calls it through the rpc handler when it is created.
+     */
+    public synchronized String startArrayServer() {
+        try {
+            if ( arrayServer == null ) {
+                arrayServer = new NetworkArrayServer( this, 0 );
+                arrayServer.start();
+            }
+            return InetAddress.getLocalHost().getHostAddress() + ":" + arrayServer.getPort();
+        }
+        catch (IOException e) {
+            logger.error( "IOException starting NetworkArrayServer.", e );
+            return "";
+        }
+    }
+    
+    /**
+     * Return the generation of the array returned by each getter in CACHEABLE_ARRAYS, as the network
+     * version and the version of the link attribute it returns.  An array has not changed as long as
+     * its generation is the same.  The rows are empty if no highway network is set up.
+     * This method is not part of NetworkHandlerIF; NetworkHandlerRpc calls it through the rpc handler.
+     */
+    public int[][] getArrayVersions() {
+        int[][] versions = new int[CACHEABLE_ARRAYS.size()][];
+        int i = 0;
+        for (String attribute : CACHEABLE_ARRAYS.values()) {
+            if ( g == null )
+                versions[i++] = new int[0];
+            else
+                versions[i++] = new int[] { networkVersion, attribute == null ? 0 : g.getAttributeVersion( attribute ) };
+        }
+        return versions;
     }
     
     public int setRpcConfigFileName(String configFile) {
@@ -439,6 +523,8 @@ public class NetworkHandler implements NetworkHandlerIF {
     
     public int setupHighwayNetworkObject ( String timePeriod, String[] propertyValues  ) {
         
+        networkVersion++;
+        
         try {
             
             String networkFileName = propertyValues[NETWORK_FILENAME_INDEX];
@@ -636,6 +722,16 @@ public class NetworkHandler implements NetworkHandlerIF {
         return ag.getLinkImped(k);
     }
     
+    public double[] getAuxLinkImpedances( String identifier ) {
+        AuxTrNet ag = (AuxTrNet)transitNetworks.get(identifier);
+        return ag.getLinkImpedances();
+    }
+    
+    public AuxLinkImpedances getAuxImpedanceSnapshot( String identifier ) {
+        AuxTrNet ag = (AuxTrNet)transitNetworks.get(identifier);
+        return ag.getImpedanceSnapshot();
+    }
+    
     public String getAuxRouteName(String identifier, int rte) {
         AuxTrNet ag = (AuxTrNet)transitNetworks.get(identifier);
         return ag.getRouteName(rte);
@@ -1,5 +1,7 @@
 package com.pb.tlumip.ts;
 
+import com.pb.tlumip.ts.transit.AuxLinkImpedances;
+
 
 public interface NetworkHandlerIF {
 
@@ -145,6 +147,8 @@ public interface NetworkHandlerIF {
     public int getAuxNodeCount( String identifier );
     public int getAuxLinkCount( String identifier );
     public double getAuxLinkImped (String identifier, int k);
+    public double[] getAuxLinkImpedances( String identifier );
+    public AuxLinkImpedances getAuxImpedanceSnapshot( String identifier );
     public String getAuxRouteName(String identifier, int rte);
     public String getAuxRouteDescription(String identifier, int rte);
     public char getAuxRouteMode(String identifier, int rte);
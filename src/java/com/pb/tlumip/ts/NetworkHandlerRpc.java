@@ -18,10 +18,13 @@ package com.pb.tlumip.ts;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Vector;
 
 import com.pb.common.rpc.RpcClient;
 import com.pb.common.rpc.RpcException;
+import com.pb.tlumip.ts.transit.AuxLinkImpedances;
 
 import org.apache.log4j.Logger;
 
@@ -35,6 +38,18 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
 
     transient RpcClient rc = null;
 
+    // link and node arrays are sent through this connection, rather than by xml-rpc, when it is available.
+    transient NetworkArrayClient arrayClient = null;
+
+    // arrays returned by getters, and the generations the server gave for them, see executeCached().
+    transient HashMap<String,Object> cachedArrays = new HashMap<String,Object>();
+    transient HashMap<String,int[]> cachedVersions = new HashMap<String,int[]>();
+
+    // the generations of all cacheable arrays on the server, fetched in one call by the first cached getter
+    // after this client changed the network, or by each getter of a link attribute; see getArrayVersion().
+    transient int[][] arrayVersions = null;
+    transient int arrayVersionsGeneration = 0;
+
 
 
     public NetworkHandlerRpc( String rpcConfigFileName ) {
@@ -48,6 +63,124 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         catch (Exception e) {
             logger.error( "Exception caught in NetworkHandlerRpc() while defining RpcClient for " + HANDLER_NAME + ".", e);
         }
+        
+        if ( rc != null )
+            arrayClient = connectArrayServer();
+    }
+    
+    
+    private NetworkArrayClient connectArrayServer() {
+        try {
+            String address = (String)rc.execute(HANDLER_NAME+".startArrayServer", new Vector());
+            int colon = address.lastIndexOf( ':' );
+            return new NetworkArrayClient( address.substring( 0, colon ), Integer.parseInt( address.substring( colon + 1 ) ) );
+        }
+        catch (Exception e) {
+            logger.warn( "binary array transport to " + HANDLER_NAME + " is not available, arrays will be sent by xml-rpc.", e );
+            return null;
+        }
+    }
+    
+    
+    /**
+     * Call methodName on the remote handler through the array server if it is available, otherwise,
+     * or if the call fails there, through the RpcClient.
+     */
+    private Object executeArrays ( String methodName, Vector params ) throws RpcException, IOException {
+        
+        NetworkArrayClient client = arrayClient;
+        if ( client != null ) {
+            try {
+                return client.execute( methodName, params.toArray() );
+            }
+            catch (IOException e) {
+                logger.warn( "binary array transport to " + HANDLER_NAME + " failed, arrays will be sent by xml-rpc.", e );
+                arrayClient = null;
+                client.close();
+            }
+            catch (RuntimeException e) {
+                logger.warn( e.getMessage() + ", calling " + methodName + " by xml-rpc." );
+            }
+        }
+        
+        return rc.execute( HANDLER_NAME + "." + methodName, params );
+        
+    }
+    
+    
+    /**
+     * Call the getter methodName on the remote handler, unless the array it returned last time has not
+     * changed since on the server, in which case that array is returned again.  As with NetworkHandler,
+     * the same array may be returned to several callers, so callers must not modify it.
+     * 
+     * Getters of link attributes, which change during assignment, e.g. getVolau() and getCongestedTime(),
+     * fetch the generations of the server's arrays on every call, so arrays changed by another client are
+     * fetched again.  Getters of arrays fixed once the network is set up, e.g. getIa(), use the generations
+     * fetched after this client's last call that may change the network, e.g. setupHighwayNetworkObject(),
+     * and make no call at all in between.
+     */
+    private Object executeCached ( String methodName ) throws RpcException, IOException {
+        
+        int[] version = getArrayVersion( methodName );
+        
+        if ( version != null && version.length > 0 ) {
+            synchronized ( cachedArrays ) {
+                if ( Arrays.equals( version, cachedVersions.get( methodName ) ) )
+                    return cachedArrays.get( methodName );
+            }
+        }
+        
+        Object result = executeArrays( methodName, new Vector() );
+        
+        // the array may be newer than version, in which case it is fetched again on the next call.
+        if ( version != null && version.length > 0 && result != null ) {
+            synchronized ( cachedArrays ) {
+                cachedArrays.put( methodName, result );
+                cachedVersions.put( methodName, version );
+            }
+        }
+        
+        return result;
+        
+    }
+    
+    
+    private int[] getArrayVersion ( String methodName ) throws RpcException, IOException {
+        
+        int[][] versions;
+        int generation;
+        synchronized ( cachedArrays ) {
+            versions = arrayVersions;
+            generation = arrayVersionsGeneration;
+        }
+        
+        // link attributes may have been changed by another client since versions were fetched.
+        if ( versions == null || NetworkHandler.CACHEABLE_ARRAYS.get( methodName ) != null ) {
+            versions = (int[][])executeArrays( "getArrayVersions", new Vector() );
+            synchronized ( cachedArrays ) {
+                // keep them unless the network was changed by this client while they were fetched.
+                if ( generation == arrayVersionsGeneration )
+                    arrayVersions = versions;
+            }
+        }
+        
+        Integer index = NetworkHandler.CACHEABLE_ARRAY_INDEX.get( methodName );
+        if ( versions == null || index == null || index >= versions.length )
+            return null;
+        return versions[index];
+        
+    }
+    
+    
+    /**
+     * Called after each call through this client that may change the network, so the next cached
+     * getter fetches the generations of the server's arrays again.
+     */
+    private void arraysChanged () {
+        synchronized ( cachedArrays ) {
+            arrayVersions = null;
+            arrayVersionsGeneration++;
+        }
     }
     
     public int setRpcConfigFileName(String configFile) {
@@ -137,7 +270,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         boolean[] returnArray = null;
         
         try {
-            returnArray = (boolean[])rc.execute(HANDLER_NAME+".getCentroid", new Vector());
+            returnArray = (boolean[])executeCached("getCentroid");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -153,7 +286,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getExternalZoneLabels", new Vector());
+            returnArray = (int[])executeCached("getExternalZoneLabels");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -179,7 +312,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
     public int[] getAlphaDistrictIndex () {
         int[] returnValue = null;
         try {
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAlphaDistrictIndex", new Vector());
+            returnValue = (int[])executeCached("getAlphaDistrictIndex");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -296,7 +429,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         boolean[][] returnArray = null;
         
         try {
-            returnArray = (boolean[][])rc.execute(HANDLER_NAME+".getValidLinksForAllClasses", new Vector());
+            returnArray = (boolean[][])executeCached("getValidLinksForAllClasses");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -314,7 +447,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add(userClass);
-            returnArray = (boolean[])rc.execute(HANDLER_NAME+".getValidLinksForClass", params);
+            returnArray = (boolean[])executeArrays("getValidLinksForClass", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -362,7 +495,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         boolean[] returnArray = null;
         
         try {
-            returnArray = (boolean[])rc.execute(HANDLER_NAME+".getValidLinksForTransitPaths", new Vector());
+            returnArray = (boolean[])executeCached("getValidLinksForTransitPaths");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -400,7 +533,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
             Vector params = new Vector();
             // can't send a char with xml-rpc so cast it as int
             params.add((int)modeChar);
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getOnewayLinksForClass", params);
+            returnArray = (int[])executeArrays("getOnewayLinksForClass", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -416,7 +549,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getNodeIndex", new Vector());
+            returnArray = (int[])executeCached("getNodeIndex");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -432,7 +565,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getInternalNodeToNodeTableRow", new Vector());
+            returnArray = (int[])executeCached("getInternalNodeToNodeTableRow");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -466,7 +599,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getLinkType", new Vector());
+            returnArray = (int[])executeCached("getLinkType");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -482,7 +615,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getTaz", new Vector());
+            returnArray = (int[])executeCached("getTaz");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -498,7 +631,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getDrops", new Vector());
+            returnArray = (int[])executeCached("getDrops");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -514,7 +647,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getUniqueIds", new Vector());
+            returnArray = (int[])executeCached("getUniqueIds");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -530,7 +663,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getVdfIndex", new Vector());
+            returnArray = (int[])executeCached("getVdfIndex");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -546,7 +679,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         char[][] returnArray = null;
         
         try {
-            returnArray = (char[][])rc.execute(HANDLER_NAME+".getAssignmentGroupChars", new Vector());
+            returnArray = (char[][])executeCached("getAssignmentGroupChars");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -562,7 +695,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getTransitTime", new Vector());
+            returnArray = (double[])executeCached("getTransitTime");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -578,7 +711,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getFreeFlowTime", new Vector());
+            returnArray = (double[])executeCached("getFreeFlowTime");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -594,7 +727,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getFreeFlowSpeed", new Vector());
+            returnArray = (double[])executeCached("getFreeFlowSpeed");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -610,7 +743,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         float[] returnArray = null;
 
         try {
-            returnArray = (float[])rc.execute(HANDLER_NAME+".getUserClassPces", new Vector());
+            returnArray = (float[])executeCached("getUserClassPces");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -626,7 +759,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
 
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getLanes", new Vector());
+            returnArray = (double[])executeCached("getLanes");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -642,7 +775,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getCongestedTime", new Vector());
+            returnArray = (double[])executeCached("getCongestedTime");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -658,7 +791,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getCapacity", new Vector());
+            returnArray = (double[])executeCached("getCapacity");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -674,7 +807,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getOriginalCapacity", new Vector());
+            returnArray = (double[])executeCached("getOriginalCapacity");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -690,7 +823,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getTotalCapacity", new Vector());
+            returnArray = (double[])executeCached("getTotalCapacity");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -706,7 +839,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getDist", new Vector());
+            returnArray = (double[])executeCached("getDist");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -722,7 +855,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
 
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getTotalLinkCost", new Vector());
+            returnArray = (double[])executeCached("getTotalLinkCost");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -740,7 +873,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         params.add( userClass );
 
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getLinkAttribCosts", params );
+            returnArray = (double[])executeArrays("getLinkAttribCosts", params );
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -756,7 +889,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getVolau", new Vector());
+            returnArray = (double[])executeCached("getVolau");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -772,7 +905,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[][] returnArray = null;
         
         try {
-            returnArray = (int[][])rc.execute(HANDLER_NAME+".getTurnPenaltyIndices", new Vector());
+            returnArray = (int[][])executeCached("getTurnPenaltyIndices");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -788,7 +921,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         float[][] returnArray = null;
         
         try {
-            returnArray = (float[][])rc.execute(HANDLER_NAME+".getTurnPenaltyArray", new Vector());
+            returnArray = (float[][])executeCached("getTurnPenaltyArray");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -852,13 +985,14 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".setLinkGeneralizedCost", new Vector());
+            returnArray = (double[])executeArrays("setLinkGeneralizedCost", new Vector());
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
         
+        arraysChanged();
         return returnArray;
         
     }
@@ -870,13 +1004,14 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( flow );
-            returnValue = (Integer)rc.execute(HANDLER_NAME+".setFlows", params);
+            returnValue = (Integer)executeArrays("setFlows", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
         
+        arraysChanged();
         return returnValue;
         
     }
@@ -888,13 +1023,14 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( volau );
-            returnValue = (Integer)rc.execute(HANDLER_NAME+".setVolau", params);
+            returnValue = (Integer)executeArrays("setVolau", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
         
+        arraysChanged();
         return returnValue;
         
     }
@@ -906,13 +1042,14 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( timau );
-            returnValue = (Integer)rc.execute(HANDLER_NAME+".setTimau", params);
+            returnValue = (Integer)executeArrays("setTimau", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
         
+        arraysChanged();
         return returnValue;
         
     }
@@ -926,6 +1063,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
+        arraysChanged();
         return returnValue;
     }
     
@@ -954,6 +1092,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
+        arraysChanged();
         return returnValue;
     }
     
@@ -966,6 +1105,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
+        arraysChanged();
         return returnValue;
     }
     
@@ -1029,7 +1169,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getIndexNode", new Vector());
+            returnArray = (int[])executeCached("getIndexNode");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1095,7 +1235,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getNodes", new Vector());
+            returnArray = (int[])executeCached("getNodes");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1111,7 +1251,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getNodeX", new Vector());
+            returnArray = (double[])executeCached("getNodeX");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1127,7 +1267,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         double[] returnArray = null;
         
         try {
-            returnArray = (double[])rc.execute(HANDLER_NAME+".getNodeY", new Vector());
+            returnArray = (double[])executeCached("getNodeY");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1155,7 +1295,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getIa", new Vector());
+            returnArray = (int[])executeCached("getIa");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1171,7 +1311,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getIb", new Vector());
+            returnArray = (int[])executeCached("getIb");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1187,7 +1327,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getIpa", new Vector());
+            returnArray = (int[])executeCached("getIpa");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1203,7 +1343,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getIpb", new Vector());
+            returnArray = (int[])executeCached("getIpb");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1219,7 +1359,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getSortedLinkIndexA", new Vector());
+            returnArray = (int[])executeCached("getSortedLinkIndexA");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1235,7 +1375,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         int[] returnArray = null;
         
         try {
-            returnArray = (int[])rc.execute(HANDLER_NAME+".getSortedLinkIndexB", new Vector());
+            returnArray = (int[])executeCached("getSortedLinkIndexB");
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1269,6 +1409,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         } catch (IOException e) {
             logger.error( e.getCause().getMessage(), e );
         }
+        arraysChanged();
         return returnValue;
     }
     
@@ -1287,6 +1428,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
             logger.error( e.getCause().getMessage(), e );
         }
         
+        arraysChanged();
         return returnValue;
         
     }
@@ -1329,7 +1471,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIa", params);
+            returnValue = (int[])executeArrays("getAuxIa", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1347,7 +1489,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIb", params);
+            returnValue = (int[])executeArrays("getAuxIb", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1364,7 +1506,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIpa", params);
+            returnValue = (int[])executeArrays("getAuxIpa", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1381,7 +1523,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIpb", params);
+            returnValue = (int[])executeArrays("getAuxIpb", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1398,7 +1540,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIndexa", params);
+            returnValue = (int[])executeArrays("getAuxIndexa", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1415,7 +1557,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxIndexb", params);
+            returnValue = (int[])executeArrays("getAuxIndexb", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1432,7 +1574,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxHwyLink", params);
+            returnValue = (int[])executeArrays("getAuxHwyLink", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1454,7 +1596,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getLinkTrRoute", params);
+            returnValue = (int[])executeArrays("getLinkTrRoute", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1489,7 +1631,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector<String> params = new Vector<String>();
             params.add( identifier );
-            returnValue = (int[])rc.execute(HANDLER_NAME+".getAuxLinkType", params);
+            returnValue = (int[])executeArrays("getAuxLinkType", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1505,7 +1647,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxWalkTime", params);
+            returnValue = (double[])executeArrays("getAuxWalkTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1521,7 +1663,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxWaitTime", params);
+            returnValue = (double[])executeArrays("getAuxWaitTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1537,7 +1679,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxDriveAccTime", params);
+            returnValue = (double[])executeArrays("getAuxDriveAccTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1553,7 +1695,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxDwellTime", params);
+            returnValue = (double[])executeArrays("getAuxDwellTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1569,7 +1711,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxCost", params);
+            returnValue = (double[])executeArrays("getAuxCost", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1585,7 +1727,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxLayoverTime", params);
+            returnValue = (double[])executeArrays("getAuxLayoverTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1601,7 +1743,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxInvTime", params);
+            returnValue = (double[])executeArrays("getAuxInvTime", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1617,7 +1759,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxLinkFreq", params);
+            returnValue = (double[])executeArrays("getAuxLinkFreq", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1633,7 +1775,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxLinkFlow", params);
+            returnValue = (double[])executeArrays("getAuxLinkFlow", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1649,7 +1791,7 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         try {
             Vector params = new Vector();
             params.add( identifier );
-            returnValue = (double[])rc.execute(HANDLER_NAME+".getAuxRouteHeadway", params);
+            returnValue = (double[])executeArrays("getAuxRouteHeadway", params);
         } catch (RpcException e) {
             logger.error( e.getCause().getMessage(), e );
         } catch (IOException e) {
@@ -1708,6 +1850,26 @@ public class NetworkHandlerRpc implements NetworkHandlerIF {
         return returnValue;
     }
     
+    public double[] getAuxLinkImpedances( String identifier ) {
+        double[] returnValue = null;
+        
+        try {
+            Vector params = new Vector();
+            params.add( identifier );
+            returnValue = (double[])executeArrays("getAuxLinkImpedances", params);
+        } catch (RpcException e) {
+            logger.error( e.getCause().getMessage(), e );
+        } catch (IOException e) {
+            logger.error( e.getCause().getMessage(), e );
+        }
+        
+        return returnValue;
+    }
+    
+    public AuxLinkImpedances getAuxImpedanceSnapshot( String identifier ) {
+        return new AuxLinkImpedances( getAuxLinkImpedances( identifier ) );
+    }
+    
     public String getAuxRouteName(String identifier, int rte) {
         String returnValue = "";
         
@@ -0,0 +1,449 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+
+/**
+ * Reads an SDT or LDT person trip list in one pass and keeps every trip, binned by its
+ * tripStartTime and trip mode, so trip tables for any period and any of the modes can be
+ * built without reading the file again.  The trips of a period, binned by mode, are collected
+ * from the start time bins the first time addPeriod() is called for it.
+ *
+ * Lines are split into fields at commas directly in the bytes read, and only the origin,
+ * destination, tripStartTime and tripMode fields are converted.  Each distinct tripMode value
+ * is given an ordinal the first time it is read, and later lines are matched against those
+ * values byte for byte, so no String is created for a trip.
+ *
+ * A trip is kept as origin*(numCentroids+1) + destination, with origin and destination the
+ * network's internal node indices.
+ *
+ */
+public class PersonTripListReader {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int INITIAL_TRIPS = 16;
+
+    // tripStartTime is in hhmm, so trips are binned by start times 0 to 2400.
+    static final int NUM_START_TIMES = 2401;
+
+    private int[] nodeIndex;
+    private int numCentroids;
+
+    private ArrayList<byte[]> modeBytes = new ArrayList<byte[]>();
+    private ArrayList<String> modeNames = new ArrayList<String>();
+
+    // totalModeFreq[m] trips of mode m were read.
+    private int[] totalModeFreq = new int[0];
+
+    // binTrips[t][m][0..binCounts[t][m]-1] are the packed o/d of the mode m trips starting at time t;
+    // binTrips[t][m] is null until there is one.
+    private int[][][] binTrips = new int[NUM_START_TIMES][0][];
+    private int[][] binCounts = new int[NUM_START_TIMES][0];
+
+    // the periods added, and trips[p][m][0..tripCounts[p][m]-1], the packed o/d of the mode m trips in period p.
+    private ArrayList<int[]> periods = new ArrayList<int[]>();
+    private ArrayList<int[][]> trips = new ArrayList<int[][]>();
+    private ArrayList<int[]> tripCounts = new ArrayList<int[]>();
+
+    private int lineCount;
+
+    // the line being parsed, and the start and end of each field in it.
+    private InputStream in;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLimit;
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+
+
+    /**
+     * Create a reader with nodeIndex giving the internal node index of each origin and destination zone.
+     */
+    public PersonTripListReader ( int numCentroids, int[] nodeIndex ) {
+        this.numCentroids = numCentroids;
+        this.nodeIndex = nodeIndex;
+    }
+
+
+    /**
+     * Return true if the trips were read for a network with these centroids and node indices.
+     */
+    public boolean isForNetwork ( int numCentroids, int[] nodeIndex ) {
+        return this.numCentroids == numCentroids && Arrays.equals( this.nodeIndex, nodeIndex );
+    }
+
+
+    /**
+     * Return true if tripStartTime, in hhmm, is in the period from startHour to endHour, which
+     * wraps midnight if startHour > endHour.
+     */
+    public static boolean tripStartsInPeriod ( int tripStartTime, int startHour, int endHour ) {
+
+        // if startHour > endHour, the period wraps midnight, so two checks are required
+        if ( startHour > endHour )
+            return ( tripStartTime >= startHour && tripStartTime <= 2400 ) || ( tripStartTime >= 0 && tripStartTime <= endHour );
+        else
+            return tripStartTime >= startHour && tripStartTime <= endHour;
+
+    }
+
+
+    public void read ( String fileName ) throws IOException {
+
+        in = new BufferedInputStream( new FileInputStream( fileName ), BUFFER_SIZE );
+        bufferPosition = 0;
+        bufferLimit = 0;
+
+        try {
+
+            if ( ! readLine() )
+                throw new IOException( "trip list file " + fileName + " is empty." );
+
+            // get the field indices for the fields we want to read
+            int origField = -1;
+            int destField = -1;
+            int timeField = -1;
+            int modeField = -1;
+
+            int numFields = splitFields();
+            for (int f=0; f < numFields; f++) {
+                String name = getFieldString( f );
+                if ( name.equals("origin") )
+                    origField = f;
+                else if ( name.equals("destination") )
+                    destField = f;
+                else if ( name.equals("tripStartTime") )
+                    timeField = f;
+                else if ( name.equals("tripMode") )
+                    modeField = f;
+            }
+
+            if ( origField < 0 || destField < 0 || timeField < 0 || modeField < 0 )
+                throw new IOException( "trip list file " + fileName + " header must have origin, destination, tripStartTime and tripMode fields." );
+
+            int lastField = Math.max( Math.max( origField, destField ), Math.max( timeField, modeField ) );
+
+            lineCount = 0;
+            while ( readLine() ) {
+
+                lineCount++;
+
+                numFields = splitFields();
+                if ( numFields == 1 && fieldEnd[0] == fieldStart[0] )
+                    continue;
+
+                if ( numFields <= lastField )
+                    throw new IOException( String.format( "line %d of trip list file %s has %d fields.", lineCount, fileName, numFields ) );
+
+                int m = getModeOrdinal( modeField );
+                totalModeFreq[m]++;
+
+                // a trip starting at any other time is in no period.
+                int startTime = parseInt( timeField );
+                if ( startTime >= 0 && startTime < NUM_START_TIMES ) {
+                    int o = nodeIndex[parseInt( origField )];
+                    int d = nodeIndex[parseInt( destField )];
+                    addTrip( startTime, m, o*(numCentroids + 1) + d );
+                }
+
+            }
+
+        }
+        catch (NumberFormatException e) {
+            IOException ioe = new IOException( String.format( "reading line %d of trip list file %s: %s", lineCount, fileName, e.getMessage() ) );
+            ioe.initCause( e );
+            throw ioe;
+        }
+        finally {
+            in.close();
+            in = null;
+        }
+
+    }
+
+
+    /**
+     * Return the index p of the period from startHour to endHour, as used by the period getters,
+     * collecting its trips from the start time bins the first time it is added.
+     */
+    public synchronized int addPeriod ( int startHour, int endHour ) {
+
+        for (int p=0; p < periods.size(); p++) {
+            if ( periods.get( p )[0] == startHour && periods.get( p )[1] == endHour )
+                return p;
+        }
+
+        int numModes = modeNames.size();
+        int[] counts = new int[numModes];
+        int[][] periodTrips = new int[numModes][];
+
+        for (int m=0; m < numModes; m++) {
+
+            for (int t=0; t < NUM_START_TIMES; t++) {
+                if ( tripStartsInPeriod( t, startHour, endHour ) )
+                    counts[m] += binCounts[t][m];
+            }
+
+            periodTrips[m] = new int[counts[m]];
+            int n = 0;
+            for (int t=0; t < NUM_START_TIMES; t++) {
+                if ( binCounts[t][m] > 0 && tripStartsInPeriod( t, startHour, endHour ) ) {
+                    System.arraycopy( binTrips[t][m], 0, periodTrips[m], n, binCounts[t][m] );
+                    n += binCounts[t][m];
+                }
+            }
+
+        }
+
+        periods.add( new int[] { startHour, endHour } );
+        trips.add( periodTrips );
+        tripCounts.add( counts );
+
+        return periods.size() - 1;
+
+    }
+
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getNumModes() {
+        return modeNames.size();
+    }
+
+    public String getModeName ( int m ) {
+        return modeNames.get( m );
+    }
+
+    public int getModeFrequency ( int m ) {
+        return totalModeFreq[m];
+    }
+
+    public synchronized int getPeriodModeFrequency ( int p, int m ) {
+        return tripCounts.get( p )[m];
+    }
+
+    public synchronized int getTripCount ( int p, int m ) {
+        return tripCounts.get( p )[m];
+    }
+
+    /**
+     * Return the packed o/d of the mode m trips in period p; only the first getTripCount(p, m)
+     * entries are trips.
+     */
+    public synchronized int[] getTrips ( int p, int m ) {
+        return trips.get( p )[m];
+    }
+
+    public int getOrigin ( int packedTrip ) {
+        return packedTrip / (numCentroids + 1);
+    }
+
+    public int getDestination ( int packedTrip ) {
+        return packedTrip % (numCentroids + 1);
+    }
+
+
+
+    private void addTrip ( int t, int m, int packedTrip ) {
+
+        int[] modeTrips = binTrips[t][m];
+        if ( modeTrips == null ) {
+            binTrips[t][m] = modeTrips = new int[INITIAL_TRIPS];
+        }
+        else if ( binCounts[t][m] == modeTrips.length ) {
+            int[] newTrips = new int[2*modeTrips.length];
+            System.arraycopy( modeTrips, 0, newTrips, 0, modeTrips.length );
+            binTrips[t][m] = modeTrips = newTrips;
+        }
+
+        modeTrips[binCounts[t][m]++] = packedTrip;
+
+    }
+
+
+    private int getModeOrdinal ( int f ) {
+
+        int start = fieldStart[f];
+        int length = fieldEnd[f] - start;
+
+        for (int m=0; m < modeBytes.size(); m++) {
+            byte[] bytes = modeBytes.get( m );
+            if ( bytes.length != length )
+                continue;
+            int i = 0;
+            while ( i < length && bytes[i] == line[start + i] )
+                i++;
+            if ( i == length )
+                return m;
+        }
+
+        // a mode not seen before
+        byte[] bytes = new byte[length];
+        System.arraycopy( line, start, bytes, 0, length );
+        modeBytes.add( bytes );
+        modeNames.add( getFieldString( f ) );
+
+        int numModes = modeBytes.size();
+        totalModeFreq = grow( totalModeFreq, numModes );
+        for (int t=0; t < NUM_START_TIMES; t++) {
+            binCounts[t] = grow( binCounts[t], numModes );
+            int[][] timeTrips = new int[numModes][];
+            System.arraycopy( binTrips[t], 0, timeTrips, 0, numModes - 1 );
+            binTrips[t] = timeTrips;
+        }
+
+        return numModes - 1;
+
+    }
+
+
+    private static int[] grow ( int[] array, int length ) {
+        int[] newArray = new int[length];
+        System.arraycopy( array, 0, newArray, 0, array.length );
+        return newArray;
+    }
+
+
+    /**
+     * Parse field f as an int.  Values are written as integers, possibly with a fractional part,
+     * which is truncated as (int)Float.parseFloat() would; any other form is parsed by Float.
+     */
+    private int parseInt ( int f ) {
+
+        int i = fieldStart[f];
+        int end = fieldEnd[f];
+
+        while ( i < end && line[i] == ' ' )
+            i++;
+        while ( end > i && line[end - 1] == ' ' )
+            end--;
+
+        boolean negative = false;
+        if ( i < end && ( line[i] == '-' || line[i] == '+' ) ) {
+            negative = ( line[i] == '-' );
+            i++;
+        }
+
+        int value = 0;
+        int digits = 0;
+        while ( i < end && line[i] >= '0' && line[i] <= '9' && digits < 9 ) {
+            value = 10*value + ( line[i] - '0' );
+            digits++;
+            i++;
+        }
+
+        if ( i < end && line[i] == '.' ) {
+            int j = i + 1;
+            while ( j < end && line[j] >= '0' && line[j] <= '9' )
+                j++;
+            if ( j == end )
+                i = end;
+        }
+
+        if ( digits == 0 || i < end )
+            return (int)Float.parseFloat( getFieldString( f ) );
+
+        return negative ? -value : value;
+
+    }
+
+
+    private String getFieldString ( int f ) {
+        try {
+            return new String( line, fieldStart[f], fieldEnd[f] - fieldStart[f], "ISO-8859-1" );
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new RuntimeException( e );
+        }
+    }
+
+
+    /**
+     * Split the current line at commas, returning the number of fields.
+     */
+    private int splitFields() {
+
+        int end = lineLength;
+        if ( end > 0 && line[end - 1] == '\r' )
+            end--;
+
+        int n = 0;
+        fieldStart[0] = 0;
+        for (int i=0; i < end; i++) {
+            if ( line[i] == ',' ) {
+                fieldEnd[n] = i;
+                n++;
+                if ( n == fieldStart.length ) {
+                    fieldStart = grow( fieldStart, 2*n );
+                    fieldEnd = grow( fieldEnd, 2*n );
+                }
+                fieldStart[n] = i + 1;
+            }
+        }
+        fieldEnd[n] = end;
+
+        return n + 1;
+
+    }
+
+
+    /**
+     * Read the next line into line, without its '\n'.  Returns false at the end of the file.
+     */
+    private boolean readLine() throws IOException {
+
+        lineLength = 0;
+
+        while ( true ) {
+
+            if ( bufferPosition == bufferLimit ) {
+                bufferLimit = in.read( buffer, 0, buffer.length );
+                bufferPosition = 0;
+                if ( bufferLimit <= 0 ) {
+                    bufferLimit = 0;
+                    return lineLength > 0;
+                }
+            }
+
+            byte b = buffer[bufferPosition++];
+            if ( b == '\n' )
+                return true;
+
+            if ( lineLength == line.length ) {
+                byte[] newLine = new byte[2*line.length];
+                System.arraycopy( line, 0, newLine, 0, lineLength );
+                line = newLine;
+            }
+            line[lineLength++] = b;
+
+        }
+
+    }
+
+}
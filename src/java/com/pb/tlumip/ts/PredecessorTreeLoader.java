@@ -0,0 +1,212 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+
+/**
+ * Loads a trip table row onto a shortest path tree given only its predecessor link array, as
+ * saved by SpBuildLoadCommon or written by FW.saveShortestPathTreeFile().
+ *
+ * Rather than tracing the path back from every destination zone, the nodes on paths to zones
+ * with trips are collected once and then visited leaves first, each passing its accumulated
+ * flow to its predecessor link and on to that link's a-node.  The visiting order comes from
+ * the tree structure alone, not from node labels, so links with zero cost, turn penalties, or
+ * labels that are no longer available do not affect it.  Each node and link is visited at most
+ * once per tree.
+ *
+ * A loader keeps work arrays sized to the network and is meant to be used by one thread.
+ *
+ */
+public class PredecessorTreeLoader {
+
+    protected static Logger logger = Logger.getLogger(PredecessorTreeLoader.class);
+
+    private int numZones;
+    private int[] ia;
+    private int[] indexNode;
+
+    // nodeMark[i] == generation if node i is on a loaded path in the current tree.
+    private int[] nodeMark;
+    private int generation;
+
+    private int[] childCount;
+    private double[] nodeFlow;
+    private int[] markedNodes;
+    private int numMarked;
+    private int[] leafQueue;
+
+
+    public PredecessorTreeLoader ( int numNodes, int numZones, int[] ia, int[] indexNode ) {
+
+        this.numZones = numZones;
+        this.ia = ia;
+        this.indexNode = indexNode;
+
+        nodeMark = new int[numNodes+1];
+        generation = 0;
+
+        childCount = new int[numNodes+1];
+        nodeFlow = new double[numNodes+1];
+        markedNodes = new int[numNodes+1];
+        leafQueue = new int[numNodes+1];
+
+    }
+
+
+    /**
+     * Load the trips in tripRow for userClass from origin onto the tree defined by
+     * predecessorLink, adding them into linkFlows.
+     *
+     * @return the total number of trips loaded.
+     */
+    public double loadTree ( int origin, int[] predecessorLink, double[] tripRow, int userClass, double[] linkFlows ) {
+
+        startTree( origin );
+
+        double totalTrips = 0.0;
+        for (int j=0; j < numZones; j++) {
+            if ( tripRow[j] > 0 && j != origin )
+                totalTrips += markPath( origin, predecessorLink, j, tripRow[j], userClass );
+        }
+
+        loadMarkedPaths( origin, predecessorLink, linkFlows );
+
+        return totalTrips;
+
+    }
+
+
+    /**
+     * Load the trips for userClass from origin to destinations[i], trips[i], for i from first up to
+     * but not including last, e.g. one row of a SparseTripTable, onto the tree defined by
+     * predecessorLink, adding them into linkFlows.
+     *
+     * @return the total number of trips loaded.
+     */
+    public double loadTree ( int origin, int[] predecessorLink, int[] destinations, double[] trips, int first, int last, int userClass, double[] linkFlows ) {
+
+        startTree( origin );
+
+        double totalTrips = 0.0;
+        for (int i=first; i < last; i++) {
+            if ( trips[i] > 0 && destinations[i] != origin )
+                totalTrips += markPath( origin, predecessorLink, destinations[i], trips[i], userClass );
+        }
+
+        loadMarkedPaths( origin, predecessorLink, linkFlows );
+
+        return totalTrips;
+
+    }
+
+
+    private void startTree ( int origin ) {
+
+        generation++;
+        if ( generation == Integer.MAX_VALUE ) {
+            Arrays.fill( nodeMark, 0 );
+            generation = 1;
+        }
+
+        nodeMark[origin] = generation;
+        numMarked = 0;
+
+    }
+
+
+    /**
+     * Mark the nodes on the path from origin to destination j that are not yet marked, and add trips
+     * to the flow at j.  Returns the trips, or 0 if there is no path.
+     */
+    private double markPath ( int origin, int[] predecessorLink, int j, double trips, int userClass ) {
+
+        if ( predecessorLink[j] == -1 ) {
+            logger.info ("no path from " + indexNode[origin] + " to " + indexNode[j] + " for userClass " + userClass );
+            return 0.0;
+        }
+
+        // walk toward the origin until a node already on a loaded path is reached.
+        int node = j;
+        while ( nodeMark[node] != generation ) {
+            int k = predecessorLink[node];
+            if ( k == -1 ) {
+                logger.error ("invalid predecessorLink: origin=" + indexNode[origin] + ", j=" + indexNode[j] + ", node=" + indexNode[node]);
+                throw new RuntimeException("predecessor links for origin " + indexNode[origin] + " do not form a tree.");
+            }
+            nodeMark[node] = generation;
+            nodeFlow[node] = 0.0;
+            childCount[node] = 0;
+            markedNodes[numMarked++] = node;
+            node = ia[k];
+        }
+
+        nodeFlow[j] += trips;
+        return trips;
+
+    }
+
+
+    /**
+     * Pass the flow at each marked node to its predecessor link and on to that link's a-node, leaves first.
+     */
+    private void loadMarkedPaths ( int origin, int[] predecessorLink, double[] linkFlows ) {
+
+        int k;
+
+        if ( numMarked == 0 )
+            return;
+
+        // count the children of each node on a loaded path; those with none are the leaves.
+        for (int i=0; i < numMarked; i++) {
+            int parent = ia[predecessorLink[markedNodes[i]]];
+            if ( parent != origin )
+                childCount[parent]++;
+        }
+
+        int head = 0;
+        int tail = 0;
+        for (int i=0; i < numMarked; i++) {
+            if ( childCount[markedNodes[i]] == 0 )
+                leafQueue[tail++] = markedNodes[i];
+        }
+
+        // a node is visited only after all of its children have passed their flow to it.
+        while ( head < tail ) {
+            int node = leafQueue[head++];
+            k = predecessorLink[node];
+            linkFlows[k] += nodeFlow[node];
+
+            int parent = ia[k];
+            if ( parent != origin ) {
+                nodeFlow[parent] += nodeFlow[node];
+                if ( --childCount[parent] == 0 )
+                    leafQueue[tail++] = parent;
+            }
+        }
+
+        if ( tail != numMarked ) {
+            logger.error ("predecessor links for origin " + indexNode[origin] + " contain a cycle; " + (numMarked - tail) + " nodes were not loaded.");
+            throw new RuntimeException("predecessor links for origin " + indexNode[origin] + " do not form a tree.");
+        }
+
+    }
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+
+/**
+ * A binary file of the shortest path trees saved in one Frank-Wolfe iteration, i.e. the
+ * predecessor link array of the tree from each origin zone for each user class, as returned by
+ * AonFlowHandler.getSavedShortestPathTrees().
+ *
+ * The file starts with a header, followed by an index giving the offset and length in bytes of
+ * each [user class, origin] tree, so any tree can be read without reading the ones before it.
+ * Each tree is delta encoded: the difference between the predecessor links of consecutive nodes
+ * is written as a zig-zag variable length integer, so unreached nodes and the nearby link
+ * numbers of neighboring nodes take one or two bytes.
+ *
+ * An archive is written with write() and read through a ShortestPathTreeArchive object, which
+ * maps the file into memory, so trees are decoded straight from the file pages as needed.
+ *
+ */
+public class ShortestPathTreeArchive {
+
+    static final int MAGIC = 0x53505452;
+    static final int VERSION = 1;
+
+    // the largest region mapped at once; trees are not split across regions.
+    static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+
+    private int iteration;
+    private char[] userClasses;
+    private int numOrigins;
+    private int treeLength;
+
+    private long[] treeOffset;
+    private int[] treeBytes;
+    private int[] treeRegion;
+
+    private ArrayList<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private ArrayList<Long> regionStart = new ArrayList<Long>();
+
+
+    /**
+     * Open the archive in fileName and map it into memory.
+     */
+    public ShortestPathTreeArchive ( String fileName ) throws IOException {
+
+        FileInputStream in = new FileInputStream( fileName );
+
+        try {
+
+            FileChannel channel = in.getChannel();
+
+            ByteBuffer header = channel.map( FileChannel.MapMode.READ_ONLY, 0, Math.min( channel.size(), 24 ) );
+            if ( header.capacity() < 24 || header.getInt() != MAGIC )
+                throw new IOException( fileName + " is not a shortest path tree archive." );
+
+            int version = header.getInt();
+            if ( version != VERSION )
+                throw new IOException( fileName + " is a version " + version + " shortest path tree archive; version " + VERSION + " was expected." );
+
+            iteration = header.getInt();
+            int numUserClasses = header.getInt();
+            numOrigins = header.getInt();
+            treeLength = header.getInt();
+
+            int numTrees = numUserClasses*numOrigins;
+            long indexSize = 2L*numUserClasses + 12L*numTrees;
+            if ( 24 + indexSize > channel.size() )
+                throw new IOException( fileName + " is truncated." );
+
+            ByteBuffer index = channel.map( FileChannel.MapMode.READ_ONLY, 24, indexSize );
+
+            userClasses = new char[numUserClasses];
+            for (int m=0; m < numUserClasses; m++)
+                userClasses[m] = index.getChar();
+
+            treeOffset = new long[numTrees];
+            treeBytes = new int[numTrees];
+            for (int t=0; t < numTrees; t++) {
+                treeOffset[t] = index.getLong();
+                treeBytes[t] = index.getInt();
+                if ( treeOffset[t] >= 0 && treeOffset[t] + treeBytes[t] > channel.size() )
+                    throw new IOException( fileName + " is truncated." );
+            }
+
+            mapRegions( channel );
+
+        }
+        finally {
+            // the mapped regions remain valid after the channel is closed.
+            in.close();
+        }
+
+    }
+
+
+    /**
+     * Write the trees to fileName.  trees[m][i] is the predecessor link array of the tree from
+     * origin i for user class m, or null if none was saved, and every array must have treeLength
+     * elements, e.g. the number of nodes + 1.
+     */
+    public static void write ( String fileName, int iteration, char[] userClasses, int treeLength, int[][][] trees ) throws IOException {
+
+        int numOrigins = 0;
+        for (int m=0; m < trees.length; m++)
+            numOrigins = Math.max( numOrigins, trees[m].length );
+
+        int numTrees = userClasses.length*numOrigins;
+        long[] offsets = new long[numTrees];
+        int[] lengths = new int[numTrees];
+
+        long indexSize = 2L*userClasses.length + 12L*numTrees;
+        long position = 24 + indexSize;
+
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( fileName ), 1 << 16 ) );
+
+        try {
+
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+            out.writeInt( iteration );
+            out.writeInt( userClasses.length );
+            out.writeInt( numOrigins );
+            out.writeInt( treeLength );
+
+            // the index is written again once the tree offsets are known.
+            for (long i=0; i < indexSize; i++)
+                out.writeByte( 0 );
+
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream( 1 << 16 );
+
+            for (int m=0; m < userClasses.length; m++) {
+                for (int i=0; i < numOrigins; i++) {
+
+                    int t = m*numOrigins + i;
+                    int[] tree = ( m < trees.length && i < trees[m].length ) ? trees[m][i] : null;
+
+                    if ( tree == null ) {
+                        offsets[t] = -1;
+                        continue;
+                    }
+
+                    if ( tree.length != treeLength )
+                        throw new IllegalArgumentException( String.format( "tree for user class %d, origin %d has %d elements; %d expected.", m, i, tree.length, treeLength ) );
+
+                    encoded.reset();
+                    encodeTree( tree, encoded );
+
+                    offsets[t] = position;
+                    lengths[t] = encoded.size();
+                    encoded.writeTo( out );
+                    position += encoded.size();
+
+                }
+            }
+
+        }
+        finally {
+            out.close();
+        }
+
+
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream( (int)Math.min( indexSize, Integer.MAX_VALUE ) );
+        DataOutputStream indexOut = new DataOutputStream( indexBytes );
+        for (int m=0; m < userClasses.length; m++)
+            indexOut.writeChar( userClasses[m] );
+        for (int t=0; t < numTrees; t++) {
+            indexOut.writeLong( offsets[t] );
+            indexOut.writeInt( lengths[t] );
+        }
+
+        RandomAccessFile file = new RandomAccessFile( fileName, "rw" );
+        try {
+            file.seek( 24 );
+            file.write( indexBytes.toByteArray() );
+        }
+        finally {
+            file.close();
+        }
+
+    }
+
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    public int getNumUserClasses() {
+        return userClasses.length;
+    }
+
+    public char getUserClass ( int m ) {
+        return userClasses[m];
+    }
+
+    public int getNumOrigins() {
+        return numOrigins;
+    }
+
+    public int getTreeLength() {
+        return treeLength;
+    }
+
+
+    public boolean hasTree ( int userClass, int origin ) {
+        return treeOffset[userClass*numOrigins + origin] >= 0;
+    }
+
+
+    /**
+     * Return the predecessor link array of the tree from origin for userClass, decoded into tree
+     * if it has getTreeLength() elements, or into a new array if not; null if no tree was saved.
+     * Several threads may read trees at the same time.
+     */
+    public int[] getTree ( int userClass, int origin, int[] tree ) {
+
+        int t = userClass*numOrigins + origin;
+        if ( treeOffset[t] < 0 )
+            return null;
+
+        if ( tree == null || tree.length != treeLength )
+            tree = new int[treeLength];
+
+        // a duplicate has its own position, so threads do not share buffer state.
+        ByteBuffer b = regions.get( treeRegion[t] ).duplicate();
+        b.position( (int)( treeOffset[t] - regionStart.get( treeRegion[t] ) ) );
+
+        int previous = -1;
+        for (int j=0; j < treeLength; j++) {
+            int value = 0;
+            int shift = 0;
+            int x;
+            do {
+                x = b.get();
+                value |= ( x & 0x7f ) << shift;
+                shift += 7;
+            } while ( ( x & 0x80 ) != 0 );
+            previous += ( value >>> 1 ) ^ -( value & 1 );
+            tree[j] = previous;
+        }
+
+        return tree;
+
+    }
+
+
+
+    private static void encodeTree ( int[] tree, ByteArrayOutputStream out ) {
+
+        int previous = -1;
+        for (int j=0; j < tree.length; j++) {
+            int delta = tree[j] - previous;
+            previous = tree[j];
+
+            int value = ( delta << 1 ) ^ ( delta >> 31 );
+            while ( ( value & ~0x7f ) != 0 ) {
+                out.write( ( value & 0x7f ) | 0x80 );
+                value >>>= 7;
+            }
+            out.write( value );
+        }
+
+    }
+
+
+    /**
+     * Map the trees in regions of at most MAX_REGION_SIZE bytes, each starting at a tree, since
+     * a MappedByteBuffer is indexed by int.  Trees are in the file in index order.
+     */
+    private void mapRegions ( FileChannel channel ) throws IOException {
+
+        treeRegion = new int[treeOffset.length];
+
+        long start = -1;
+        long end = -1;
+        for (int t=0; t < treeOffset.length; t++) {
+
+            if ( treeOffset[t] < 0 )
+                continue;
+
+            if ( start < 0 ) {
+                start = treeOffset[t];
+            }
+            else if ( treeOffset[t] + treeBytes[t] - start > MAX_REGION_SIZE ) {
+                regions.add( channel.map( FileChannel.MapMode.READ_ONLY, start, end - start ) );
+                regionStart.add( start );
+                start = treeOffset[t];
+            }
+
+            end = treeOffset[t] + treeBytes[t];
+            treeRegion[t] = regions.size();
+
+        }
+
+        if ( start >= 0 ) {
+            regions.add( channel.map( FileChannel.MapMode.READ_ONLY, start, end - start ) );
+            regionStart.add( start );
+        }
+
+    }
+
+}
@@ -45,17 +45,14 @@ public class ShortestPathTreeH {
     private int[] indexNode;
     private int[] nodeIndex;
     private int[] sortedLinkIndex;
-    private int[][] turnPenaltyIndices;
-    private float[][] turnPenaltyArray;
+    private TurnPenaltyTable turnPenalties;
     private boolean[] centroid;
     private boolean[] validLink;
     private double[] linkCost;
 	private double[] aonFlow;	
 	
 	
-	private int[] nodeLabeled;
-	private double[] nodeLabels;
-	private int[] predecessorLink;
+	private ShortestPathWorkspace ws;
 
 	private int numLinks;
 	private int numNodes;
@@ -65,14 +62,31 @@ public class ShortestPathTreeH {
 	private long buildTime = 0;
 	private long loadTime = 0;
 
-	private Heap candidateHeap;
-	private int[] heapContents;
+	private IndexedLinkHeap candidateHeap;
+
+    // if false, trees built to load a sparse trip table row stop once every destination with trips is settled.
+    private boolean buildFullTrees = false;
+    private int[] pendingDestinations = new int[0];
+
+    // nodes reached by the current tree in node order, for the node lists returned by getNodesWithinCost(s).
+    private int[] sortedReachedNodes = new int[0];
+    private int numSortedReached = -1;
 
     private boolean debug = false;
     
     
 
     public ShortestPathTreeH ( NetworkHandlerIF nh ) {
+        this( nh, false );
+    }
+
+    
+    /**
+     * If useThreadWorkspace is true, the label, predecessor and heap arrays are taken from the
+     * ShortestPathWorkspace held by the calling thread, so callers that repeatedly create trees
+     * don't allocate new arrays.  The object must then only be used by the thread that created it.
+     */
+    public ShortestPathTreeH ( NetworkHandlerIF nh, boolean useThreadWorkspace ) {
 
         numLinks = nh.getLinkCount();
         numNodes = nh.getNodeCount();
@@ -89,21 +103,27 @@ public class ShortestPathTreeH {
         
         aonFlow = new double[numLinks];
         
-        turnPenaltyIndices = nh.getTurnPenaltyIndices();
-        turnPenaltyArray = nh.getTurnPenaltyArray();
+        turnPenalties = TurnPenaltyTable.getInstance( numNodes, ib, nh.getTurnPenaltyIndices(), nh.getTurnPenaltyArray() );
         
         
-        nodeLabeled = new int[numNodes+1];
-        nodeLabels = new double[numNodes+1];
-
-        //Create a new heap structure to sort candidate node labels
-        candidateHeap = new Heap(numNodes+1);
-        heapContents = new int[numNodes];
+        if ( useThreadWorkspace )
+            ws = ShortestPathWorkspace.getThreadInstance( numNodes, ia, ib, indexNode );
+        else
+            ws = new ShortestPathWorkspace( numNodes, ia, ib, indexNode );
         
     }
 
     
     public ShortestPathTreeH ( int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+        this( numLinks, numNodes, numZones, ia, ib, ipa, sortedLinkIndexA, indexNode, nodeIndex, centroid, turnPenaltyIndices, turnPenaltyArray, new ShortestPathWorkspace( numNodes, ia, ib, indexNode ) );
+    }
+
+    
+    /**
+     * Create a tree object that uses the label, predecessor and heap arrays in ws.  Several tree
+     * objects used by the same thread, e.g. one per user class, may share a workspace.
+     */
+    public ShortestPathTreeH ( int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, int[][] turnPenaltyIndices, float[][] turnPenaltyArray, ShortestPathWorkspace ws ) {
 
         this.numLinks = numLinks;
         this.numNodes = numNodes;
@@ -120,15 +140,9 @@ public class ShortestPathTreeH {
         
         aonFlow = new double[numLinks];
         
-        this.turnPenaltyIndices = turnPenaltyIndices;
-        this.turnPenaltyArray = turnPenaltyArray;
+        turnPenalties = TurnPenaltyTable.getInstance( numNodes, ib, turnPenaltyIndices, turnPenaltyArray );
 
-        nodeLabeled = new int[numNodes+1];
-        nodeLabels = new double[numNodes+1];
-
-        //Create a new heap structure to sort candidate node labels
-        candidateHeap = new Heap(numNodes+1);
-        heapContents = new int[numNodes];
+        this.ws = ws;
         
     }
 
@@ -137,15 +151,12 @@ public class ShortestPathTreeH {
 
         long start = System.currentTimeMillis();
 
-        Arrays.fill(nodeLabeled, 0);
-        Arrays.fill(nodeLabels, 1.0e+99);
-		nodeLabels[inOrigin] = 0.0;
-		nodeLabeled[inOrigin] = 1;
-
-		predecessorLink = new int[numNodes+1];
-        Arrays.fill(predecessorLink, -1);
+        // the workspace may have been used for another network's arrays since the last tree, so get the heap for ours.
+        candidateHeap = ws.getCandidateHeap( ia, ib, indexNode );
 
-        candidateHeap.clear();
+        // labels and predecessor links left from the previous tree are invalidated, not refilled.
+        ws.reset( inOrigin );
+        numSortedReached = -1;
 
         initTime += (System.currentTimeMillis() - start);
 
@@ -167,13 +178,117 @@ public class ShortestPathTreeH {
 		int k;
         while ((k = candidateHeap.remove()) >= 0) {
             setTreeRootLabels ( ib[k] );
-			nodeLabeled[ib[k]] = 1;
+			ws.setLabeled( ib[k] );
+        }
+
+        buildTime += (System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Build the tree from inOrigin only as far as maxCost, i.e. until the smallest label in the
+     * candidate heap is maxCost or more.  Link costs and turn penalties are not negative, so every
+     * node with a label less than maxCost has the label it has in the full tree, and for thresholds
+     * up to maxCost, getNodesWithinCost() and getNodesWithinCosts() return the same nodes.
+     */
+    public void buildTree ( int inOrigin, double maxCost ) {
+        
+		long start = System.currentTimeMillis();
+
+		this.inOrigin = inOrigin;
+		
+        initData();
+
+        // set labels for links eminating from the origin node
+        setTreeRootLabels ( inOrigin );
+
+        // continue labeling until candidateHeap is empty or the nodes left are beyond maxCost
+		int k;
+        while ((k = candidateHeap.peek()) >= 0 && ws.getNodeLabel( ib[k] ) < maxCost) {
+            candidateHeap.remove();
+            setTreeRootLabels ( ib[k] );
+			ws.setLabeled( ib[k] );
+        }
+
+        buildTime += (System.currentTimeMillis() - start);
+    }
+
+
+    /**
+     * Build the tree from inOrigin only until the labels of the destinations with trips can no
+     * longer change, i.e. until the smallest label in the candidate heap is no less than any of
+     * theirs.  The paths to those destinations are then the same as in the full tree, but nodes
+     * farther from the origin are not labeled, so the tree can only be used to load these trips.
+     */
+    private void buildTreeToDestinations ( int inOrigin, int[] destinations, double[] trips ) {
+        
+		long start = System.currentTimeMillis();
+
+		this.inOrigin = inOrigin;
+		
+        initData();
+
+        if ( pendingDestinations.length < destinations.length )
+            pendingDestinations = new int[destinations.length];
+        
+        int numPending = 0;
+        for (int i=0; i < destinations.length; i++) {
+            if ( trips[i] > 0 && destinations[i] != inOrigin )
+                pendingDestinations[numPending++] = destinations[i];
+        }
+        
+        if ( numPending > 0 ) {
+            
+            // set labels for links eminating from the origin node
+            setTreeRootLabels ( inOrigin );
+
+            // continue labeling until every destination is settled or candidateHeap is empty.
+            // the destinations are checked once every numPending nodes labeled, so checking adds a constant per node.
+            int k;
+            int removedSinceCheck = 0;
+            while ((k = candidateHeap.remove()) >= 0) {
+                setTreeRootLabels ( ib[k] );
+                ws.setLabeled( ib[k] );
+                
+                if ( ++removedSinceCheck >= numPending ) {
+                    removedSinceCheck = 0;
+                    numPending = removeSettledDestinations ( numPending );
+                    if ( numPending == 0 )
+                        break;
+                }
+            }
+            
         }
 
         buildTime += (System.currentTimeMillis() - start);
     }
 
 
+    /**
+     * Remove the destinations whose labels are final from the first numPending entries of
+     * pendingDestinations, returning the number left.  Link costs and turn penalties are not
+     * negative, so no label smaller than the smallest label in the candidate heap can be set.
+     */
+    private int removeSettledDestinations ( int numPending ) {
+        
+        int k = candidateHeap.peek();
+        if ( k < 0 )
+            return 0;
+        
+        double minLabel = ws.getNodeLabel( ib[k] );
+        
+        int n = 0;
+        for (int i=0; i < numPending; i++) {
+            int j = pendingDestinations[i];
+            if ( ws.getNodeLabel( j ) > minLabel )
+                pendingDestinations[n++] = j;
+        }
+        
+        return n;
+        
+    }
+
+
     public boolean buildPath(int inOrigin, int inDestination) {
         int k;
         boolean debug = false;
@@ -200,7 +315,7 @@ public class ShortestPathTreeH {
         while (ib[k] != inDestination) {
             setPathRootLabels (ib[k], inDestination);
             if (debug) candidateHeap.dataPrint();
-            nodeLabeled[ib[k]] = 1;
+            ws.setLabeled( ib[k] );
             k = candidateHeap.remove();
             if (k == -1) {
                 return false;
@@ -256,6 +371,13 @@ public class ShortestPathTreeH {
 //        if( debug )
 //            spDebugLogger.info ("[rootNode]:  rootNode=" + indexNode[rootNode] +"(external node label)" + ", ip[" + rootNode + "]=" + ip[rootNode] + ", ip[" + (rootNode+1) + "]=" + ip[(rootNode+1)] + ", start=" + start + ", end=" + end + ", offset=" + offset );
         
+        // all links in the forward star start at rootNode, which is already labeled
+        double rootLabel = ws.getNodeLabel( rootNode );
+        int rootPredecessor = ws.getPredecessorLink( rootNode );
+        
+        // turn penalties are looked up only if a turn at rootNode has one
+        boolean rootHasTurnPenalties = turnPenalties != null && rootPredecessor >= 0 && turnPenalties.hasTurnsAt( rootNode );
+        
         boolean first = true;
         for (int i=start; i < end; i++) {
             
@@ -271,8 +393,8 @@ public class ShortestPathTreeH {
 //            }
 
             turnPenalty = 0.0;
-            if ( turnPenaltyIndices != null && turnPenaltyIndices.length > 0 && predecessorLink[ia[k]] >= 0 )
-                turnPenalty = getTurnPenalty( k, predecessorLink[ia[k]] );
+            if ( rootHasTurnPenalties )
+                turnPenalty = turnPenalties.getPenalty( rootPredecessor, k );
 
 //            if(logger.isDebugEnabled())
 //                logger.debug ("i=" + i + ", k=" + k + ", ia[k=" + k + "]=" + ia[k] + ", ib[k=" + k + "]=" + ib[k] + ", an[k=" + k + "]=" + indexNode[ia[k]] + ", bn[k=" + k + "]=" + indexNode[ib[k]] + ", linkCost[k=" + k + "]=" + linkCost[k] +  ", nodeLabeled[ib[k]=" + ib[k] + "]=" +  nodeLabeled[ib[k]] +  ", nodeLabels[ib[k]=" + ib[k] + "]=" + nodeLabels[ib[k]] +  ", nodeLabels[ia[k]=" + ia[k] + "]=" + nodeLabels[ia[k]] + ", validLink[k=" + k + "]=" + validLink[k] + ", turnPenalty=" + turnPenalty);
@@ -281,10 +403,10 @@ public class ShortestPathTreeH {
 //                spDebugLogger.info ("[forward star]:  i=" + i + ", k=" + k + ", ia[k=" + k + "]=" + ia[k] + ", ib[k=" + k + "]=" + ib[k] + ", an[k=" + k + "]=" + indexNode[ia[k]] + ", bn[k=" + k + "]=" + indexNode[ib[k]] + ", linkCost[k=" + k + "]=" + linkCost[k] +  ", nodeLabeled[ib[k]=" + ib[k] + "]=" +  nodeLabeled[ib[k]] +  ", nodeLabels[ib[k]=" + ib[k] + "]=" + nodeLabels[ib[k]] +  ", nodeLabels[ia[k]=" + ia[k] + "]=" + nodeLabels[ia[k]] + ", validLink[k=" + k + "]=" + validLink[k] + ", turnPenalty=" + turnPenalty);
             
             if ( validLink[k] && turnPenalty >= 0 ) {
-                if (nodeLabeled[ib[k]] == 0) {
-                    label = linkCost[k] + nodeLabels[ia[k]] + turnPenalty;
-                    if (label - nodeLabels[ib[k]] < -COMPARE_EPSILON) {
-                        nodeLabels[ib[k]] = label;
+                if ( !ws.isLabeled(ib[k]) ) {
+                    label = linkCost[k] + rootLabel + turnPenalty;
+                    if (label - ws.getNodeLabel(ib[k]) < -COMPARE_EPSILON) {
+                        ws.setNodeLabel( ib[k], label, k );
                         if (!centroid[k] || rootNode == inOrigin || ib[k] == destNode) {
                             candidateHeap.add(k);
 
@@ -292,8 +414,6 @@ public class ShortestPathTreeH {
 //                                candidateHeap.dataPrint( true );
                         }
 
-                        predecessorLink[ib[k]] = k;
-
 //                        if(logger.isDebugEnabled())
 //                            logger.debug ("predecessor[" + indexNode[ib[k]] + "]=" + k + "   (" + indexNode[ia[k]] + "," + indexNode[ib[k]] + ")");
 //                        
@@ -323,22 +443,8 @@ public class ShortestPathTreeH {
         long start = System.currentTimeMillis();
 
         Arrays.fill (aonFlow, 0.0);
+        loadTripsOnTree ( userClass, tripRow, aonFlow );
         
-        int k;
-        for (int j=0; j < numZones; j++) {
-            if ( tripRow[j] > 0 && j != inOrigin ) {
-                k = predecessorLink[j];
-                if (k == -1) {
-                    logger.info ("no path from " + indexNode[inOrigin] + " to " + indexNode[j] + " for userClass " + userClass);
-                    continue;
-                }
-                aonFlow[k] += tripRow[j];
-                while (ia[k] != inOrigin) {
-                    k = predecessorLink[ia[k]];
-                    aonFlow[k] += tripRow[j];
-                }
-            }
-        }
         loadTime += (System.currentTimeMillis() - start);
         
         return aonFlow;
@@ -354,37 +460,160 @@ public class ShortestPathTreeH {
      */
     public double[] buildAndLoadTrees ( int userClass, int origin, double[] originTrips  ) {
 
-        int k;
-        
         Arrays.fill (aonFlow, 0.0);
+        buildAndLoadTrees ( userClass, origin, originTrips, aonFlow );
+
+        return aonFlow;
         
+    }
+
+
+
+    /**
+     * Build the shortest path tree from the origin and add the trips in originTrips to linkFlows,
+     * e.g. a thread's accumulated aon link flows for the user class.  Only links on paths to
+     * destinations with trips are touched, so no per origin link flow array has to be cleared or summed.
+     */
+    public void buildAndLoadTrees ( int userClass, int origin, double[] originTrips, double[] linkFlows ) {
 
         // first build the shortest path tree for internal origin zone number z.
         buildTree( origin );
 
-        
+        long start = System.currentTimeMillis();
+
         // load these trips onto the links on routes from z to all destinations j, if there are trips from z to j. 
+        loadTripsOnTree ( userClass, originTrips, linkFlows );
+        
+        loadTime += (System.currentTimeMillis() - start);
+
+    }
+
+
+
+    /**
+     * Build the shortest path tree from the origin and add the trips from a sparse trip table row,
+     * originTrips[i] to destinations[i], to linkFlows.  Only destinations with demand are visited,
+     * and unless setBuildFullTrees(true) was called, the tree is built only as far as they are.
+     */
+    public void buildAndLoadTrees ( int userClass, int origin, int[] destinations, double[] originTrips, double[] linkFlows ) {
+
+        if ( buildFullTrees )
+            buildTree( origin );
+        else
+            buildTreeToDestinations( origin, destinations, originTrips );
+
+        long start = System.currentTimeMillis();
+
+        loadTripsOnTree ( userClass, destinations, originTrips, linkFlows );
+        
+        loadTime += (System.currentTimeMillis() - start);
+
+    }
+
+
+
+    /**
+     * Add the trips in tripRow to linkFlows on the links of the current tree.
+     * 
+     * Rather than tracing the path back to the origin from every destination, trips are set at
+     * their destination nodes and then pushed up the tree once, visiting permanently labeled nodes
+     * in reverse order of labeling so that all flow arriving at a node has been collected before
+     * the node passes it on to its predecessor link.  Destination zones not labeled permanently,
+     * i.e. centroids which are not expanded, are leaves of the tree and pass their trips on directly.
+     */
+    private void loadTripsOnTree ( int userClass, double[] tripRow, double[] linkFlows ) {
+
+        double[] nodeFlow = clearNodeFlow();
+        
         for (int j=0; j < numZones; j++) {
-            
-            if ( originTrips[j] > 0 && j != origin ) {
-                
-                k = predecessorLink[j];
-                if (k == -1) {
-                    logger.info ("no path from " + indexNode[origin] + " to " + indexNode[j] + " for userClass " + userClass );
-                    continue;
-                }
-                
-                
-                aonFlow[k] += originTrips[j];
-                while (ia[k] != origin) {
-                    k = predecessorLink[ia[k]];
-                    aonFlow[k] += originTrips[j];
-                }
-            }
+            if ( tripRow[j] > 0 && j != inOrigin )
+                setDestinationTrips ( userClass, j, tripRow[j], nodeFlow, linkFlows );
         }
 
+        pushFlowsUpTree ( nodeFlow, linkFlows );
+        
+    }
 
-        return aonFlow;
+
+
+    /**
+     * Add the trips to destinations from a sparse trip table row to linkFlows on the links of the
+     * current tree, as loadTripsOnTree() does for a dense row.
+     */
+    private void loadTripsOnTree ( int userClass, int[] destinations, double[] tripRow, double[] linkFlows ) {
+
+        double[] nodeFlow = clearNodeFlow();
+        
+        for (int i=0; i < destinations.length; i++) {
+            int j = destinations[i];
+            if ( tripRow[i] > 0 && j != inOrigin )
+                setDestinationTrips ( userClass, j, tripRow[i], nodeFlow, linkFlows );
+        }
+
+        pushFlowsUpTree ( nodeFlow, linkFlows );
+        
+    }
+
+
+
+    private double[] clearNodeFlow () {
+
+        int[] settledNodes = ws.getSettledNodes();
+        int numSettled = ws.getNumSettled();
+        double[] nodeFlow = ws.getNodeFlow();
+
+        for (int i=0; i < numSettled; i++)
+            nodeFlow[settledNodes[i]] = 0.0;
+        
+        return nodeFlow;
+        
+    }
+
+
+
+    /**
+     * Set the trips to destination zone j at its node, or on its predecessor link if the zone is a leaf of the tree.
+     */
+    private void setDestinationTrips ( int userClass, int j, double trips, double[] nodeFlow, double[] linkFlows ) {
+
+        int k = ws.getPredecessorLink(j);
+        if (k == -1) {
+            logger.info ("no path from " + indexNode[inOrigin] + " to " + indexNode[j] + " for userClass " + userClass);
+            return;
+        }
+        
+        if ( ws.isLabeled(j) ) {
+            nodeFlow[j] += trips;
+        }
+        else {
+            linkFlows[k] += trips;
+            nodeFlow[ia[k]] += trips;
+        }
+        
+    }
+
+
+
+    /**
+     * Pass the flow collected at each permanently labeled node on to its predecessor link.
+     */
+    private void pushFlowsUpTree ( double[] nodeFlow, double[] linkFlows ) {
+
+        int k;
+        
+        int[] settledNodes = ws.getSettledNodes();
+        int numSettled = ws.getNumSettled();
+
+        // settledNodes[0] is the origin, which passes nothing on.
+        for (int i=numSettled-1; i > 0; i--) {
+            int node = settledNodes[i];
+            double flow = nodeFlow[node];
+            if ( flow != 0.0 ) {
+                k = ws.getPredecessorLink(node);
+                linkFlows[k] += flow;
+                nodeFlow[ia[k]] += flow;
+            }
+        }
         
     }
 
@@ -396,42 +625,67 @@ public class ShortestPathTreeH {
      */
     public double[][] getSkims ( double[][] linkAttributesToSkim ) {
         
-        int p;
 		double[][] skimTables = new double [linkAttributesToSkim.length][numZones];
+        getSkims ( linkAttributesToSkim, skimTables );
+
+        return skimTables;
+        
+    }
 
 
-        for (int k=0; k < linkAttributesToSkim.length; k++) {
-
-	        for (int j=0; j < numZones; j++) {
-	        	
-	            if (j != inOrigin) {
-	                p = predecessorLink[j];
-	                if (p == -1) {
-	                    //centroid is not connected
-	                	skimTables[k][j] = Double.NEGATIVE_INFINITY;
-	                    continue;
-	                }
-	                skimTables[k][j] += linkAttributesToSkim[k][p];
-	                while (ia[p] != inOrigin) {
-	                    p = predecessorLink[ia[p]];
-	                    if (p == -1) {
-	                        logger.error ("invalid predecessorLink: inOrigin=" + inOrigin + ", j=" + j + ", p=" + p);
-	                        logger.error ("skimming attributes for table " + k);
-	                        System.exit(-1);
-	                    }
-	                    
-	                    skimTables[k][j] += linkAttributesToSkim[k][p];
-	
-	                }
-	                
-	            }
-	            
-	        }
+    /**
+     * Skim the current tree for each attribute in linkAttributesToSkim, writing the values to
+     * every destination zone into the rows of skimTables.  Attribute values are accumulated
+     * once per node, from the origin outward in the order nodes were labeled, rather than by
+     * tracing the path back from each destination.  Zones not connected to the origin get
+     * Double.NEGATIVE_INFINITY, and the origin itself gets 0.
+     */
+    public void getSkims ( double[][] linkAttributesToSkim, double[][] skimTables ) {
+
+        int k;
+        int numSkims = linkAttributesToSkim.length;
         
+        int[] settledNodes = ws.getSettledNodes();
+        int numSettled = ws.getNumSettled();
+        double[][] nodeSkims = ws.getNodeSkims( numSkims );
+
+        for (int m=0; m < numSkims; m++)
+            nodeSkims[m][inOrigin] = 0.0;
+
+        // settledNodes[0] is the origin; every other node is labeled after the a-node of its predecessor link.
+        for (int i=1; i < numSettled; i++) {
+            int node = settledNodes[i];
+            k = ws.getPredecessorLink(node);
+            for (int m=0; m < numSkims; m++)
+                nodeSkims[m][node] = nodeSkims[m][ia[k]] + linkAttributesToSkim[m][k];
+        }
+
+        for (int j=0; j < numZones; j++) {
+
+            if ( j == inOrigin ) {
+                for (int m=0; m < numSkims; m++)
+                    skimTables[m][j] = 0.0;
+            }
+            else if ( ws.isLabeled(j) ) {
+                for (int m=0; m < numSkims; m++)
+                    skimTables[m][j] = nodeSkims[m][j];
+            }
+            else {
+                k = ws.getPredecessorLink(j);
+                if (k == -1) {
+                    //centroid is not connected
+                    for (int m=0; m < numSkims; m++)
+                        skimTables[m][j] = Double.NEGATIVE_INFINITY;
+                }
+                else {
+                    // zones reached by a centroid connector are not expanded, so the a-node is labeled.
+                    for (int m=0; m < numSkims; m++)
+                        skimTables[m][j] = nodeSkims[m][ia[k]] + linkAttributesToSkim[m][k];
+                }
+            }
+
         }
 
-        return skimTables;
-        
     }
 
 
@@ -447,7 +701,7 @@ public class ShortestPathTreeH {
 
         for (int j=0; j < numZones; j++) {
             if (j != inOrigin) {
-                k = predecessorLink[j];
+                k = ws.getPredecessorLink(j);
                 if (k == -1) {
                     //centroid is not connected
                     skim[j] = Double.NEGATIVE_INFINITY;
@@ -455,7 +709,7 @@ public class ShortestPathTreeH {
                 }
 				skim[j] += linkAttributeToSkim[k];
                 while (ia[k] != inOrigin) {
-                    k = predecessorLink[ia[k]];
+                    k = ws.getPredecessorLink(ia[k]);
                     if (k == -1) {
                         logger.info ("invalid predecessorLink: inOrigin=" + inOrigin + ", j=" + j + ", k=" + k);
                         System.exit(-1);
@@ -485,12 +739,12 @@ public class ShortestPathTreeH {
 		buildTree ( nodeIndex[origin] );
 		
 		
-		int k = predecessorLink[nodeIndex[destination]];
+		int k = ws.getPredecessorLink(nodeIndex[destination]);
 
 		int count = 0;
 		while (ia[k] != nodeIndex[origin]) {
 			pathLinks[count++] = k;
-			k = predecessorLink[ia[k]];
+			k = ws.getPredecessorLink(ia[k]);
 		}
 		pathLinks[count++] = k;
 
@@ -511,15 +765,33 @@ public class ShortestPathTreeH {
 	public void setLinkCost ( double[] linkCost) {
 		this.linkCost = linkCost;
 	}
+
+
+    /**
+     * Set whether trees built to load a sparse trip table row are completed, e.g. because the
+     * trees are saved or skimmed after loading, or stop at the last destination with trips.
+     */
+	public void setBuildFullTrees ( boolean buildFullTrees ) {
+		this.buildFullTrees = buildFullTrees;
+	}
     
     
 
     /**
-     * Return the the int[] predecessorLink array that is current for
-     * this ShortestPathTreeH object.
+     * Return a copy of the predecessor links for the current tree held by this
+     * ShortestPathTreeH object.  Unreached nodes have a predecessor link of -1.
      */
     public int[] getPredecessorLink () {
-        return predecessorLink;
+        return ws.getPredecessorLinks( null );
+    }
+
+    
+    /**
+     * Copy the predecessor links for the current tree into tree, allocating a new
+     * array only if tree is null or has the wrong size, and return it.
+     */
+    public int[] getPredecessorLink ( int[] tree ) {
+        return ws.getPredecessorLinks( tree );
     }
 
     
@@ -530,16 +802,19 @@ public class ShortestPathTreeH {
      */
     public ArrayList<double[]> getNodesWithinCost ( double costThreshold, boolean[] validNode ) {
 
+        int numReached = sortReachedNodes();
+        
         ArrayList<double[]> tempList = new ArrayList<double[]>();
-        int[] tempData = new int[nodeLabels.length];
+        int[] tempData = new int[numReached];
         
         int k = 0;
-        for (int i=0; i < nodeLabels.length; i++) {
-            if ( validNode[i] && nodeLabels[i] < costThreshold  ) {
+        for (int n=0; n < numReached; n++) {
+            int i = sortedReachedNodes[n];
+            if ( validNode[i] && ws.getNodeLabel(i) < costThreshold  ) {
                 double[] nodeData = new double[2];
                 nodeData[0] = i;
-                nodeData[1] = nodeLabels[i];
-                tempData[k++] = (int)(nodeLabels[i]*100000);
+                nodeData[1] = ws.getNodeLabel(i);
+                tempData[k++] = (int)(ws.getNodeLabel(i)*100000);
                 tempList.add( nodeData );
             }
         }
@@ -564,12 +839,15 @@ public class ShortestPathTreeH {
 
         ArrayList<double[]> nodeList = new ArrayList<double[]>();
         
-        for (int i=0; i < nodeLabels.length; i++) {
+        int numReached = sortReachedNodes();
+        
+        for (int n=0; n < numReached; n++) {
             
-            if ( validNode[i] && nodeLabels[i] >= minThreshold && nodeLabels[i] < maxThreshold ) {
+            int i = sortedReachedNodes[n];
+            if ( validNode[i] && ws.getNodeLabel(i) >= minThreshold && ws.getNodeLabel(i) < maxThreshold ) {
                 double[] nodeData = new double[2];
                 nodeData[0] = i;
-                nodeData[1] = nodeLabels[i];
+                nodeData[1] = ws.getNodeLabel(i);
                 nodeList.add( nodeData );
             }
         }
@@ -578,29 +856,30 @@ public class ShortestPathTreeH {
     }
     
     
-    
-    
-    private float getTurnPenalty( int k, int predecessorLink ) {
-        
-        float penalty = 0.0f;
+    /**
+     * Copy the nodes reached by the current tree into sortedReachedNodes in node order, once per
+     * tree, and return how many there are.  Unreached nodes have no label, so the node lists are
+     * those a scan of every node would give, in the same order, but cost only the nodes reached.
+     */
+    private int sortReachedNodes () {
         
-        if ( turnPenaltyIndices[predecessorLink] != null ) {
+        if ( numSortedReached < 0 ) {
+            
+            numSortedReached = ws.getNumReached();
+            if ( sortedReachedNodes.length < numSortedReached )
+                sortedReachedNodes = new int[numNodes+1];
+            
+            System.arraycopy( ws.getReachedNodes(), 0, sortedReachedNodes, 0, numSortedReached );
+            Arrays.sort( sortedReachedNodes, 0, numSortedReached );
             
-            for (int i=0; i < turnPenaltyIndices[predecessorLink].length; i++) {
-                
-                if ( turnPenaltyIndices[predecessorLink][i] == k ) {
-                    penalty = turnPenaltyArray[predecessorLink][i];
-                    break;
-                }
-                
-            }
-
         }
         
-        return penalty;
+        return numSortedReached;
         
-    }
-
+    }
+    
+    
+    
     
     public int[] getNodeList () {
 
@@ -613,13 +892,13 @@ public class ShortestPathTreeH {
             logger.debug ("");
             logger.debug (inDestination + "(" + indexNode[inDestination] + ")");
 
-            k = predecessorLink[inDestination];
+            k = ws.getPredecessorLink(inDestination);
             logger.debug (ia[k] + "(" + indexNode[ia[k]] + ")");
             
             count = 0;
             while (ia[k] != inOrigin) {
                 count++;
-                k = predecessorLink[ia[k]];
+                k = ws.getPredecessorLink(ia[k]);
                 logger.debug (ia[k] + "(" + indexNode[ia[k]] + ")");
             }
             logger.debug (ia[k] + "(" + indexNode[ia[k]] + ")");
@@ -627,11 +906,11 @@ public class ShortestPathTreeH {
                 logger.debug (count + " links in path from " + inOrigin + "(" + indexNode[inOrigin] + ") to " + inDestination + "(" + indexNode[inDestination] + ")");
         }
 
-        k = predecessorLink[inDestination];
+        k = ws.getPredecessorLink(inDestination);
         count = 0;
         while (ia[k] != inOrigin) {
             pathLinks[count++] = k;
-            k = predecessorLink[ia[k]];
+            k = ws.getPredecessorLink(ia[k]);
         }
         pathLinks[count++] = k;
 
@@ -655,10 +934,10 @@ public class ShortestPathTreeH {
 
         ArrayList<Integer> pathLinksList = new ArrayList<Integer>(MAX_PATH_LENGTH);
         
-        k = predecessorLink[inDestination];
+        k = ws.getPredecessorLink(inDestination);
         while (ia[k] != inOrigin) {
             pathLinksList.add(k);
-            k = predecessorLink[ia[k]];
+            k = ws.getPredecessorLink(ia[k]);
         }
         pathLinksList.add(k);
 
@@ -669,258 +948,5 @@ public class ShortestPathTreeH {
         return pathLinks;
 
     }
-    
-    
-
-    
-    
-    
-    
-    /*-------------------- Inner class --------------------*/
-
-    public class Heap {
-
-
-
-        private int data[];
-        private int last;
-
-
-        public Heap(int size) {
-            data = new int[size];
-            last = -1;
-        }
-
-
-        public Heap(int initData[]) {
-            data = new int[100];
-            for (int i = 0; i < initData.length; i++) {
-                data[i] = initData[i];
-            }
-            last = initData.length - 1;
-            heapify();
-        }
-
-
-        public int peek() {
-            if (last == -1) return -1;   // no item left
-            return data[0];              // return element at top of heap
-        }
-
-
-        public void clear() {
-            last = -1;
-            for (int i=0; i < heapContents.length; i++)
-                heapContents[i] = 0;
-        }
-
-
-        //Rearrange current data into a heap
-        public void heapify() {
-            for (int i = (last - 1) / 2; i >= 0; i--) {
-                percolateDown(i);
-            }
-        }
-
-
-        public void add(int x) {
-            
-            if(logger.isDebugEnabled()) {
-                logger.debug("adding " + x + ", last=" + last + "   " + indexNode[ia[x]] + "   " + indexNode[ib[x]] + "   " + nodeLabels[ib[x]]);
-            }
-  
-            if (heapContents[ib[x]] == 1) {
-				for (int i = last; i >= 0; i--) {
-				    if ( ib[data[i]] == ib[x] )
-				        percolateUp(i);
-				}
-            }
-            else {
-				data[++last] = x;
-				percolateUp(last);
-
-				heapContents[ib[x]] = 1;
-            }
-
-            
-			
-        }
-
-
-		public int remove() {
-			if (last == -1) return -1;   // no item left
-			int min = data[0];           // remove element at top of heap
-			data[0] = data[last];        // move last element to top of heap
-
-			if (last == 0) {
-				last = -1;
-				if(logger.isDebugEnabled()) {
-                    logger.debug("remove " + min + ", last=" + last);
-                }
-				return min;
-			}
-
-			last--;                      // reduce heap size
-			percolateDown(0);            // move element at top down
-
-			if(logger.isDebugEnabled()) {
-                logger.debug("remove " + min + ", last=" + last);
-            }
-			return min;
-		}
-
-
-		/**
-		 * remove element i from the heap. 
-		 * 
-		 */
-		public int remove(int i) {
-			if (last == -1) return -1;   // no item left
-			int min = data[i];           // remove element at top of heap
-			data[i] = data[last];        // move last element to top of heap
-
-			if (last == 0) {
-				last = -1;
-				if(logger.isDebugEnabled()) {
-                    logger.debug("remove " + min + ", last=" + last);
-                }
-				return min;
-			}
-
-			last--;                      // reduce heap size
-			percolateDown(i);            // move element at top down
-
-			if(logger.isDebugEnabled()) {
-                logger.debug("remove " + min + ", last=" + last);
-            }
-			return min;
-		}
-
-
-        //Let element move up and settle
-        public void percolateUp(int idx) {
-            if(logger.isDebugEnabled()) {
-                logger.debug("pu " + idx);
-            }
-            if (idx == 0) return;
-            int parentIdx = (idx - 1) / 2;
-            int k = data[idx];                                  // added
-            int kParent = data[parentIdx];          // added
-			if(logger.isDebugEnabled()) {
-				logger.debug("k=" + k + ", ib[k]=" + ib[k] + ", an[k]=" + indexNode[ia[k]] + ", bn[k]=" + indexNode[ib[k]] + ", nodeLabels[ib[k]]=" + nodeLabels[ib[k]]);
-				logger.debug("kParent=" + kParent + ", ib[kParent]=" + ib[kParent] + ", an[kParent]=" + indexNode[ia[kParent]] + ", bn[kParent]=" + indexNode[ib[kParent]] + ", nodeLabels[ib[kParent]]=" + nodeLabels[ib[kParent]]);
-				logger.debug("nodeLabels[ib[k]] - nodeLabels[ib[kParent]]=" + (nodeLabels[ib[k]] - nodeLabels[ib[kParent]]) );
-			}
-
-			if (nodeLabels[ib[k]] - nodeLabels[ib[kParent]] < -COMPARE_EPSILON) {
-				swap(parentIdx, idx);           // move larger parent down
-				percolateUp(parentIdx);
-            }
-			else if ((nodeLabels[ib[k]] - nodeLabels[ib[kParent]] <= COMPARE_EPSILON) && (indexNode[ib[k]] < indexNode[ib[kParent]])) {           // added
-                swap(parentIdx, idx);           // move larger parent down
-                percolateUp(parentIdx);
-            }
-        }
-
-
-        public void percolateDown(int idx) {
-            if(logger.isDebugEnabled()) {
-                logger.debug("pd " + idx);
-            }
-            int childIdx = idx * 2 + 1;
-            if (childIdx > last) return;
-            int k = data[idx];
-            int kChild = data[childIdx];
-            int kChildp1 = data[childIdx+1];
-
-			if(logger.isDebugEnabled()) {
-				logger.debug("idx=" + idx + ", childIdx=" + childIdx + ", last=" + last);
-				logger.debug("k=" + k + ", ib[k]=" + ib[k] + ", an[k]=" + indexNode[ia[k]] + ", bn[k]=" + indexNode[ib[k]] + ", nodeLabels[ib[k]]=" + nodeLabels[ib[k]]);
-				logger.debug("kChild=" + kChild + ", ib[kChild]=" + ib[kChild] + ", an[kChild]=" + indexNode[ia[kChild]] + ", bn[kChild]=" + indexNode[ib[kChild]] + ", nodeLabels[ib[kChild]]=" + nodeLabels[ib[kChild]]);
-				logger.debug("kChildp1=" + kChildp1 + ", ib[kChildp1]=" + ib[kChildp1] + ", an[kChildp1]=" + indexNode[ia[kChildp1]] + ", bn[kChildp1]=" + indexNode[ib[kChildp1]] + ", nodeLabels[ib[kChildp1]]=" + nodeLabels[ib[kChildp1]]);
-				logger.debug("nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]]=" + (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]]) );
-				logger.debug("nodeLabels[ib[kChild]] - nodeLabels[ib[k]]=" + (nodeLabels[ib[kChild]] - nodeLabels[ib[k]]) );
-			}
-			if ((childIdx + 1) <= last && (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]] < -COMPARE_EPSILON)) {
-                childIdx = childIdx + 1;
-                kChild = data[childIdx];
-            }
-            else if ((childIdx + 1) <= last && (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]] <= COMPARE_EPSILON) && (indexNode[ib[kChildp1]] < indexNode[ib[kChild]])) {
-                childIdx = childIdx + 1;
-                kChild = data[childIdx];
-            }
-            
-			if (nodeLabels[ib[kChild]] - nodeLabels[ib[k]] < -COMPARE_EPSILON) {
-				swap(idx, childIdx);
-				percolateDown(childIdx);
-			}
-            else if ((nodeLabels[ib[kChild]] - nodeLabels[ib[k]] <= COMPARE_EPSILON) && (indexNode[ib[kChild]] < indexNode[ib[k]])) {
-                swap(idx, childIdx);
-                percolateDown(childIdx);
-            }
-        }
-
-
-        public void swap(int idx1, int idx2) {
-            int temp = data[idx1];
-            data[idx1] = data[idx2];
-            data[idx2] = temp;
-        }
-
-
-		//Print heap contents to console (note in sorted order)
-        public void dataPrint() {
-            int k;
-
-            for (int i = 0; i <= last; i++) {
-                k = data[i];
-                logger.debug("i=" + i + ", k=" + k + ", ib[k]=" + ib[k] + ", an=" + indexNode[ia[k]] + ", bn=" + indexNode[ib[k]] + ", nodeLabels[ib]=" + nodeLabels[ib[k]] + ", nodeLabeled[ib]=" + nodeLabeled[ib[k]]);
-            }
-            logger.debug("");
-        }
-
-
-        public void dataPrint( boolean isTrue ) {
-            int k;
-
-            for (int i = 0; i <= last; i++) {
-                k = data[i];
-                spDebugLogger.info("[heap]:  i=" + i + ", k=" + k + ", ib[k]=" + ib[k] + ", an=" + indexNode[ia[k]] + ", bn=" + indexNode[ib[k]] + ", nodeLabels[ib]=" + nodeLabels[ib[k]] + ", nodeLabeled[ib]=" + nodeLabeled[ib[k]]);
-            }
-            spDebugLogger.info("");
-        }
-
-
-        /*
-        //Used to test as a stand alone class
-        static final int initData[] =  { 10, 3, 5, 6, 2, 7, 1 };
-
-        public static void main(String argv[]) {
-        	logger.info("Initial data:");
-            for (int i = 0; i < initData.length; i++) {
-                logger.info(initData[i] + ", ");
-            }
-            logger.info();
-
-            Heap heap = new Heap(initData);
-            heap.dataPrint();
-
-            heap.add(8);
-            heap.dataPrint();
-
-            int min = heap.removeMin();
-            heap.dataPrint();
-
-            heap.add(9);
-            heap.dataPrint();
-
-            heap.add(4);
-            heap.dataPrint();
-
-            min = heap.removeMin();
-            heap.dataPrint();
-        }
-    */
-    }
 
 }
@@ -0,0 +1,266 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.util.Arrays;
+
+
+/**
+ * Node label, predecessor link and candidate heap arrays used while building a shortest path tree.
+ *
+ * A workspace is meant to be owned by one thread and reused for every tree that thread builds, so
+ * no per-tree arrays are allocated.  Rather than refilling the arrays before each tree, every node
+ * entry is stamped with the generation in which it was last written; an entry with an older stamp
+ * reads as unlabeled, with no predecessor link.
+ *
+ * Nodes are recorded in the order they are permanently labeled.  Since a node is always labeled
+ * after the a-node of its predecessor link, that order is a topological order of the tree, and
+ * walking it backwards visits every node before its predecessor.  Nodes are also recorded the
+ * first time they are given a label, so the nodes reached by a tree built only part way can be
+ * listed without scanning the whole network.
+ *
+ */
+public class ShortestPathWorkspace {
+
+    static final double UNLABELED = 1.0e+99;
+
+    private static ThreadLocal<ShortestPathWorkspace> threadWorkspace = new ThreadLocal<ShortestPathWorkspace>();
+
+    private int numNodes;
+
+    private double[] nodeLabels;
+    private int[] predecessorLink;
+
+    // generation in which nodeLabels and predecessorLink were last set for each node.
+    private int[] nodeStamp;
+
+    // nodeLabeled[i] == generation if node i has been permanently labeled in the current tree.
+    private int[] nodeLabeled;
+    private int generation;
+
+    // nodes in the order they were permanently labeled in the current tree.
+    private int[] settledNodes;
+    private int numSettled;
+
+    // nodes in the order they were first given a label in the current tree.
+    private int[] reachedNodes;
+    private int numReached;
+
+    // flow accumulated at each node while loading a tree, valid only for nodes set by the loader.
+    private double[] nodeFlow;
+
+    // attribute values accumulated from the origin to each node while skimming a tree.
+    private double[][] nodeSkims;
+
+    // candidate heap for the link arrays of the tree last built with this workspace.
+    private IndexedLinkHeap candidateHeap;
+    private int[] ia;
+    private int[] ib;
+    private int[] indexNode;
+
+
+    public ShortestPathWorkspace ( int numNodes, int[] ia, int[] ib, int[] indexNode ) {
+
+        this.numNodes = numNodes;
+        this.ia = ia;
+        this.ib = ib;
+        this.indexNode = indexNode;
+
+        nodeLabels = new double[numNodes+1];
+        predecessorLink = new int[numNodes+1];
+        nodeStamp = new int[numNodes+1];
+        nodeLabeled = new int[numNodes+1];
+        generation = 0;
+
+        settledNodes = new int[numNodes+1];
+        reachedNodes = new int[numNodes+1];
+        nodeFlow = new double[numNodes+1];
+
+        candidateHeap = new IndexedLinkHeap( numNodes+1, ia, ib, indexNode, nodeLabels );
+
+    }
+
+
+    /**
+     * Return the workspace held by the calling thread, creating it if the thread does not have
+     * one yet or if the one it has was created for a different sized network.  A workspace kept
+     * for a same sized network, e.g. new copies of the arrays returned by an rpc NetworkHandler,
+     * gets a heap for the new arrays when a tree using them asks for it in getCandidateHeap().
+     */
+    public static ShortestPathWorkspace getThreadInstance ( int numNodes, int[] ia, int[] ib, int[] indexNode ) {
+
+        ShortestPathWorkspace ws = threadWorkspace.get();
+
+        if ( ws == null || ws.numNodes != numNodes || ws.ib.length != ib.length ) {
+            ws = new ShortestPathWorkspace( numNodes, ia, ib, indexNode );
+            threadWorkspace.set( ws );
+        }
+
+        return ws;
+
+    }
+
+
+    /**
+     * Start a new tree rooted at origin.  All node entries from the previous tree are invalidated
+     * by advancing the generation.
+     */
+    public void reset ( int origin ) {
+
+        generation++;
+        if ( generation == Integer.MAX_VALUE ) {
+            Arrays.fill( nodeStamp, 0 );
+            Arrays.fill( nodeLabeled, 0 );
+            generation = 1;
+        }
+
+        candidateHeap.clear();
+
+        numReached = 0;
+        setNodeLabel( origin, 0.0, -1 );
+        numSettled = 0;
+        setLabeled( origin );
+
+    }
+
+
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+
+    /**
+     * Return the candidate heap for a tree on the network given by ia, ib and indexNode.  The heap
+     * is keyed on the b-nodes of its links, so if it was made for other link arrays, e.g. by
+     * another tree sharing this thread's workspace, a heap for these arrays replaces it.  Trees
+     * ask for the heap each time they start building, before calling reset().
+     */
+    public IndexedLinkHeap getCandidateHeap ( int[] ia, int[] ib, int[] indexNode ) {
+
+        if ( this.ia != ia || this.ib != ib || this.indexNode != indexNode ) {
+            this.ia = ia;
+            this.ib = ib;
+            this.indexNode = indexNode;
+            candidateHeap = new IndexedLinkHeap( numNodes+1, ia, ib, indexNode, nodeLabels );
+        }
+
+        return candidateHeap;
+
+    }
+
+
+    public double getNodeLabel ( int node ) {
+        return nodeStamp[node] == generation ? nodeLabels[node] : UNLABELED;
+    }
+
+
+    public int getPredecessorLink ( int node ) {
+        return nodeStamp[node] == generation ? predecessorLink[node] : -1;
+    }
+
+
+    public void setNodeLabel ( int node, double label, int link ) {
+        if ( nodeStamp[node] != generation )
+            reachedNodes[numReached++] = node;
+        nodeLabels[node] = label;
+        predecessorLink[node] = link;
+        nodeStamp[node] = generation;
+    }
+
+
+    public boolean isLabeled ( int node ) {
+        return nodeLabeled[node] == generation;
+    }
+
+
+    public void setLabeled ( int node ) {
+        nodeLabeled[node] = generation;
+        settledNodes[numSettled++] = node;
+    }
+
+
+    /**
+     * Return the nodes permanently labeled in the current tree, in the order they were labeled.
+     * Only the first getNumSettled() elements are valid.
+     */
+    public int[] getSettledNodes() {
+        return settledNodes;
+    }
+
+
+    public int getNumSettled() {
+        return numSettled;
+    }
+
+
+    /**
+     * Return the nodes given a label in the current tree, in the order they were first labeled.
+     * Only the first getNumReached() elements are valid.
+     */
+    public int[] getReachedNodes() {
+        return reachedNodes;
+    }
+
+
+    public int getNumReached() {
+        return numReached;
+    }
+
+
+    /**
+     * Return the per node flow array used by tree loading routines.  Its values are not reset
+     * between trees; callers zero the entries they use.
+     */
+    public double[] getNodeFlow() {
+        return nodeFlow;
+    }
+
+
+    /**
+     * Return per node arrays for accumulating numSkims link attributes along the tree.  They
+     * are allocated on first use and kept for later trees; callers set the entries they use.
+     */
+    public double[][] getNodeSkims( int numSkims ) {
+
+        if ( nodeSkims == null || nodeSkims.length < numSkims ) {
+            nodeSkims = new double[numSkims][];
+            for (int i=0; i < numSkims; i++)
+                nodeSkims[i] = new double[numNodes+1];
+        }
+
+        return nodeSkims;
+
+    }
+
+
+    /**
+     * Copy the predecessor links of the current tree into tree, which is allocated only if it is
+     * null or of the wrong size, and return it.
+     */
+    public int[] getPredecessorLinks ( int[] tree ) {
+
+        if ( tree == null || tree.length != numNodes+1 )
+            tree = new int[numNodes+1];
+
+        for (int i=0; i < tree.length; i++)
+            tree[i] = nodeStamp[i] == generation ? predecessorLink[i] : -1;
+
+        return tree;
+
+    }
+
+}
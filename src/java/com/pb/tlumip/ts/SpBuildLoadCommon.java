@@ -18,6 +18,8 @@ package com.pb.tlumip.ts;
 
 
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
@@ -27,6 +29,10 @@ import org.apache.log4j.Logger;
  *   which an instance of this class was created.  Common information includes the workQueue, the results arrays in
  *   which results computed by the running threads are accumulated, and network setup data.
  * 
+ *   The work elements for the handler are not divided among threads ahead of time.  Each thread claims the next
+ *   chunk of work elements from a shared counter when it finishes its previous chunk, so threads that draw cheap
+ *   origins simply process more of them.
+ * 
  */
 
 public class SpBuildLoadCommon {
@@ -35,17 +41,31 @@ public class SpBuildLoadCommon {
     
     private static SpBuildLoadCommon instance = new SpBuildLoadCommon();
 
+    // the work elements are divided into about this many chunks per thread; smaller chunks balance better, larger chunks contend less.
+    static final int WORK_CHUNKS_PER_THREAD = 16;
+
     ShortestPathTreeH[][] sp = null;
     
     private int[] packetsCompletedByThread;
     
-    private int[][][] workElements;
-    private double[][][] workElementsDemand;
+    private int[][] workElements;
+    private int[][] workElementsDestinations;
+    private double[][] workElementsTrips;
     private double[][][] cumulativeBuildLoadResults;
 
+    private int workChunkSize;
+    private AtomicInteger nextWorkElement = new AtomicInteger();
+    private CountDownLatch threadsFinished;
+
+    // the first exception thrown by a thread since the last reset(), or null if none has failed.
+    private volatile Throwable threadFailure;
+
     // shortest path trees computed by this node are saved by user class and origin taz (internal index)
     private int[][][] savedPaths;
     
+    // if trees are not saved, each is built only as far as the destinations with demand from its origin.
+    private boolean saveTrees = true;
+    
     private String handlerName;
     private int numThreads;
     private int numUserClasses;
@@ -67,13 +87,30 @@ public class SpBuildLoadCommon {
     /** setup data structures to be used by all threads
      *  working on building and loading aon link flows.
      */
-    public void setup( String handlerName, int[][][] workElements, double[][][] workElementsDemand, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+    public void setup( String handlerName, int numThreads, int[][][] workElements, int[][][] workElementsDestinations, double[][][] workElementsTrips, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
 
         this.handlerName = handlerName;
-        this.numThreads = workElements.length;
+        this.numThreads = numThreads;
         
-        this.workElements = workElements;
-        this.workElementsDemand = workElementsDemand;
+        // combine the work element lists passed in into one list from which all threads claim chunks of work.
+        int numElements = 0;
+        for (int i=0; i < workElements.length; i++)
+            numElements += workElements[i].length;
+
+        this.workElements = new int[numElements][];
+        this.workElementsDestinations = new int[numElements][];
+        this.workElementsTrips = new double[numElements][];
+        int k = 0;
+        for (int i=0; i < workElements.length; i++) {
+            for (int j=0; j < workElements[i].length; j++) {
+                this.workElements[k] = workElements[i][j];
+                this.workElementsDestinations[k] = workElementsDestinations[i][j];
+                this.workElementsTrips[k] = workElementsTrips[i][j];
+                k++;
+            }
+        }
+
+        workChunkSize = Math.max( 1, numElements/(numThreads*WORK_CHUNKS_PER_THREAD) );
         
         this.numUserClasses = numUserClasses;
         this.numLinks = numLinks;
@@ -82,10 +119,15 @@ public class SpBuildLoadCommon {
         sp = new ShortestPathTreeH[numThreads][numUserClasses];
         
         for (int i=0; i < numThreads; i++) {
+
+            // the user class trees for a thread are built one at a time, so they share one set of label, predecessor and heap arrays.
+            ShortestPathWorkspace ws = new ShortestPathWorkspace( numNodes, ia, ib, indexNode );
+            
             for (int j=0; j < numUserClasses; j++) {
-                sp[i][j] = new ShortestPathTreeH( numLinks, numNodes, numZones, ia, ib, ipa,  sortedLinkIndexA, indexNode, nodeIndex, centroid, turnPenaltyIndices, turnPenaltyArray );
+                sp[i][j] = new ShortestPathTreeH( numLinks, numNodes, numZones, ia, ib, ipa,  sortedLinkIndexA, indexNode, nodeIndex, centroid, turnPenaltyIndices, turnPenaltyArray, ws );
                 sp[i][j].setValidLinks( validLinksForClasses[j] );
                 sp[i][j].setLinkCost( linkCost );
+                sp[i][j].setBuildFullTrees( saveTrees );
             }
         }
 
@@ -105,6 +147,10 @@ public class SpBuildLoadCommon {
         packetsCompletedByThread = new int[numThreads];
         Arrays.fill ( packetsCompletedByThread, -1 );
         
+        nextWorkElement.set( 0 );
+        threadFailure = null;
+        threadsFinished = new CountDownLatch( numThreads );
+        
         for (int i=0; i < numThreads; i++) {
             for (int j=0; j < numUserClasses; j++) {
                 sp[i][j].setLinkCost( linkCost );
@@ -159,19 +205,46 @@ public class SpBuildLoadCommon {
     
     
     /*
-     * return the work elements array for the specified thread
+     * return the work elements array shared by all threads
      */
-    public int[][] getWorkElements( int threadId ) {
-        return workElements[threadId];
+    public int[][] getWorkElements() {
+        return workElements;
     }
     
     
-    /** return the row from the trip table for the specified user class and origin zone.
+    /*
+     * return the number of work elements claimed by each call to getNextWorkChunk()
+     */
+    public int getWorkChunkSize() {
+        return workChunkSize;
+    }
+    
+    
+    /*
+     * claim the next chunk of work elements and return the index of its first element.
+     * a return value >= the number of work elements means all work has been claimed.
+     */
+    public int getNextWorkChunk() {
+        // once a thread has failed, the results will be discarded, so the other threads stop claiming work.
+        if ( threadFailure != null )
+            return workElements.length;
+        return nextWorkElement.getAndAdd( workChunkSize );
+    }
+    
+    
+    /** return the destinations with trips in the trip table row for the work element's user class and origin zone.
      * *
      */
-    public double[] getElementDemand( int threadId, int workElement ) {
-        double[] tripTableRow = workElementsDemand[threadId][workElement];
-        return tripTableRow;
+    public int[] getElementDestinations( int workElement ) {
+        return workElementsDestinations[workElement];
+    }
+
+    
+    /** return the trips to each destination returned by getElementDestinations() for the work element.
+     * *
+     */
+    public double[] getElementTrips( int workElement ) {
+        return workElementsTrips[workElement];
     }
 
     
@@ -179,6 +252,31 @@ public class SpBuildLoadCommon {
      */
     public void setPacketsCompletedByThread ( int threadId, int packetsCompleted ) {
         packetsCompletedByThread[threadId] = packetsCompleted;
+        threadsFinished.countDown();
+    }
+    
+    
+    /** record the exception that stopped a thread; only the first one since the last reset() is kept.
+     */
+    public synchronized void setThreadFailure ( Throwable e ) {
+        if ( threadFailure == null )
+            threadFailure = e;
+    }
+
+
+    /** throw a RuntimeException if a thread started since the last reset() failed, since its work elements were not loaded.
+     */
+    public void checkThreadFailure () {
+        Throwable e = threadFailure;
+        if ( e != null )
+            throw new RuntimeException( handlerName + " SpBuildLoadMt thread failed building and loading trees.", e );
+    }
+
+
+    /** block until every thread started since the last reset() has set its completed packet count.
+     */
+    public void waitForThreads () throws InterruptedException {
+        threadsFinished.await();
     }
 
     
@@ -215,6 +313,33 @@ public class SpBuildLoadCommon {
     }
     
     
+    /** set whether the tree built for each work element is saved, which requires building complete trees.
+     */
+    public void setSaveShortestPathTrees ( boolean saveTrees ) {
+        
+        this.saveTrees = saveTrees;
+        
+        if ( sp != null ) {
+            for (int i=0; i < sp.length; i++)
+                for (int j=0; j < sp[i].length; j++)
+                    sp[i][j].setBuildFullTrees( saveTrees );
+        }
+        
+    }
+    
+    
+    public boolean getSaveShortestPathTrees () {
+        return saveTrees;
+    }
+    
+    
+    /** copy the current tree from sp into the saved path array for the user class and origin, reusing the array saved on a previous iteration.
+     */
+    public void saveShortestPathTree ( int userClassIndex, int internalOriginTazIndex, ShortestPathTreeH sp ) {
+        savedPaths[userClassIndex][internalOriginTazIndex] = sp.getPredecessorLink( savedPaths[userClassIndex][internalOriginTazIndex] );
+    }
+    
+    
     public String getHandlerName() {
         return handlerName;
     }
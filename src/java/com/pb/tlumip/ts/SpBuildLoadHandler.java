@@ -23,6 +23,8 @@ package com.pb.tlumip.ts;
  */
 
 
+import java.util.concurrent.ExecutorService;
+
 import com.pb.common.rpc.DafNode;
 
 import org.apache.log4j.Logger;
@@ -39,6 +41,9 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
     private int numberOfThreads = java.lang.Runtime.getRuntime().availableProcessors();
 //    private int numberOfThreads = 1;
     
+    // worker threads are kept for the life of the handler and reused for every FW iteration.
+    private ExecutorService exec = null;
+    
 
 
     public SpBuildLoadHandler() {
@@ -82,7 +87,7 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
     
     
     // this method is called by local instances of SpBuildLoadHandler.
-    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, double[][][] workElementsDemand, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, int[][][] workElementsDestinations, double[][][] workElementsTrips, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
 
         logger.info( handlerName + " running SpBuildLoadHandler.setup()." );
         
@@ -90,7 +95,7 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
         
         // a local instance made this call and is loaded in the same VM as this instance, so NetworkHandler and DemandHandler handles are passed in
         // and can be passed on by this handler.
-        spCommon.setup( handlerName, workElements, workElementsDemand, numUserClasses, numLinks, numNodes, numZones, ia, ib, ipa, sortedLinkIndexA, indexNode, nodeIndex, centroid, validLinksForClasses, linkCost,  turnPenaltyIndices, turnPenaltyArray );
+        spCommon.setup( handlerName, numberOfThreads, workElements, workElementsDestinations, workElementsTrips, numUserClasses, numLinks, numNodes, numZones, ia, ib, ipa, sortedLinkIndexA, indexNode, nodeIndex, centroid, validLinksForClasses, linkCost,  turnPenaltyIndices, turnPenaltyArray );
         
         return 1;
     }
@@ -102,10 +107,13 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
         // there is an array of workElements [userclass, origin taz] for each thread for this SpBuildLoadHandler already set in spCommon. 
         spCommon.reset( linkCost );
 
-        // start the specified number of threads to build and load shortest path trees from the workList, then return
+        if ( exec == null )
+            exec = TsThreads.newDaemonPool( numberOfThreads, "SpBuildLoadMt" );
+        
+        // submit the specified number of tasks to build and load shortest path trees from the work elements, then return
         for (int i = 0; i < numberOfThreads; i++) {
             SpBuildLoadMt spMt = new SpBuildLoadMt( i, spCommon );
-            new Thread(spMt).start();
+            exec.execute( spMt );
         }
 
         return 1;
@@ -113,20 +121,54 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
     }
     
     
+    public boolean waitForHandler() {
+        
+        // block until all threads started by start() have finished.
+        try {
+            spCommon.waitForThreads();
+        }
+        catch (InterruptedException e) {
+            logger.error ( "interrupted waiting for SpBuildLoadMt threads to finish.", e );
+            return false;
+        }
+        
+        spCommon.checkThreadFailure();
+        
+        return true;
+        
+    }
+    
+    
     public double[][] getResults() {
 
         // at this point, all work packets have been completed by threads created on this and
         // possibly many other VMs.  Combine the results from the threads used by this handler.
         // These results will then be accumulated by AonFlowHandler.
+        // They are incomplete if a thread failed, so that is reported rather than returning them.
+        spCommon.checkThreadFailure();
         
         aonFlows = spCommon.getResultsForThread( 0 );
-        for (int i=1; i < numberOfThreads; i++) {
-            double[][] threadFlows = spCommon.getResultsForThread( i );
-            for (int m=0; m < aonFlows.length; m++) {
-                for (int k=0; k < aonFlows[m].length; k++) {
-                    aonFlows[m][k] += threadFlows[m][k];
+        if ( numberOfThreads == 1 )
+            return aonFlows;
+        
+        // each pool thread sums the thread results for its own range of links into the thread 0 array.
+        try {
+            TsThreads.forEachLinkRange( exec, aonFlows[0].length, numberOfThreads, new TsThreads.LinkRangeTask() {
+                public void run( int startLink, int endLink ) {
+                    for (int t=1; t < numberOfThreads; t++) {
+                        double[][] threadFlows = spCommon.getResultsForThread( t );
+                        for (int m=0; m < aonFlows.length; m++) {
+                            for (int k=startLink; k < endLink; k++) {
+                                aonFlows[m][k] += threadFlows[m][k];
+                            }
+                        }
+                    }
                 }
-            }
+            } );
+        }
+        catch (RuntimeException e) {
+            logger.error ( "exception combining aon link flows from SpBuildLoadMt threads.", e );
+            throw e;
         }
 
         return aonFlows;
@@ -135,6 +177,12 @@ public class SpBuildLoadHandler implements SpBuildLoadHandlerIF {
     
     
     
+    public int setSaveShortestPathTrees ( boolean saveTrees ) {
+        spCommon.setSaveShortestPathTrees ( saveTrees );
+        return 1;
+    }
+    
+    
     public int[] getShortestPathTree ( int userClassIndex, int internalOriginTazIndex ) {
         return spCommon.getShortestPathTree ( userClassIndex, internalOriginTazIndex );
     }
@@ -4,10 +4,12 @@ public interface SpBuildLoadHandlerIF {
 
     public static final String HANDLER_NAME = "spBuildLoadHandler";
     
-    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, double[][][] workElementsDemand, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray );
+    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, int[][][] workElementsDestinations, double[][][] workElementsTrips, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray );
     public int start( double[] linkCost );
     public double[][] getResults();
     public boolean handlerIsFinished();
+    public boolean waitForHandler();
     public int getNumberOfThreads();
     public int[] getShortestPathTree ( int userClassIndex, int internalOriginTazIndex );    
+    public int setSaveShortestPathTrees ( boolean saveTrees );
 }
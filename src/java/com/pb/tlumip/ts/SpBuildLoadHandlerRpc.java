@@ -56,7 +56,7 @@ public class SpBuildLoadHandlerRpc implements SpBuildLoadHandlerIF {
     
     // when an instance of this rpc handler is used to call the setup method of an SpBuildLoadHandler running in
     // another VM, the primitive data type arguments are placed in the params Vector<Object> as objects, so the alternate setupRpc remote method is called.  
-    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, double[][][] workElementsDemand, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+    public int setup( String handlerName, String rpcConfigFile, int[][][] workElements, int[][][] workElementsDestinations, double[][][] workElementsTrips, int numUserClasses, int numLinks, int numNodes, int numZones, int[] ia, int[] ib, int[] ipa, int[] sortedLinkIndexA, int[] indexNode, int[] nodeIndex, boolean[] centroid, boolean[][] validLinksForClasses, double[] linkCost, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
 
         int returnValue = -1;
         try {
@@ -64,7 +64,8 @@ public class SpBuildLoadHandlerRpc implements SpBuildLoadHandlerIF {
             params.add(handlerName);
             params.add(rpcConfigFile);
             params.add(workElements);
-            params.add(workElementsDemand);
+            params.add(workElementsDestinations);
+            params.add(workElementsTrips);
             params.add(numUserClasses);
             params.add(numLinks);
             params.add(numNodes);
@@ -136,6 +137,19 @@ public class SpBuildLoadHandlerRpc implements SpBuildLoadHandlerIF {
     }
     
 
+    public boolean waitForHandler() {
+        boolean returnValue = false;
+        try {
+            returnValue = (Boolean)rc.execute(handlerName+".waitForHandler", new Vector<Object>() );
+        } catch (RpcException e) {
+            logger.error( e );
+        } catch (IOException e) {
+            logger.error(  e );
+        }
+        return returnValue;
+    }
+    
+
     public int getNumberOfThreads() {
         int returnValue = -1;
         try {
@@ -163,4 +177,18 @@ public class SpBuildLoadHandlerRpc implements SpBuildLoadHandlerIF {
         return returnValue;
     }
     
+    public int setSaveShortestPathTrees ( boolean saveTrees ) {
+        int returnValue = -1;
+        try {
+            Vector<Object> params = new Vector<Object>();
+            params.add( saveTrees );
+            returnValue = (Integer)rc.execute(handlerName+".setSaveShortestPathTrees", params );
+        } catch (RpcException e) {
+            logger.error( e );
+        } catch (IOException e) {
+            logger.error(  e );
+        }
+        return returnValue;
+    }
+    
 }
@@ -15,7 +15,6 @@ public class SpBuildLoadMt implements Runnable
     protected static Logger logger = Logger.getLogger(SpBuildLoadMt.class);
     
     private int threadId;
-    private int numUserClasses;
     private int numLinks;
     
     private SpBuildLoadCommon spBuildLoadShared;
@@ -35,7 +34,6 @@ public class SpBuildLoadMt implements Runnable
         this.spBuildLoadShared = spBuildLoadShared;
         
         
-        this.numUserClasses = spBuildLoadShared.getNumUserClasses();
         this.numLinks = spBuildLoadShared.getNumLinks();
         
         // a ShortestPathTreeH object for each user class is created and initialized
@@ -45,54 +43,79 @@ public class SpBuildLoadMt implements Runnable
     }
 
     
-    // this method is run by threads created by spBuildLoadHandlers.
-    // it gets a packet of work elements, i.e. an array of user class and origin taz pairs, and
-    // builds shorrtest path trees and loads trips from the trip table on links of those trees.
-    // the method accumulates aon flows for links in the SpBuildLoadCommon class before exiting.
-    // this method trys to get packets from the workQueue until it gets a null packet, at which
-    // time the workQueue has been emptied, and this method can finalize its results and return. 
+    // this method is run by the thread pool of an spBuildLoadHandler.
+    // it claims chunks of work elements, i.e. user class and origin taz pairs, from the list shared by all threads,
+    // builds shortest path trees and loads trips from the trip table on links of those trees.
+    // the method accumulates aon flows for links in the SpBuildLoadCommon results array for this thread.
+    // this method keeps claiming chunks until all work elements have been claimed, at which time
+    // this method can finalize its results and return. 
     public void run () {
         
         int userClass = 0;
         int origin = 0;
+        int[] destinations = null;
         double[] originTrips = null;
         
-        double[][] cumulativeAonFlowsThread = new double[numUserClasses][numLinks];
-
-        int[][] workElements = spBuildLoadShared.getWorkElements(this.threadId);
+        int[][] workElements = spBuildLoadShared.getWorkElements();
+        int chunkSize = spBuildLoadShared.getWorkChunkSize();
+        boolean saveTrees = spBuildLoadShared.getSaveShortestPathTrees();
         
+        int count = 0;
         double sum = 0.0;
         double totalFlow = 0.0;
-        for ( int i=0; i < workElements.length; i++ ) {
-            
-            userClass = workElements[i][0];
-            origin = workElements[i][1];
-            
-            originTrips = spBuildLoadShared.getElementDemand(this.threadId, i);
-            
-            sum = 0.0;
-            for (int j=0; j < originTrips.length; j++)
-                sum += originTrips[j];
-            
-            double[] aonFlows = sp[userClass].buildAndLoadTrees ( userClass, origin, originTrips );
+        
+        try {
 
-            for (int k=0; k < numLinks; k++) {
-                cumulativeAonFlowsThread[userClass][k] += aonFlows[k];
-                totalFlow += aonFlows[k];
+            double[][] cumulativeAonFlowsThread = spBuildLoadShared.getResultsForThread( threadId );
+            
+            int first;
+            while ( (first = spBuildLoadShared.getNextWorkChunk()) < workElements.length ) {
+                
+                int last = Math.min( first + chunkSize, workElements.length );
+                for ( int i=first; i < last; i++ ) {
+                    
+                    userClass = workElements[i][0];
+                    origin = workElements[i][1];
+                    
+                    destinations = spBuildLoadShared.getElementDestinations( i );
+                    originTrips = spBuildLoadShared.getElementTrips( i );
+                    
+                    sum = 0.0;
+                    for (int j=0; j < originTrips.length; j++)
+                        sum += originTrips[j];
+                    
+                    // trips are loaded straight into this thread's accumulated flows for the user class.
+                    sp[userClass].buildAndLoadTrees ( userClass, origin, destinations, originTrips, cumulativeAonFlowsThread[userClass] );
+                          
+                    if ( saveTrees )
+                        spBuildLoadShared.saveShortestPathTree( userClass, origin, sp[userClass] );
+        
+                    count++;
+                    
+                    if ( logger.isDebugEnabled() )
+                        logger.debug( i + ": " + ", origin=" + origin + ", sum=" + sum );
+        
+                }
+                
             }
-                  
-            spBuildLoadShared.setShortestPathTree( userClass, origin, sp[userClass].getPredecessorLink() );
-
-            if ( logger.isDebugEnabled() )
-                logger.debug( i + ": " + ", origin=" + origin + ", sum=" + sum + ", totalFlow=" + totalFlow );
-
-        }
-
-        spBuildLoadShared.setResultsArray( threadId, cumulativeAonFlowsThread );
+            
+            for (int m=0; m < cumulativeAonFlowsThread.length; m++)
+                for (int k=0; k < numLinks; k++)
+                    totalFlow += cumulativeAonFlowsThread[m][k];
         
-        spBuildLoadShared.setPacketsCompletedByThread ( threadId, workElements.length );
+        }
+        catch ( Throwable e ) {
+            // the failure is recorded for the handler to report, since an exception thrown from here is lost in the thread pool.
+            logger.error( "exception building and loading trees for userClass=" + userClass + ", origin=" + origin + " by thread " + threadId + " on " + spBuildLoadShared.getHandlerName(), e );
+            spBuildLoadShared.setThreadFailure( e );
+            return;
+        }
+        finally {
+            // always report completion so the handler waiting on this thread is released.
+            spBuildLoadShared.setPacketsCompletedByThread ( threadId, count );
+        }
         
-        logger.info( totalFlow + " total link flow from " + workElements.length + " packets assigned by thread " + threadId + " on " + spBuildLoadShared.getHandlerName() );
+        logger.info( totalFlow + " total link flow from " + count + " packets assigned by thread " + threadId + " on " + spBuildLoadShared.getHandlerName() );
         
     }
 
@@ -0,0 +1,355 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.io.Serializable;
+
+
+/**
+ * An o/d trip table which keeps only the cells with trips, in compressed sparse row form: the
+ * trips from origin o are trips[rowStart[o]] to trips[rowStart[o+1]-1], to the destinations at
+ * the same positions in destinations, which are in increasing order.
+ *
+ * Trips are added to cells in any order with addTrips().  They are kept in a list until the
+ * table is next read, or until the list has as many cells as the rows, or MIN_MERGE_ENTRIES
+ * if that is more.  The list is then sorted and merged into the rows, trips added to the same
+ * cell are summed in the order they were added, and cells whose trips sum to 0 are dropped.
+ * So the trips in each cell are the same as if they had been accumulated in a dense table,
+ * and the list never holds much more than the table itself.
+ *
+ */
+public class SparseTripTable implements Serializable {
+
+    static final int INITIAL_ENTRIES = 1024;
+
+    // the list of added cells may grow to the larger of this and the number of entries in the rows before it is merged.
+    static final int MIN_MERGE_ENTRIES = 1 << 16;
+
+    private int size;
+
+    private int[] rowStart;
+    private int[] destinations;
+    private double[] trips;
+
+    // cells added since the table was last compressed.
+    private int numAdded;
+    private int[] addedOrigins;
+    private int[] addedDestinations;
+    private double[] addedTrips;
+
+
+    /**
+     * Create an empty table with size rows and columns, e.g. networkNumCentroids+1.
+     */
+    public SparseTripTable ( int size ) {
+
+        this.size = size;
+
+        rowStart = new int[size + 1];
+        destinations = new int[0];
+        trips = new double[0];
+
+        addedOrigins = new int[INITIAL_ENTRIES];
+        addedDestinations = new int[INITIAL_ENTRIES];
+        addedTrips = new double[INITIAL_ENTRIES];
+
+    }
+
+
+    /**
+     * Create a table from arrays returned by getRowStart(), getDestinations() and getTrips() of
+     * another table, e.g. one sent from another VM.
+     */
+    public SparseTripTable ( int size, int[] rowStart, int[] destinations, double[] trips ) {
+
+        this( size );
+
+        if ( rowStart.length != size + 1 || destinations.length != rowStart[size] || trips.length != rowStart[size] )
+            throw new IllegalArgumentException( String.format( "sparse trip table arrays of length %d, %d and %d do not describe a table with %d rows.", rowStart.length, destinations.length, trips.length, size ) );
+
+        this.rowStart = rowStart;
+        this.destinations = destinations;
+        this.trips = trips;
+
+    }
+
+
+    /**
+     * Add trips to the o/d cell.
+     */
+    public synchronized void addTrips ( int o, int d, double cellTrips ) {
+
+        if ( o < 0 || o >= size || d < 0 || d >= size )
+            throw new ArrayIndexOutOfBoundsException( String.format( "o=%d, d=%d outside trip table with %d rows and columns.", o, d, size ) );
+
+        if ( numAdded == addedTrips.length && numAdded >= Math.max( MIN_MERGE_ENTRIES, rowStart[size] ) )
+            merge();
+
+        if ( numAdded == addedTrips.length ) {
+            int length = 2*addedTrips.length;
+            addedOrigins = grow( addedOrigins, length );
+            addedDestinations = grow( addedDestinations, length );
+            double[] newTrips = new double[length];
+            System.arraycopy( addedTrips, 0, newTrips, 0, numAdded );
+            addedTrips = newTrips;
+        }
+
+        addedOrigins[numAdded] = o;
+        addedDestinations[numAdded] = d;
+        addedTrips[numAdded] = cellTrips;
+        numAdded++;
+
+    }
+
+
+    /**
+     * Add the trips in every cell of table to this table.
+     */
+    public synchronized void addTable ( SparseTripTable table ) {
+
+        if ( table.getSize() != size )
+            throw new IllegalArgumentException( "trip table with " + table.getSize() + " rows cannot be added to one with " + size + " rows." );
+
+        int[] tableRowStart = table.getRowStart();
+        int[] tableDestinations = table.getDestinations();
+        double[] tableTrips = table.getTrips();
+
+        for (int o=0; o < size; o++)
+            for (int i=tableRowStart[o]; i < tableRowStart[o+1]; i++)
+                addTrips( o, tableDestinations[i], tableTrips[i] );
+
+    }
+
+
+    public int getSize() {
+        return size;
+    }
+
+
+    public synchronized int getNumEntries() {
+        compress();
+        return rowStart[size];
+    }
+
+
+    public synchronized int[] getRowStart() {
+        compress();
+        return rowStart;
+    }
+
+
+    public synchronized int[] getDestinations() {
+        compress();
+        return destinations;
+    }
+
+
+    public synchronized double[] getTrips() {
+        compress();
+        return trips;
+    }
+
+
+    /**
+     * Return the destinations with trips from origin o, in increasing order.
+     */
+    public synchronized int[] getRowDestinations ( int o ) {
+        compress();
+        int[] rowDestinations = new int[rowStart[o+1] - rowStart[o]];
+        System.arraycopy( destinations, rowStart[o], rowDestinations, 0, rowDestinations.length );
+        return rowDestinations;
+    }
+
+
+    /**
+     * Return the trips from origin o to each of the destinations returned by getRowDestinations(o).
+     */
+    public synchronized double[] getRowTrips ( int o ) {
+        compress();
+        double[] rowTrips = new double[rowStart[o+1] - rowStart[o]];
+        System.arraycopy( trips, rowStart[o], rowTrips, 0, rowTrips.length );
+        return rowTrips;
+    }
+
+
+    /**
+     * Return row o as a dense array of trips to every destination.
+     */
+    public synchronized double[] getRow ( int o ) {
+        compress();
+        double[] row = new double[size];
+        for (int i=rowStart[o]; i < rowStart[o+1]; i++)
+            row[destinations[i]] = trips[i];
+        return row;
+    }
+
+
+    public synchronized double[] getRowSums() {
+        compress();
+        double[] rowSums = new double[size];
+        for (int o=0; o < size; o++)
+            for (int i=rowStart[o]; i < rowStart[o+1]; i++)
+                rowSums[o] += trips[i];
+        return rowSums;
+    }
+
+
+    public synchronized double getTotal() {
+        compress();
+        double total = 0.0;
+        for (int i=0; i < trips.length; i++)
+            total += trips[i];
+        return total;
+    }
+
+
+    /**
+     * Return the table as a dense array, for callers that need every cell.
+     */
+    public synchronized double[][] toDense() {
+        double[][] table = new double[size][];
+        for (int o=0; o < size; o++)
+            table[o] = getRow( o );
+        return table;
+    }
+
+
+
+    /**
+     * Merge the cells added since the last call into the rows, and release the list.
+     */
+    private void compress() {
+
+        if ( numAdded == 0 )
+            return;
+
+        merge();
+
+        addedOrigins = new int[INITIAL_ENTRIES];
+        addedDestinations = new int[INITIAL_ENTRIES];
+        addedTrips = new double[INITIAL_ENTRIES];
+
+    }
+
+
+    /**
+     * Sort the added cells by origin and destination and merge them into the rows.  The existing
+     * entry for a cell comes before the added cells, and the sorts are stable, so the trips for a
+     * cell are summed in the order they were added.  Only the added cells are sorted, so apart
+     * from the new rows the work arrays are the size of the list.
+     */
+    private void merge() {
+
+        // sort by destination, then by origin, so cells are in row order and increasing destination order within rows.
+        int[] order = new int[numAdded];
+        for (int i=0; i < numAdded; i++)
+            order[i] = i;
+        order = sortByKey( addedDestinations, order );
+        order = sortByKey( addedOrigins, order );
+
+        // count the entries with trips in each row, then fill them in a second pass.
+        int[] newRowStart = new int[size + 1];
+        mergeRows( order, newRowStart, null, null );
+
+        for (int r=0; r < size; r++)
+            newRowStart[r+1] += newRowStart[r];
+
+        int[] newDestinations = new int[newRowStart[size]];
+        double[] newTrips = new double[newRowStart[size]];
+        mergeRows( order, newRowStart, newDestinations, newTrips );
+
+        rowStart = newRowStart;
+        destinations = newDestinations;
+        trips = newTrips;
+
+        numAdded = 0;
+
+    }
+
+
+    /**
+     * Merge the existing entries and the added cells, in the given order, row by row.  If
+     * newDestinations is null, count the cells with trips in row r into newRowStart[r+1];
+     * otherwise store them in the rows starting at newRowStart[r].
+     */
+    private void mergeRows ( int[] order, int[] newRowStart, int[] newDestinations, double[] newTrips ) {
+
+        int b = 0;
+        for (int r=0; r < size; r++) {
+
+            int a = rowStart[r];
+            int n = ( newDestinations == null ) ? 0 : newRowStart[r];
+
+            while ( a < rowStart[r+1] || ( b < numAdded && addedOrigins[order[b]] == r ) ) {
+
+                int c;
+                if ( b < numAdded && addedOrigins[order[b]] == r && ( a == rowStart[r+1] || addedDestinations[order[b]] < destinations[a] ) )
+                    c = addedDestinations[order[b]];
+                else
+                    c = destinations[a];
+
+                double cellTrips = 0.0;
+                if ( a < rowStart[r+1] && destinations[a] == c )
+                    cellTrips = trips[a++];
+                while ( b < numAdded && addedOrigins[order[b]] == r && addedDestinations[order[b]] == c )
+                    cellTrips += addedTrips[order[b++]];
+
+                if ( cellTrips != 0.0 ) {
+                    if ( newDestinations == null ) {
+                        newRowStart[r+1]++;
+                    }
+                    else {
+                        newDestinations[n] = c;
+                        newTrips[n] = cellTrips;
+                        n++;
+                    }
+                }
+
+            }
+
+        }
+
+    }
+
+
+    /**
+     * Return order stably sorted by keys[order[i]], with a counting sort over the 0 to size-1 key range.
+     */
+    private int[] sortByKey ( int[] keys, int[] order ) {
+
+        int[] position = new int[size + 1];
+        for (int i=0; i < order.length; i++)
+            position[keys[order[i]] + 1]++;
+        for (int k=0; k < size; k++)
+            position[k+1] += position[k];
+
+        int[] sorted = new int[order.length];
+        for (int i=0; i < order.length; i++)
+            sorted[position[keys[order[i]]]++] = order[i];
+
+        return sorted;
+
+    }
+
+
+    private static int[] grow ( int[] array, int length ) {
+        int[] newArray = new int[length];
+        System.arraycopy( array, 0, newArray, 0, Math.min( array.length, length ) );
+        return newArray;
+    }
+
+}
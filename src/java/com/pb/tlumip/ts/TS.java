@@ -57,6 +57,12 @@ public class TS {
 	
     static final boolean CREATE_NEW_NETWORK = true;
     public boolean SKIM_ONLY = false;
+
+    // if true, the connectivity check after assignment is done with the highway skims written by writeHighwaySkimMatrices()
+    public boolean CONNECTIVITY_FROM_SKIMS = false;
+    
+    // trip tables held from the end of the assignment until the connectivity check is done with the highway skims
+    private double[][][] connectivityTripTables = null;
     
 
     ResourceBundle appRb;
@@ -136,8 +142,15 @@ public class TS {
         nh.writeNetworkAttributes( assignmentResultsFileName );
 
 		
-        logger.info("Checking network connectivity and computing TLDs after " + assignmentPeriod + " period assignment.");
-        checkODPairsWithTripsForNetworkConnectivity(nh);
+        if ( CONNECTIVITY_FROM_SKIMS ) {
+            // the skims written next are built from the same link costs, so don't build another set of trees here.
+            logger.info("Network connectivity and TLDs after " + assignmentPeriod + " period assignment will be computed with the highway skims.");
+            connectivityTripTables = getMulticlassTripTables(nh);
+        }
+        else {
+            logger.info("Checking network connectivity and computing TLDs after " + assignmentPeriod + " period assignment.");
+            checkODPairsWithTripsForNetworkConnectivity(nh);
+        }
         
 
         logger.info( "\ndone with " + assignmentPeriod + " period assignment."); 
@@ -170,6 +183,14 @@ public class TS {
     
     public void checkODPairsWithTripsForNetworkConnectivity (NetworkHandlerIF nh) {
         
+        double[][][] multiclassTripTable = getMulticlassTripTables(nh);
+		checkODConnectivity(nh, multiclassTripTable, nh.getTimePeriod());
+    }
+
+    
+    
+    private double[][][] getMulticlassTripTables (NetworkHandlerIF nh) {
+        
         HashMap<String, String> globalMap = ResourceUtil.changeResourceBundleIntoHashMap(globalRb);
 
         String timePeriod = nh.getTimePeriod();
@@ -203,8 +224,7 @@ public class TS {
         d.setup( nh.getUserClassPces(), null, (String)globalMap.get("sdt.person.trips"), (String)globalMap.get("ldt.vehicle.trips"), Double.parseDouble((String)globalMap.get("pt.sample.rate")), (String)globalMap.get("ct.truck.trips"), (String)globalMap.get("et.truck.trips"), startHour, endHour, timePeriod, nh.getNumCentroids(), nh.getNumUserClasses(), nh.getIndexNode(), nh.getNodeIndex(), nh.getAlphaDistrictIndex(), nh.getDistrictNames(), nh.getAssignmentGroupChars(), nh.getHighwayModeCharacters(), nh.userClassesIncludeTruck() );
         d.buildHighwayDemandObject();
 
-        double[][][] multiclassTripTable = d.getMulticlassTripTables();
-		checkODConnectivity(nh, multiclassTripTable, timePeriod);
+        return d.getMulticlassTripTables();
     }
 
     
@@ -228,17 +248,13 @@ public class TS {
 
         Skims skims = new Skims( nh, appRb, globalRb );
 
-        double[] distFreqs = null;
-        double[] timeFreqs = null;
-        
-        
-            
         for (int m=0; m < userClasses.length; m++) {
 
-            double total = 0.0;
-            for (int i=0; i < trips[m].length; i++)
-                for (int j=0; j < trips[m][i].length; j++)
-                    total += trips[m][i][j];
+            // classes already checked with the highway skims have no trip table here
+            if ( trips[m] == null )
+                continue;
+            
+            double total = getTripTotal( trips[m] );
             
                     
             // log the average sov trip travel distance and travel time for this assignment
@@ -248,79 +264,135 @@ public class TS {
 
                 Matrix[] skimMatrices = skims.getHwySkimMatrices( timePeriod, linkAttributes, names, description, userClasses[m] );
 
-                logger.info( "Total " + timePeriod + " demand for subnetwork " + userClasses[m] + " (class " + m + ") = " + total + " trips."); 
-
-                double[] distSummaries = skims.getAvgTripSkims ( trips[m], skimMatrices[0], nh.getIndexNode() );
-                distFreqs = skims.getSkimTripFreqs();
-                
-                logger.info( "Average subnetwork " + userClasses[m] + " (class " + m + ") " + timePeriod + " trip travel distance = " + distSummaries[0] + " miles."); 
-                logger.info( "Number of disconnected O/D pairs in subnetwork " + userClasses[m] + " (class " + m + ") based on distance = " + distSummaries[1]);
-
-                double[] timeSummaries = skims.getAvgTripSkims ( trips[m], skimMatrices[1], nh.getIndexNode() );
-                timeFreqs = skims.getSkimTripFreqs();
-                
-                logger.info( "Average subnetwork " + userClasses[m] + " (class " + m + ") " + timePeriod + " trip travel time = " + timeSummaries[0] + " minutes."); 
-                logger.info( "Number of disconnected O/D pairs in subnetwork " + userClasses[m] + " (class " + m + ") based on time = " + timeSummaries[1]);
+                logODConnectivity( skims, trips[m], skimMatrices[0], skimMatrices[1], nh.getIndexNode(), userClasses[m], m, total, timePeriod );
 
+            }
+            else {
                 
+                logger.info("No demand for subnetwork " + userClasses[m] + " (class " + m + ") therefore, no average time or distance calculated.");
                 
-                HashMap<String, String> appMap = ResourceUtil.changeResourceBundleIntoHashMap(appRb);
-                String fileName = (String)appMap.get("timeDistTripFreqs.fileName");
-                
-                if ( fileName != null ) {
-
-                    int index = fileName.indexOf(".csv");
-                    if ( index < 0 )
-                        fileName += "_" + String.valueOf(userClasses[m]) + "_" + timePeriod;
-                    else {
-                        fileName = fileName.substring(0, index);
-                        fileName += "_" + String.valueOf(userClasses[m]) + "_" + timePeriod + ".csv";
-                    }
+            }
                     
+        }
 
-                    try {
-                        
-                        PrintWriter outStream =  new PrintWriter(new BufferedWriter( new FileWriter( fileName ) ) );
+    }
+    
+    
+    
+    
+    private double getTripTotal ( double[][] trips ) {
+        double total = 0.0;
+        for (int i=0; i < trips.length; i++)
+            for (int j=0; j < trips[i].length; j++)
+                total += trips[i][j];
+        return total;
+    }
+    
+    
+    
+    /**
+     * log the average trip distance and time and the number of disconnected O/D pairs with trips for a user class,
+     * and write its trip length frequencies if a file name was specified.
+     */
+    private void logODConnectivity ( Skims skims, double[][] trips, Matrix distMatrix, Matrix timeMatrix, int[] indexNode, char userClass, int m, double total, String timePeriod ) {
 
-                        outStream.println( "interval,minuteTrips,mileTrips" );
-                        
-                        for (int i=0; i < Math.max( timeFreqs.length, distFreqs.length); i++) {
-                            String record = String.format("%d,%.1f,%.1f", i, ( i < timeFreqs.length ? timeFreqs[i] : 0.0 ), ( i < distFreqs.length ? distFreqs[i] : 0.0 ) );
-                            outStream.println( record );
-                        }
-                            
-                        outStream.close();
+        logger.info( "Total " + timePeriod + " demand for subnetwork " + userClass + " (class " + m + ") = " + total + " trips."); 
 
-                    }
-                    catch (IOException e) {
-                        logger.fatal("IO Exception writing trip length frequencies for time and distance to file: " + fileName, e );
-                    }
-                }
-                
-            }
+        double[] distSummaries = skims.getAvgTripSkims ( trips, distMatrix, indexNode );
+        double[] distFreqs = skims.getSkimTripFreqs();
+        
+        logger.info( "Average subnetwork " + userClass + " (class " + m + ") " + timePeriod + " trip travel distance = " + distSummaries[0] + " miles."); 
+        logger.info( "Number of disconnected O/D pairs in subnetwork " + userClass + " (class " + m + ") based on distance = " + distSummaries[1]);
+
+        double[] timeSummaries = skims.getAvgTripSkims ( trips, timeMatrix, indexNode );
+        double[] timeFreqs = skims.getSkimTripFreqs();
+        
+        logger.info( "Average subnetwork " + userClass + " (class " + m + ") " + timePeriod + " trip travel time = " + timeSummaries[0] + " minutes."); 
+        logger.info( "Number of disconnected O/D pairs in subnetwork " + userClass + " (class " + m + ") based on time = " + timeSummaries[1]);
+
+        
+        
+        HashMap<String, String> appMap = ResourceUtil.changeResourceBundleIntoHashMap(appRb);
+        String fileName = (String)appMap.get("timeDistTripFreqs.fileName");
+        
+        if ( fileName != null ) {
+
+            int index = fileName.indexOf(".csv");
+            if ( index < 0 )
+                fileName += "_" + String.valueOf(userClass) + "_" + timePeriod;
             else {
+                fileName = fileName.substring(0, index);
+                fileName += "_" + String.valueOf(userClass) + "_" + timePeriod + ".csv";
+            }
+            
+
+            try {
                 
-                logger.info("No demand for subnetwork " + userClasses[m] + " (class " + m + ") therefore, no average time or distance calculated.");
+                PrintWriter outStream =  new PrintWriter(new BufferedWriter( new FileWriter( fileName ) ) );
+
+                outStream.println( "interval,minuteTrips,mileTrips" );
                 
-            }
+                for (int i=0; i < Math.max( timeFreqs.length, distFreqs.length); i++) {
+                    String record = String.format("%d,%.1f,%.1f", i, ( i < timeFreqs.length ? timeFreqs[i] : 0.0 ), ( i < distFreqs.length ? distFreqs[i] : 0.0 ) );
+                    outStream.println( record );
+                }
                     
+                outStream.close();
+
+            }
+            catch (IOException e) {
+                logger.fatal("IO Exception writing trip length frequencies for time and distance to file: " + fileName, e );
+            }
         }
 
     }
     
     
     
-    
     public void writeHighwaySkimMatrices ( NetworkHandlerIF nh, char[] hwyModeChars ) {
         
         Skims skims = new Skims(nh, appRb, globalRb);
         
         String assignmentPeriod = nh.getTimePeriod();
 
+        char[] userClasses = nh.getUserClasses();
+        boolean[] connectivityChecked = new boolean[userClasses.length];
+        
         for ( char mode : hwyModeChars ) {
             logger.info( String.format("Compute shortest generalized cost trees for skimming %s time, dist and toll skim matrices for highway mode '%c' ...", assignmentPeriod, mode) );
             String[] skimTypeArray = { "time", "dist", "toll", "fftime" };
-            skims.writeHwySkimMatrices ( assignmentPeriod, skimTypeArray, mode );
+            Matrix[] skimMatrices = skims.writeHwySkimMatrices ( assignmentPeriod, skimTypeArray, mode );
+
+            if ( connectivityTripTables != null && skimMatrices != null ) {
+                for (int m=0; m < userClasses.length; m++) {
+                    if ( userClasses[m] == mode && !connectivityChecked[m] ) {
+                        logger.info("Checking network connectivity and computing TLDs for subnetwork " + mode + " with the " + assignmentPeriod + " highway skims.");
+                        double total = getTripTotal( connectivityTripTables[m] );
+                        if ( total > 0.0 )
+                            logODConnectivity( skims, connectivityTripTables[m], skimMatrices[1], skimMatrices[0], nh.getIndexNode(), mode, m, total, assignmentPeriod );
+                        else
+                            logger.info("No demand for subnetwork " + mode + " (class " + m + ") therefore, no average time or distance calculated.");
+                        connectivityChecked[m] = true;
+                    }
+                }
+            }
+        }
+        
+        if ( connectivityTripTables != null ) {
+            
+            // check any user classes whose skims were not built above in the usual way.
+            boolean allChecked = true;
+            for (int m=0; m < userClasses.length; m++) {
+                if ( connectivityChecked[m] )
+                    connectivityTripTables[m] = null;
+                else
+                    allChecked = false;
+            }
+            
+            if ( !allChecked )
+                checkODConnectivity( nh, connectivityTripTables, assignmentPeriod );
+            
+            connectivityTripTables = null;
         }
         
     }
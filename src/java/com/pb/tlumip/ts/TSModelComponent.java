@@ -100,6 +100,7 @@ public class TSModelComponent extends ModelComponent {
             createAndWriteHwyAndTransitDemandMatrices("mdoffpeak");
             createAndWriteHwyAndTransitDemandMatrices("pmpeak");
             createAndWriteHwyAndTransitDemandMatrices("ntoffpeak");
+            DemandHandler.clearTripListReaders();
             return;
         }
 
@@ -117,6 +118,9 @@ public class TSModelComponent extends ModelComponent {
             createAndWriteHwyAndTransitDemandMatrices("ntoffpeak");
         }
 
+        // the trip lists are read again by the next model run.
+        DemandHandler.clearTripListReaders();
+
     }
 
     private void createAndWriteHwyAndTransitDemandMatrices(String period) {
@@ -235,6 +239,8 @@ public class TSModelComponent extends ModelComponent {
         // then skip the trip assignment step.
         if ( ! ts.SKIM_ONLY ) {
             StatusLogger.logText("TS","Running highway assignment for " + period);
+            // highway skims are always written below, so the connectivity check after assignment uses them.
+            ts.CONNECTIVITY_FROM_SKIMS = true;
             ts.runHighwayAssignment( nh );
         }
         
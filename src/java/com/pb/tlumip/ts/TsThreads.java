@@ -0,0 +1,112 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Thread utilities for TS.  Includes:
+ *      daemon threads and thread pools, which do not keep the VM alive after the model run.
+ *      a pool shared by the short parallel loops over the links of the network.
+ *      a method to run a task over ranges of links on a pool and wait for it.
+ *
+ */
+public final class TsThreads {
+
+    private static ExecutorService linkPool = null;
+
+
+    private TsThreads() {
+    }
+
+
+    /**
+     * A task run by forEachLinkRange() for links startLink up to, but not including, endLink.
+     */
+    public interface LinkRangeTask {
+        public void run ( int startLink, int endLink );
+    }
+
+
+    /**
+     * return a daemon thread named name that runs r.
+     */
+    public static Thread newDaemonThread ( Runnable r, String name ) {
+        Thread t = new Thread( r, name );
+        t.setDaemon( true );
+        return t;
+    }
+
+
+    /**
+     * return a pool of numberOfThreads daemon threads named name.
+     */
+    public static ExecutorService newDaemonPool ( int numberOfThreads, final String name ) {
+        return Executors.newFixedThreadPool( numberOfThreads, new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                return newDaemonThread( r, name );
+            }
+        } );
+    }
+
+
+    /**
+     * return the pool, with a thread per processor, shared by parallel loops over links, e.g. by
+     * every VdfKernelSet.  Tasks run on it must not wait for other tasks on it.
+     */
+    public static synchronized ExecutorService getLinkPool () {
+        if ( linkPool == null )
+            linkPool = newDaemonPool( java.lang.Runtime.getRuntime().availableProcessors(), "TsLinkPool" );
+        return linkPool;
+    }
+
+
+    /**
+     * Divide links 0 to numLinks-1 into numberOfRanges contiguous ranges, run task for each range
+     * on exec, and return when all have finished.  An exception in any range is rethrown as a
+     * RuntimeException.
+     */
+    public static void forEachLinkRange ( ExecutorService exec, int numLinks, int numberOfRanges, final LinkRangeTask task ) {
+
+        ArrayList<Future<Object>> ranges = new ArrayList<Future<Object>>( numberOfRanges );
+        for (int i=0; i < numberOfRanges; i++) {
+            final int startLink = (int)( (long)numLinks*i/numberOfRanges );
+            final int endLink = (int)( (long)numLinks*(i+1)/numberOfRanges );
+            ranges.add( exec.submit( new Callable<Object>() {
+                public Object call() {
+                    task.run( startLink, endLink );
+                    return null;
+                }
+            } ) );
+        }
+
+        try {
+            for ( Future<Object> f : ranges )
+                f.get();
+        }
+        catch (Exception e) {
+            throw new RuntimeException( e );
+        }
+
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts;
+
+import java.util.Arrays;
+
+
+/**
+ * Turn penalties held in compressed sparse row form for shortest path tree building.  Row j
+ * holds the links a path arriving on link j may turn onto that have a penalty, sorted by link
+ * index, with their penalties; a negative penalty means the turn is prohibited.
+ *
+ * The table is built from the turnPenaltyIndices and turnPenaltyArray arrays returned by the
+ * NetworkHandler, where turnPenaltyIndices[j][i] is the link for turn i from link j and
+ * turnPenaltyArray[j][i] is its penalty.  If the same turn appears more than once, the first
+ * entry is used, as it was by the linear search this table replaces.
+ *
+ * A bit set records the nodes at which any turn has a penalty, so tree building can check once
+ * per labeled node whether turn penalties need to be looked up at all.
+ *
+ */
+public class TurnPenaltyTable {
+
+    // rows at most this long are searched linearly rather than by bisection.
+    static final int LINEAR_SEARCH_LENGTH = 8;
+
+    private static TurnPenaltyTable lastTable;
+
+    private int[][] sourceIndices;
+    private float[][] sourcePenalties;
+
+    // bit n is set if a turn at node n has a penalty.
+    private long[] turnNodes;
+
+    // turns from link j are in positions rowStart[j] to rowStart[j+1]-1.
+    private int[] rowStart;
+    private int[] toLinks;
+    private float[] penalties;
+
+
+    public TurnPenaltyTable ( int numNodes, int[] ib, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+
+        sourceIndices = turnPenaltyIndices;
+        sourcePenalties = turnPenaltyArray;
+
+        int numLinks = turnPenaltyIndices.length;
+
+        turnNodes = new long[(numNodes + 1 + 63) >>> 6];
+        rowStart = new int[numLinks + 1];
+
+        int numTurns = 0;
+        for (int j=0; j < numLinks; j++) {
+            rowStart[j] = numTurns;
+            if ( turnPenaltyIndices[j] != null )
+                numTurns += turnPenaltyIndices[j].length;
+        }
+        rowStart[numLinks] = numTurns;
+
+        toLinks = new int[numTurns];
+        penalties = new float[numTurns];
+
+        int n = 0;
+        for (int j=0; j < numLinks; j++) {
+
+            int[] row = turnPenaltyIndices[j];
+            if ( row == null || row.length == 0 ) {
+                rowStart[j] = n;
+                continue;
+            }
+
+            int node = ib[j];
+            turnNodes[node >>> 6] |= ( 1L << node );
+
+            // sort by link, then by position in the row, so the first of any duplicates comes first.
+            long[] keys = new long[row.length];
+            for (int i=0; i < row.length; i++)
+                keys[i] = ( (long)row[i] << 32 ) | i;
+            Arrays.sort( keys );
+
+            rowStart[j] = n;
+            for (int i=0; i < keys.length; i++) {
+                int k = (int)( keys[i] >> 32 );
+                if ( n > rowStart[j] && toLinks[n-1] == k )
+                    continue;
+                toLinks[n] = k;
+                penalties[n] = turnPenaltyArray[j][(int)keys[i]];
+                n++;
+            }
+
+        }
+        rowStart[numLinks] = n;
+
+    }
+
+
+    /**
+     * Return the table for the turn penalty arrays given, or null if there are no turn
+     * penalties.  The table last built is kept, so the trees built by several threads and user
+     * classes from the same arrays share one table.
+     */
+    public static synchronized TurnPenaltyTable getInstance ( int numNodes, int[] ib, int[][] turnPenaltyIndices, float[][] turnPenaltyArray ) {
+
+        if ( turnPenaltyIndices == null || turnPenaltyIndices.length == 0 )
+            return null;
+
+        if ( lastTable == null || lastTable.sourceIndices != turnPenaltyIndices || lastTable.sourcePenalties != turnPenaltyArray )
+            lastTable = new TurnPenaltyTable( numNodes, ib, turnPenaltyIndices, turnPenaltyArray );
+
+        return lastTable;
+
+    }
+
+
+    /**
+     * Return true if a turn at node has a penalty or is prohibited.
+     */
+    public boolean hasTurnsAt ( int node ) {
+        return ( turnNodes[node >>> 6] & ( 1L << node ) ) != 0;
+    }
+
+
+    /**
+     * Return the penalty for turning from fromLink onto toLink, 0 if there is none.
+     */
+    public float getPenalty ( int fromLink, int toLink ) {
+
+        int lo = rowStart[fromLink];
+        int hi = rowStart[fromLink + 1] - 1;
+
+        if ( hi - lo < LINEAR_SEARCH_LENGTH ) {
+            for (int i=lo; i <= hi; i++) {
+                if ( toLinks[i] == toLink )
+                    return penalties[i];
+            }
+            return 0.0f;
+        }
+
+        while ( lo <= hi ) {
+            int mid = ( lo + hi ) >>> 1;
+            if ( toLinks[mid] < toLink )
+                lo = mid + 1;
+            else if ( toLinks[mid] > toLink )
+                hi = mid - 1;
+            else
+                return penalties[mid];
+        }
+
+        return 0.0f;
+
+    }
+
+}
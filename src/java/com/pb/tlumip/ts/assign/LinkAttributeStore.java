@@ -0,0 +1,194 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.pb.common.datafile.TableDataSet;
+
+
+/**
+ * Link attributes held as named primitive arrays, indexed by link, in front of the link
+ * TableDataSet read from the network files.
+ *
+ * A column is copied out of the table the first time it is asked for and the same array is
+ * returned from then on, so reading an attribute in every Frank-Wolfe iteration does not copy it.
+ * Arrays are never written in place: setting an attribute replaces its array, so an array handed
+ * out earlier keeps the values it had, and callers must not modify the arrays they are given.
+ *
+ * Attributes that have been set are written back to the table only when getTable() is called,
+ * for LinkCalculator expressions and reports that still work from the table.
+ *
+ */
+public class LinkAttributeStore implements Serializable {
+
+    private TableDataSet table;
+
+    private HashMap<String,double[]> doubleColumns = new HashMap<String,double[]>();
+    private HashMap<String,int[]> intColumns = new HashMap<String,int[]>();
+    private HashMap<String,boolean[]> booleanColumns = new HashMap<String,boolean[]>();
+
+    // values of the attributes set since the table was last brought up to date, in the order they were set.
+    private LinkedHashMap<String,Object> changedColumns = new LinkedHashMap<String,Object>();
+
+    // incremented whenever an attribute is set, so users of the arrays can tell when to get them again.
+    private int version;
+
+    // the value of version when each attribute was last set.
+    private HashMap<String,Integer> columnVersions = new HashMap<String,Integer>();
+
+
+    public LinkAttributeStore ( TableDataSet table ) {
+        this.table = table;
+    }
+
+
+    public boolean hasColumn ( String name ) {
+        return doubleColumns.containsKey( name ) || intColumns.containsKey( name ) || table.getColumnPosition( name ) >= 0;
+    }
+
+
+    public int getVersion() {
+        return version;
+    }
+
+
+    /**
+     * Return the version of the store when attribute name was last set, 0 if it has not been set
+     * since it was read from the table.
+     */
+    public int getVersion ( String name ) {
+        Integer columnVersion = columnVersions.get( name );
+        return columnVersion == null ? 0 : columnVersion;
+    }
+
+
+    public double[] getDouble ( String name ) {
+
+        double[] values = doubleColumns.get( name );
+        if ( values == null ) {
+            int[] intValues = intColumns.get( name );
+            if ( intValues != null ) {
+                values = new double[intValues.length];
+                for (int k=0; k < values.length; k++)
+                    values[k] = intValues[k];
+            }
+            else {
+                values = table.getColumnAsDouble( name );
+            }
+            doubleColumns.put( name, values );
+        }
+
+        return values;
+
+    }
+
+
+    public int[] getInt ( String name ) {
+
+        int[] values = intColumns.get( name );
+        if ( values == null ) {
+            double[] doubleValues = doubleColumns.get( name );
+            if ( doubleValues != null ) {
+                values = new int[doubleValues.length];
+                for (int k=0; k < values.length; k++)
+                    values[k] = (int)doubleValues[k];
+            }
+            else {
+                values = table.getColumnAsInt( name );
+            }
+            intColumns.put( name, values );
+        }
+
+        return values;
+
+    }
+
+
+    /**
+     * Boolean attributes, e.g. "centroid", are read from the table once and are not set again.
+     */
+    public boolean[] getBoolean ( String name ) {
+
+        boolean[] values = booleanColumns.get( name );
+        if ( values == null ) {
+            values = table.getColumnAsBoolean( name );
+            booleanColumns.put( name, values );
+        }
+
+        return values;
+
+    }
+
+
+    /**
+     * Replace the values of attribute name, adding it if it is new.  The store keeps values
+     * rather than a copy, so the caller must not change it afterwards.
+     */
+    public void setDouble ( String name, double[] values ) {
+        doubleColumns.put( name, values );
+        intColumns.remove( name );
+        changedColumns.put( name, values );
+        columnVersions.put( name, ++version );
+    }
+
+
+    public void setInt ( String name, int[] values ) {
+        intColumns.put( name, values );
+        doubleColumns.remove( name );
+        changedColumns.put( name, values );
+        columnVersions.put( name, ++version );
+    }
+
+
+    /**
+     * Return the link table with every attribute set through the store written back to it.
+     * The table is for reading; values changed in it directly are not seen by the store.
+     */
+    public TableDataSet getTable() {
+
+        for ( Map.Entry<String,Object> entry : changedColumns.entrySet() ) {
+
+            String name = entry.getKey();
+            int position = table.getColumnPosition( name );
+
+            if ( entry.getValue() instanceof double[] ) {
+                double[] values = (double[])entry.getValue();
+                if ( position < 0 )
+                    table.appendColumn( values.clone(), name );
+                else
+                    table.setColumnAsDouble( position, values );
+            }
+            else {
+                int[] values = (int[])entry.getValue();
+                if ( position < 0 )
+                    table.appendColumn( values.clone(), name );
+                else
+                    table.setColumnAsInt( position, values );
+            }
+
+        }
+        changedColumns.clear();
+
+        return table;
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A hashtable from a link's external anode and bnode to its link index, using open addressing
+ * with linear probing on primitive arrays.  The two node numbers are packed into one long key,
+ * (an << 32) | bn, so no objects are created for entries or lookups.
+ *
+ * The table is sized for the number of links when it is created and is not resized, as
+ * the links in a network do not change once it has been read.
+ *
+ */
+
+public class LinkIndexHashtable implements Serializable {
+
+    public static final int EMPTY_VALUE = -1;
+
+    /**
+     * The hash table keys, valid where the value is not EMPTY_VALUE.
+     */
+    private long[] keyTable;
+
+    /**
+     * The link indices.
+     */
+    private int[] valueTable;
+
+    /**
+     * keyTable.length - 1, with keyTable.length a power of 2.
+     */
+    private int mask;
+
+    /**
+     * The total number of entries in the hash table.
+     */
+    private int count;
+
+
+    /**
+     * Constructs a new, empty hashtable that holds up to maxEntries links with a load factor
+     * of at most 0.5.
+     */
+    public LinkIndexHashtable ( int maxEntries ) {
+
+        int capacity = 2;
+        while ( capacity < 2*maxEntries )
+            capacity <<= 1;
+
+        keyTable = new long[capacity];
+        valueTable = new int[capacity];
+        mask = capacity - 1;
+
+        Arrays.fill(valueTable, EMPTY_VALUE);
+    }
+
+
+    public static long getKey ( int an, int bn ) {
+        return ((long)an << 32) | (bn & 0xFFFFFFFFL);
+    }
+
+
+    /**
+     * Returns the number of links in this hashtable.
+     */
+    public int size() {
+        return count;
+    }
+
+
+    /**
+     * Maps the link an->bn to linkIndex, unless the link is already in the table, in which
+     * case the index stored first is kept and returned.
+     */
+    public int putIfAbsent ( int an, int bn, int linkIndex ) {
+
+        long key = getKey( an, bn );
+        int index = computeHashValue( key );
+
+        while ( valueTable[index] != EMPTY_VALUE ) {
+            if ( keyTable[index] == key )
+                return valueTable[index];
+            index = (index + 1) & mask;
+        }
+
+        if ( count + 1 > (mask + 1)/2 )
+            throw new IllegalStateException( "LinkIndexHashtable sized for " + (mask + 1)/2 + " links is full." );
+
+        keyTable[index] = key;
+        valueTable[index] = linkIndex;
+        count++;
+
+        return EMPTY_VALUE;
+    }
+
+
+    /**
+     * Returns the link index for an->bn, or EMPTY_VALUE if there is no such link.
+     */
+    public int get ( int an, int bn ) {
+
+        long key = getKey( an, bn );
+        int index = computeHashValue( key );
+
+        while ( valueTable[index] != EMPTY_VALUE ) {
+            if ( keyTable[index] == key )
+                return valueTable[index];
+            index = (index + 1) & mask;
+        }
+
+        return EMPTY_VALUE;
+    }
+
+
+    /**
+     * Compute a hash index for a packed node pair.  Node numbers are often consecutive, so the
+     * key bits are mixed before masking to keep neighbouring links apart.
+     */
+    private int computeHashValue ( long key ) {
+
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+
+        return (int)key & mask;
+    }
+
+}
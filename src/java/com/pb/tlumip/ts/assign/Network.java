@@ -113,6 +113,7 @@ public class Network implements Serializable {
     int[] sortedLinkIndexB;
     int[] ipa;
     int[] ipb;
+    LinkIndexHashtable linkIndexTable;
 	int[] ia;
 	int[] ib;
     int[] uniqueIds;
@@ -123,6 +124,9 @@ public class Network implements Serializable {
 	TableDataSet linkModsTable = null;
 	TableDataSet derivedLinkTable = null;
 
+	// link attributes read and set during assignment, held as arrays in front of linkTable.
+	LinkAttributeStore linkAttributes = null;
+
 	LinkFunction lf = null;
 	LinkFunction lfi = null;
 	LinkCalculator fdLc = null;
@@ -131,6 +135,11 @@ public class Network implements Serializable {
 	LinkCalculator fpiLc = null;
 	LinkCalculator ftLc = null;
 
+	// compiled forms of the fd, integral fd and ft functions, used instead of the LinkCalculators when every function compiles.
+	VdfKernelSet fdKernels = null;
+	VdfKernelSet fdiKernels = null;
+	VdfKernelSet ftKernels = null;
+
     int[][] turnPenaltyIndices = null;
     float[][] turnPenaltyArray = null;
 	float[][][] turnTable = null;
@@ -245,6 +254,8 @@ public class Network implements Serializable {
         
         sortedLinkIndexB = IndexSort.indexSort( ib );
         ipb = setForwardStarArrays ( ib, sortedLinkIndexB );
+
+        linkIndexTable = buildLinkIndexTable();
         
         
 		// calculate the derived link attributes for the network
@@ -254,6 +265,7 @@ public class Network implements Serializable {
 		// then we're done with the derived table.
 		linkTable.merge ( derivedLinkTable );
 		derivedLinkTable = null;
+		linkAttributes = new LinkAttributeStore ( linkTable );
 		
 
         
@@ -266,6 +278,7 @@ public class Network implements Serializable {
 
         // calculate the congested link travel times based on the vdf functions defined
 		fdLc = new LinkCalculator ( linkTable, lf.getFunctionStrings( "fd" ), "vdf" );
+		fdKernels = new VdfKernelSet ( lf.getFunctionStrings( "fd" ), "vdf" );
 		applyVdfs();
 		logLinkTimeFreqs();
 		
@@ -285,9 +298,11 @@ public class Network implements Serializable {
 
 		// define link calculators for use in computing objective function and lambda vales
 		fdiLc = new LinkCalculator ( linkTable, lfi.getFunctionStrings( "fd" ), "vdf" );
+		fdiKernels = new VdfKernelSet ( lfi.getFunctionStrings( "fd" ), "vdf" );
 		fpiLc = new LinkCalculator ( linkTable, lfi.getFunctionStrings( "fp" ), "turnIndex" );
 
 		ftLc = new LinkCalculator ( linkTable, lf.getFunctionStrings( "ft" ), "vdf" );
+		ftKernels = new VdfKernelSet ( lf.getFunctionStrings( "ft" ), "vdf" );
 	
         int[] externalNodes = getNodes();
         internalNodeToNodeTableRow = new int[externalNodes.length];
@@ -342,11 +357,11 @@ public class Network implements Serializable {
 	
 	
 	public int[] getIa () {
-		return linkTable.getColumnAsInt( "ia" );
+		return linkAttributes.getInt( "ia" );
 	}
 
 	public int[] getIb () {
-		return linkTable.getColumnAsInt( "ib" );
+		return linkAttributes.getInt( "ib" );
 	}
 
     public int[] getIpa () {
@@ -382,40 +397,40 @@ public class Network implements Serializable {
     }
 
     public int[] getVdfIndex () {
-        return linkTable.getColumnAsInt( "vdf" );
+        return linkAttributes.getInt( "vdf" );
     }
 
 	public boolean[] getCentroid () {
-		return linkTable.getColumnAsBoolean( "centroid" );
+		return linkAttributes.getBoolean( "centroid" );
 	}
 
 	public double[] getCapacity () {
-		return linkTable.getColumnAsDouble( "capacity" );
+		return linkAttributes.getDouble( "capacity" );
 	}
 
     public double[] getOriginalCapacity () {
-        return linkTable.getColumnAsDouble( "originalCapacity" );
+        return linkAttributes.getDouble( "originalCapacity" );
     }
 
     public double[] getTotalCapacity () {
-        return linkTable.getColumnAsDouble( "totalCapacity" );
+        return linkAttributes.getDouble( "totalCapacity" );
     }
 
     public double[] getCongestedTime () {
-        return linkTable.getColumnAsDouble( "congestedTime" );
+        return linkAttributes.getDouble( "congestedTime" );
     }
 
     public double[] getLinkGeneralizedCost () {
-        return linkTable.getColumnAsDouble( "generalizedCost" );
+        return linkAttributes.getDouble( "generalizedCost" );
     }
 
 	public double[] getTransitTime () {
-		return linkTable.getColumnAsDouble( "transitTime" );
+		return linkAttributes.getDouble( "transitTime" );
 	}
 
     public double getSumOfVdfIntegrals () {
 
-        double[] integrals = linkTable.getColumnAsDouble("vdfIntegral");
+        double[] integrals = linkAttributes.getDouble("vdfIntegral");
         
         double sum = 0.0;
         for (int k=0; k < integrals.length; k++)
@@ -426,31 +441,31 @@ public class Network implements Serializable {
     }
 
     public double[] getFreeFlowTime () {
-        return linkTable.getColumnAsDouble( "freeFlowTime" );
+        return linkAttributes.getDouble( "freeFlowTime" );
     }
 
     public double[] getFreeFlowSpeed () {
-        return linkTable.getColumnAsDouble( "freeFlowSpeed" );
+        return linkAttributes.getDouble( "freeFlowSpeed" );
     }
 
 	public double[] getDist () {
-		return linkTable.getColumnAsDouble( "dist" );
+		return linkAttributes.getDouble( "dist" );
 	}
 
     public int[] getLinkType () {
-        return linkTable.getColumnAsInt( "type" );
+        return linkAttributes.getInt( "type" );
     }
 
     public int[] getTaz () {
-        return linkTable.getColumnAsInt( "taz" );
+        return linkAttributes.getInt( "taz" );
     }
 
     public int[] getDrops () {
-        return linkTable.getColumnAsInt( "drops" );
+        return linkAttributes.getInt( "drops" );
     }
 
     public int[] getUniqueIds () {
-        return linkTable.getColumnAsInt( "uniqueIds" );
+        return linkAttributes.getInt( "uniqueIds" );
     }
 
     public float[] getUserClassPces() {
@@ -458,7 +473,7 @@ public class Network implements Serializable {
     }
 
     public double[] getLanes () {
-        return linkTable.getColumnAsDouble( "lanes" );
+        return linkAttributes.getDouble( "lanes" );
     }
 
 	public String[] getMode () {
@@ -511,26 +526,34 @@ public class Network implements Serializable {
 
         for (char c : userClasses) {
             int m = getUserClassIndex(c);
-            flows[m] = linkTable.getColumnAsDouble( "flow_" + c );
+            flows[m] = linkAttributes.getDouble( "flow_" + c );
         }
 
         return flows;
     }
 
     public double[] getTotalLinkCost () {
-        return linkTable.getColumnAsDouble( "totalLinkCost" );
+        return linkAttributes.getDouble( "totalLinkCost" );
     }
 
     public double[] getLinkAttribCosts ( char c ) {
-        return linkTable.getColumnAsDouble( String.format("linkAttribCosts_%c", c) );
+        return linkAttributes.getDouble( String.format("linkAttribCosts_%c", c) );
     }
 
     public double[] getVolau() {
-        return linkTable.getColumnAsDouble( "volau" );
+        return linkAttributes.getDouble( "volau" );
     }
     
     public double[] getVolad() {
-        return linkTable.getColumnAsDouble( "volad" );
+        return linkAttributes.getDouble( "volad" );
+    }
+    
+    /**
+     * Return a number that changes whenever link attribute name is set, so the arrays returned for
+     * it can be cached until then.
+     */
+    public int getAttributeVersion( String name ) {
+        return linkAttributes.getVersion( name );
     }
     
     public int[] getNodes () {
@@ -642,27 +665,27 @@ public class Network implements Serializable {
             gc[i] = ctime[i] + totalLinkCost[i];
 
 
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("generalizedCost"), gc );
+        linkAttributes.setDouble( "generalizedCost", gc );
 		
 		return gc;
     }
 
     public void setVolau ( double[] volau ) {
         this.volau = volau;
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("volau"), volau );
+        linkAttributes.setDouble( "volau", volau );
     }
 
     public void setTimau ( double[] timau ) {
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("congestedTime"), timau );
+        linkAttributes.setDouble( "congestedTime", timau );
     }
 
     public void setTaz ( int[] taz ) {
-        linkTable.appendColumn( taz, "taz" );
+        linkAttributes.setInt( "taz", taz );
     }
 
     public void setDrops ( int[] drops ) {
         this.drops = drops;
-        linkTable.appendColumn( drops, "drops" );
+        linkAttributes.setInt( "drops", drops );
     }
 
     public void setLinkLabels ( String[] labels ) {
@@ -678,56 +701,56 @@ public class Network implements Serializable {
     }
 
     public void setTotalLinkCost( double[] cost){
-        linkTable.appendColumn ( cost, "totalLinkCost" );
+        linkAttributes.setDouble( "totalLinkCost", cost );
     }
 
     public void setLinkAttribCosts( double[][] cost){
         for ( char c : userClasses ) {
             int m = getUserClassIndex(c);
-            linkTable.appendColumn ( cost[m], String.format("linkAttribCosts_%c", c) );
+            linkAttributes.setDouble( String.format("linkAttribCosts_%c", c), cost[m] );
         }
     }
 
     public void setUniqueIds ( int[] ids ) {
         uniqueIds = ids;
-        linkTable.appendColumn( ids, "uniqueIds" );
+        linkAttributes.setInt( "uniqueIds", ids );
     }
 
     public void setOriginalCapacity ( double[] originalCapacity ) {
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("originalCapacity"), originalCapacity );
+        linkAttributes.setDouble( "originalCapacity", originalCapacity );
     }
 
     public void setCapacity ( double[] capacity ) {
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("capacity"), capacity );
+        linkAttributes.setDouble( "capacity", capacity );
     }
 
     public void setTotalCapacity ( double[] totalCapacity ) {
-        linkTable.setColumnAsDouble( linkTable.getColumnPosition("totalCapacity"), totalCapacity );
+        linkAttributes.setDouble( "totalCapacity", totalCapacity );
     }
 
     public void setVolCapRatios () {
 		
-    	double[] totalVolCapRatio = linkTable.getColumnAsDouble( "totalVolCapRatio" );
-    	double[] totalCapacity = linkTable.getColumnAsDouble( "totalCapacity" );
-    	double[] volad = linkTable.getColumnAsDouble( "volad" );
+    	double[] totalVolCapRatio = new double[numLinks];
+    	double[] totalCapacity = linkAttributes.getDouble( "totalCapacity" );
+    	double[] volad = linkAttributes.getDouble( "volad" );
 
-		for (int i=0; i < linkTable.getRowCount(); i++) {
+		for (int i=0; i < numLinks; i++) {
 			totalVolCapRatio[i] = (volau[i]+volad[i])/totalCapacity[i];
 		}
 
-		linkTable.setColumnAsDouble( linkTable.getColumnPosition("totalVolCapRatio"), totalVolCapRatio );
+		linkAttributes.setDouble( "totalVolCapRatio", totalVolCapRatio );
 		
     }
 
     public void setFlows (double[][] flow) {
         for ( char c : userClasses ) {
             int m = getUserClassIndex(c);
-            linkTable.setColumnAsDouble( linkTable.getColumnPosition("flow_" + c), flow[m] );
+            linkAttributes.setDouble( "flow_" + c, flow[m] );
         }
     }
     
     public void setTtf ( int[] ttf ) {
-        linkTable.setColumnAsInt( linkTable.getColumnPosition("ttf"), ttf );
+        linkAttributes.setInt( "ttf", ttf );
     }
       
     private char[] getUserClassesFromProperties ( String userClassPropertyString ) {
@@ -1183,11 +1206,11 @@ public class Network implements Serializable {
 	    
 	    
         // apply any link mods for ul3 as done for PT (see times.mac)
+        // linkAttributes is not built until the derived attributes are merged, so use the ib array read from linkTable.
         if (linkModsTable != null) {
 
             for (int i=0; i < linkModsTable.getRowCount(); i++) {
             
-                int[] ib = getIb();
                 int an = (int)linkModsTable.getValueAt( i+1, "anode" );
                 int bn = (int)linkModsTable.getValueAt( i+1, "bnode" );
                 int ia = nodeIndex[an];
@@ -1261,9 +1284,10 @@ public class Network implements Serializable {
 		
 	public void applyVdfs () {
 		
-        double[] congestedTime = (double[])linkTable.getColumnAsDouble( "congestedTime" );
+        double[] previousTime = linkAttributes.getDouble( "congestedTime" );
+        double[] congestedTime = new double[previousTime.length];
         
-		double[] results = fdLc.solve(validLinks);
+		double[] results = solveVdfs( fdKernels, fdLc );
 		
 		for (int i=0 ; i < results.length; i++) {
             
@@ -1273,20 +1297,24 @@ public class Network implements Serializable {
                 if ( results[i] < 0 || (Double.valueOf(results[i])).equals(Double.NaN) ) {
                     logger.error ( "invalid result in Network.applyVdfs(boolean[] validLinks).   results[i=" + i + "] = " + results[i] );
                     logger.error ( "anode = " + indexNode[ia[i]] + ", bnode = " + indexNode[ib[i]] );
-                    logger.error ( "volau = " + linkTable.getValueAt( i+1, linkTable.getColumnPosition("volau") ) );
-                    logger.error ( "volad = " + linkTable.getValueAt( i+1, linkTable.getColumnPosition("volad") ) );
-                    logger.error ( "capacity = " + linkTable.getValueAt( i+1, linkTable.getColumnPosition("capacity") ) );
-                    logger.error ( "lanes = " + linkTable.getValueAt( i+1, linkTable.getColumnPosition("lanes") ) );
-                    logger.error ( "length = " + linkTable.getValueAt( i+1, linkTable.getColumnPosition("length") ) );
+                    logger.error ( "volau = " + linkAttributes.getDouble( "volau" )[i] );
+                    logger.error ( "volad = " + linkAttributes.getDouble( "volad" )[i] );
+                    logger.error ( "capacity = " + linkAttributes.getDouble( "capacity" )[i] );
+                    logger.error ( "lanes = " + linkAttributes.getDouble( "lanes" )[i] );
+                    logger.error ( "length = " + linkAttributes.getDouble( "length" )[i] );
                     //throw new RuntimeException();
+                    congestedTime[i] = previousTime[i];
                 }
                 else {
                     congestedTime[i] = results[i];
                 }
+            }
+            else {
+                congestedTime[i] = previousTime[i];
             }
 		}
 			
-		linkTable.setColumnAsDouble( linkTable.getColumnPosition("congestedTime"), congestedTime );
+		linkAttributes.setDouble( "congestedTime", congestedTime );
 
 	}
 		
@@ -1294,7 +1322,7 @@ public class Network implements Serializable {
 		
 	public void applyVdfIntegrals () {
 	
-		double[] results = fdiLc.solve(validLinks);
+		double[] results = solveVdfs( fdiKernels, fdiLc );
 		
 		for (int i=0 ; i < results.length; i++) {
             // if link calculater returns a negative or NaN result for a valid link, report the error
@@ -1311,11 +1339,30 @@ public class Network implements Serializable {
             }
 		}
 			
-		linkTable.setColumnAsDouble( linkTable.getColumnPosition("vdfIntegral"), results );
+		linkAttributes.setDouble( "vdfIntegral", results );
 
 	}
 	
 	
+	/**
+	 * Evaluate the functions for all valid links, with the compiled kernels for the functions that
+	 * compiled and agree with the LinkCalculator, and with the LinkCalculator for the others.
+	 */
+	private double[] solveVdfs ( VdfKernelSet kernels, LinkCalculator lc ) {
+		
+		if ( kernels != null && kernels.bind( linkAttributes ) ) {
+			if ( kernels.needsValidation() )
+				kernels.validate( lc, validLinks );
+			return kernels.solve( validLinks, lc );
+		}
+		
+		// the calculator reads the link table, so bring it up to date first.
+		linkAttributes.getTable();
+		return lc.solve( validLinks );
+		
+	}
+	
+	
 	public double applyLinkTransitVdf ( int hwyLinkIndex, int transitVdfIndex ) {
 		
         double result = -1.0;
@@ -1323,7 +1370,16 @@ public class Network implements Serializable {
 		// calculate the link in-vehicle travel times based on the transit vdf index for the link passed in
         try {
 
-            result = ftLc.solve(hwyLinkIndex, transitVdfIndex);
+            if ( ftKernels != null && ftKernels.bind( linkAttributes ) && ftKernels.needsValidation() )
+                ftKernels.validate( ftLc, validLinks );
+
+            if ( ftKernels != null && ftKernels.hasFunction( transitVdfIndex ) ) {
+                result = ftKernels.solve(hwyLinkIndex, transitVdfIndex);
+            }
+            else {
+                linkAttributes.getTable();
+                result = ftLc.solve(hwyLinkIndex, transitVdfIndex);
+            }
 		
     		if ( result < 0 || result == Double.NaN )
                 throw new RuntimeException();
@@ -1735,6 +1791,7 @@ public class Network implements Serializable {
 		
 		// otherwise, this downstream link is part of a penalized turn so return the turn penalty.
 		int k = getLinkIndex ( jn, kn );
+		linkAttributes.getTable();
 		returnValue = fpLc.solve( k, fpIndex );
 
 		
@@ -1775,79 +1832,33 @@ public class Network implements Serializable {
 	
     public int getLinkIndex( int an, int bn ) {
 
-        // takes external node numbers and returns link index
-        int i = 0;
-        int k = 0;
-        int start = 0;
-        int end = 0;
-        int offset = 0;
+        // takes external node numbers and returns link index, or -1 if there is no link from an to bn.
+        if ( an < 0 || an >= nodeIndex.length || bn < 0 || bn >= nodeIndex.length ) {
+            logger.error ("problem getting link id for: an=" + an + ", bn=" + bn + "." );
+            throw new RuntimeException();
+        }
 
-        int returnValue = -1;
+        return linkIndexTable.get( an, bn );
         
-        // search through bnodes for the given anode to find the link and return its index
-        try {
+    }
 
-            // if an is not in network, link is not either
-            if ( nodeIndex[an] < 0 )
-                return -1;
-            
-            start = ipa[nodeIndex[an]];
-            
-            offset = 1;
-            end = ipa[nodeIndex[an] + offset++];
-            while ( end <= 0 )
-                end = ipa[nodeIndex[an] + offset++];
 
-            for (i=start; i < end; i++) {
-                
-                k = sortedLinkIndexA[i];
-                
-                if(logger.isDebugEnabled()) {
-                    logger.debug ("i=" + i + ", k=" + k + ", an=" + an + ", bn=" + bn + ", ia=" + nodeIndex[an] + ", ib=" + nodeIndex[bn] + ", start=" + start + ", end=" + end + ", offset=" + offset );
-                }
-                
-                if ( ib[k] == nodeIndex[bn] ) {
-                    returnValue = k;
-                    break;
-                }
-            }
+    /**
+     * Build the table of link indices by external anode and bnode used by getLinkIndex().  Links
+     * are entered in forward star order, so if more than one link joins the same pair of nodes,
+     * the one a search of the anode's forward star would find first is kept.
+     */
+    private LinkIndexHashtable buildLinkIndexTable () {
 
+        LinkIndexHashtable table = new LinkIndexHashtable( ia.length );
+
+        for (int i=0; i < sortedLinkIndexA.length; i++) {
+            int k = sortedLinkIndexA[i];
+            table.putIfAbsent( indexNode[ia[k]], indexNode[ib[k]], k );
         }
-        catch ( Exception e ) {
-            logger.error ("problem getting link id for: an=" + an + ", bn=" + bn + "." );
-            logger.error ("i=" + i + ", k=" + k + ", an=" + an + ", bn=" + bn + ", ia=" + nodeIndex[an] + ", ib=" + nodeIndex[bn] + ", start=" + start + ", end=" + end + ", offset=" + offset );
-            throw new RuntimeException();
-        }
-        
 
-        
-//        if ( returnValue == 0 ) {
-//            
-//            // search through anodes for the given bnode to find the link and return its index
-//            start = ipb[nodeIndex[bn]];
-//            end = ipb[nodeIndex[bn] + 1];
-//            if ( end <= 0 )
-//                end = start + 1;
-//
-//            for (int i=start; i < end; i++) {
-//                
-//                k = sortedLinkIndexB[i];
-//                
-//                if(logger.isDebugEnabled()) {
-//                    logger.debug ("i=" + i + ", k=" + k + ", an=" + nodeIndex[an] + ", bn=" + nodeIndex[bn] + ", ia[k=" + k + "]=" + ia + ", ib[k=" + k + "]=" + ib );
-//                }
-//                
-//                if ( ia[k] == nodeIndex[an] ) {
-//                    returnValue = k;
-//                    break;
-//                }
-//            }
-//
-//        }
-        
+        return table;
 
-        return returnValue;
-        
     }
 
     
@@ -1935,10 +1946,10 @@ public class Network implements Serializable {
         String indexString = "Link VDF";
         int[] linkType = getVdfIndex();
 
-        double[] congestedTime = (double[])linkTable.getColumnAsDouble( "congestedTime" );
-        double[] freeFlowSpeed = (double[])linkTable.getColumnAsDouble( "freeFlowSpeed" );
-        double[] distance =      (double[])linkTable.getColumnAsDouble( "dist" );
-        double[] capacity =      (double[])linkTable.getColumnAsDouble( "capacity" );
+        double[] congestedTime = getCongestedTime();
+        double[] freeFlowSpeed = getFreeFlowSpeed();
+        double[] distance =      getDist();
+        double[] capacity =      getCapacity();
         
 
         for (int k=0; k < numLinks; k++) {
@@ -1994,7 +2005,7 @@ public class Network implements Serializable {
 		int[] ia = getIa();
 		int[] ib = getIb();
         
-		double[] congestedTime = (double[])linkTable.getColumnAsDouble( "congestedTime" );
+		double[] congestedTime = getCongestedTime();
 		int[] buckets = new int[8];
 
 		for (int i=0; i < congestedTime.length; i++) {
@@ -2042,6 +2053,9 @@ public class Network implements Serializable {
 
 		int[] ia = getIa();
 		int[] ib = getIb();
+
+		// results are written from the link table, brought up to date with the assignment results.
+		linkAttributes.getTable();
 		double[] congestedTime = (double[])linkTable.getColumnAsDouble( "congestedTime" );
 		double[] capacity = (double[])linkTable.getColumnAsDouble( "capacity" );
 
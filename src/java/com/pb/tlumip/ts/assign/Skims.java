@@ -28,13 +28,21 @@ import com.pb.tlumip.model.WorldZoneExternalZoneUtil;
 import com.pb.tlumip.ts.NetworkHandler;
 import com.pb.tlumip.ts.NetworkHandlerIF;
 import com.pb.tlumip.ts.ShortestPathTreeH;
+import com.pb.tlumip.ts.ShortestPathWorkspace;
 
 import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.ResourceBundle;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 public class Skims {
@@ -43,6 +51,8 @@ public class Skims {
     private Logger skimLogger = Logger.getLogger( "skimLogger" );
 
 	private static int MAX_SKIM_VALUE = 1000;
+
+    private int numberOfThreads = java.lang.Runtime.getRuntime().availableProcessors();
 	
 	HashMap<String,String> tsPropertyMap;
     HashMap<String,String> globalPropertyMap;
@@ -215,9 +225,10 @@ public class Skims {
 
 
     /**
-	 * write out a set of alpha zone skim matrices
+	 * write out a set of alpha zone skim matrices, and return them in skimType order.
+	 * null is returned if no skims files are written for the period.
 	 */
-	public void writeHwySkimMatrices ( String assignmentPeriod, String[] skimType, char modeChar ) {
+	public Matrix[] writeHwySkimMatrices ( String assignmentPeriod, String[] skimType, char modeChar ) {
 
         // construct a filename based on assignment period, network mode skimmed, skim value:
         
@@ -230,7 +241,7 @@ public class Skims {
         // if tempName is "null", no period identifier was associated with this period, so don't need skims files to be written
         if ( tempName == null ) {
             logger.info ( String.format( "no highway skims files were written for %s period.", assignmentPeriod ) );
-            return;
+            return null;
         }
         
 
@@ -352,6 +363,8 @@ public class Skims {
         }
 
         
+        return newSkimMatrices;
+
 	}
 
 
@@ -370,16 +383,13 @@ public class Skims {
 		boolean[] validLinks = nh.getValidLinksForClassChar( modeChar );
 		
 
-		// get the skims as a double[][] array dimensioned to number of centroids (alphas + externals)
-        double[][][] zeroBasedDoubleArrays = buildHwySkimMatrices( linkCost, linkAttribs, validLinks );
+		// get the skims as float[][] arrays dimensioned to number of alpha zones + externals, in alpha zone order
+        float[][][] zeroBasedFloatArrays = hwySkims( linkCost, linkAttribs, validLinks );
 
 		for ( int i=0; i < linkAttribs.length; i++ ) {
 
-	        // convert to a float[][] dimensioned to number of alpha zones + externals
-	        float[][] zeroBasedFloatArray = getZeroBasedFloatArray ( zeroBasedDoubleArrays[i] );
-
 	        // define default names for matrices.  They can be set later if necessary
-			newSkimMatrices[i] = new Matrix( matrixName[i], matrixDescription[i], zeroBasedFloatArray );
+			newSkimMatrices[i] = new Matrix( matrixName[i], matrixDescription[i], zeroBasedFloatArrays[i] );
 			newSkimMatrices[i].setExternalNumbers( alphaMatrixExternalNumbers );
 			
 		}
@@ -432,114 +442,180 @@ public class Skims {
 
 
     
-    private float[][] getZeroBasedFloatArray ( double[][] zeroBasedDoubleArray ) {
-
-		// copy the double values to a float array, putting values in row,cols corresponding to the alpha+externals external number order.
-		float[][] zeroBasedFloatArray = new float[numCentroids][numCentroids];
-
-        int[] indexNode = nh.getIndexNode();
-        
-        for (int i=0; i < zeroBasedDoubleArray.length; i++) {
-            // convert index to TAZ
-            int exRow = indexNode[i];
-            // convert TAZ to alphaIndex
-            int inRow = tazToAlphaIndex[exRow];
-            for (int j=0; j < zeroBasedDoubleArray[i].length; j++) {
-                // convert index to TAZ
-                int exCol = indexNode[j];
-                // convert TAZ to alphaIndex
-                int inCol = tazToAlphaIndex[exCol];
-                
-                // put value in return array by alpha zone indices for i,j.
-                zeroBasedFloatArray[inRow][inCol] = (float)zeroBasedDoubleArray[i][j];
-            }
+	/**
+	 * highway network skimming procedure for generating multiple skim tables.
+	 * origin zones are handed out to a pool of threads, each of which builds one tree per origin,
+	 * skims all the link attributes from that tree, sets the intrazonal values and writes the rows,
+	 * rearranged to the alpha+externals order, into the float arrays used for the skim Matrix objects.
+	 */
+	private float[][][] hwySkims ( double[] linkCost, double[][] linkAttributes, boolean[] validLinks ) {
+
+        float[][][] skimMatrices = new float[linkAttributes.length][numCentroids][numCentroids];
+
+        // get the network arrays once, so each thread's tree doesn't have to ask the NetworkHandler for them.
+        SkimNetwork network = new SkimNetwork( nh, linkCost, validLinks );
+        
+        // row/column index in the alpha zone arrays for each network internal centroid index
+        int[] indexNode = network.indexNode;
+        int[] alphaIndex = new int[numCentroids];
+        for (int i=0; i < numCentroids; i++)
+            alphaIndex[i] = tazToAlphaIndex[indexNode[i]];
+        
+        
+        int numThreads = Math.min( numberOfThreads, numCentroids );
+        AtomicInteger nextOrigin = new AtomicInteger(0);
+        
+        ExecutorService exec = Executors.newFixedThreadPool( numThreads );
+        ArrayList<Future<Object>> results = new ArrayList<Future<Object>>( numThreads );
+
+        try {
+            for (int t=0; t < numThreads; t++)
+                results.add( exec.submit( new HwySkimTask( network, linkAttributes, alphaIndex, nextOrigin, skimMatrices ) ) );
+
+            for ( Future<Object> f : results )
+                f.get();
+        }
+        catch (InterruptedException e) {
+            logger.error ( "interrupted while waiting for highway skim threads.", e );
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            logger.error ( "exception caught building highway skims.", e.getCause() );
+            throw new RuntimeException(e.getCause());
+        }
+        finally {
+            exec.shutdown();
         }
+
+		return skimMatrices;
         
-   	    return zeroBasedFloatArray;
+	}
+
+
+    /**
+     * network arrays and link costs shared, read only, by the skimming threads.
+     */
+    private class SkimNetwork {
+
+        int numLinks;
+        int numNodes;
+        int[] ia;
+        int[] ib;
+        int[] ipa;
+        int[] sortedLinkIndexA;
+        int[] indexNode;
+        int[] nodeIndex;
+        boolean[] centroid;
+        int[][] turnPenaltyIndices;
+        float[][] turnPenaltyArray;
+        double[] linkCost;
+        boolean[] validLinks;
+
+        SkimNetwork ( NetworkHandlerIF nh, double[] linkCost, boolean[] validLinks ) {
+            numLinks = nh.getLinkCount();
+            numNodes = nh.getNodeCount();
+            ia = nh.getIa();
+            ib = nh.getIb();
+            ipa = nh.getIpa();
+            sortedLinkIndexA = nh.getSortedLinkIndexA();
+            indexNode = nh.getIndexNode();
+            nodeIndex = nh.getNodeIndex();
+            centroid = nh.getCentroid();
+            turnPenaltyIndices = nh.getTurnPenaltyIndices();
+            turnPenaltyArray = nh.getTurnPenaltyArray();
+            this.linkCost = linkCost;
+            this.validLinks = validLinks;
+        }
 
     }
 
 
     /**
-	 * build network skim arrays, return as double[][][].
-	 * the highway network attributes on which to skim the network to produce multipe skim tables is passed in.
-	 */
-	private double[][][] buildHwySkimMatrices ( double[] linkCost, double[][] linkAttributes, boolean[] validLinks ) {
-		
-		
-		double[][][] skimMatrices =  hwySkims ( linkCost, linkAttributes, validLinks );
-		int minI = 0;
-        int minJ = 0;
-		// set intrazonal values to 0.5*nearest neighbor
-		for (int k=0; k < skimMatrices.length; k++) {
-			
-			for (int i=0; i < skimMatrices[k].length; i++) {
-			
-				// find minimum valued row element
-				double minValue = Double.MAX_VALUE;
-				for (int j=0; j < skimMatrices[k].length; j++) {
-					if ( i != j && skimMatrices[k][i][j] != Double.NEGATIVE_INFINITY && skimMatrices[k][i][j] < minValue ){
-						minValue = skimMatrices[k][i][j];
-	                    minI = i;
-	                    minJ = j;
-	                }
-				}
-	
-				// set intrazonal value
-	            if(minValue < 0) {
-	                logger.fatal("Hwy skim min value is " + minValue + "@ rowIndex " + minI + ", colIndex " + minJ);
-	                logger.fatal("System will exit, no hwy skims have been written");
-	                System.exit(10);
-	            }
-	
-				if ( minValue < Double.MAX_VALUE )
-					skimMatrices[k][i][i] = 0.5*minValue;
-				else
-					skimMatrices[k][i][i] = Double.NEGATIVE_INFINITY;
+     * builds and skims trees for origins taken from nextOrigin until none are left.
+     */
+    private class HwySkimTask implements Callable<Object> {
+
+        SkimNetwork network;
+        double[][] linkAttributes;
+        int[] alphaIndex;
+        AtomicInteger nextOrigin;
+        float[][][] skimMatrices;
+
+        HwySkimTask ( SkimNetwork network, double[][] linkAttributes, int[] alphaIndex, AtomicInteger nextOrigin, float[][][] skimMatrices ) {
+            this.network = network;
+            this.linkAttributes = linkAttributes;
+            this.alphaIndex = alphaIndex;
+            this.nextOrigin = nextOrigin;
+            this.skimMatrices = skimMatrices;
+        }
 
-			}
-		}
-		
-		return skimMatrices;
-       
-	}
+        public Object call() {
 
+            // create a ShortestPathTreeH object that reuses this thread's label and heap arrays
+            ShortestPathWorkspace ws = ShortestPathWorkspace.getThreadInstance( network.numNodes, network.ia, network.ib, network.indexNode );
+            ShortestPathTreeH sp = new ShortestPathTreeH( network.numLinks, network.numNodes, numCentroids, network.ia, network.ib, network.ipa, network.sortedLinkIndexA,
+                    network.indexNode, network.nodeIndex, network.centroid, network.turnPenaltyIndices, network.turnPenaltyArray, ws );
 
-	/**
-	 * highway network skimming procedure for generating multiple skim tables
-	 */
-	private double[][][] hwySkims ( double[] linkCost, double[][] linkAttributes, boolean[] validLinks ) {
+            sp.setValidLinks( network.validLinks );
+            sp.setLinkCost( network.linkCost );
 
-	    int i;
-	    
-        double[][] tempMatrices;
-        double[][][] skimMatrices = new double[linkAttributes.length][numCentroids][];
+            double[][] skimRows = new double[linkAttributes.length][numCentroids];
 
-		
-		// create a ShortestPathTreeH object
-		ShortestPathTreeH sp = new ShortestPathTreeH( nh );
+            int i;
+            while ( (i = nextOrigin.getAndIncrement()) < numCentroids ) {
 
+                // build the shortest path tree and skim it for all the link attributes required
+                sp.buildTree( i );
+                sp.getSkims( linkAttributes, skimRows );
 
-		// build shortest path trees based on linkcost and summarize time, dist, and toll skims for each origin zone.		sp.setLinkCost( linkCost );
-		sp.setValidLinks( validLinks );
-        sp.setLinkCost( linkCost );
-		
-		
-		// loop through the origin zones
-		for (i=0; i < numCentroids; i++) {
-			
-			// build the shortest path tree
-			sp.buildTree( i );
-			
-			// skim the shortest path tree for all the link attributes required
-            tempMatrices = sp.getSkims( linkAttributes );
-            for (int k=0; k < linkAttributes.length; k++)
-                skimMatrices[k][i] = tempMatrices[k];
-			
-		}
+                int inRow = alphaIndex[i];
+                for (int k=0; k < linkAttributes.length; k++) {
 
-		return skimMatrices;
-        
+                    setIntrazonalValue( skimRows[k], i );
+
+                    float[] row = skimMatrices[k][inRow];
+                    for (int j=0; j < numCentroids; j++)
+                        row[alphaIndex[j]] = (float)skimRows[k][j];
+
+                }
+
+            }
+
+            return null;
+
+        }
+
+    }
+
+
+    /**
+	 * set the intrazonal value in skim row i to 0.5*nearest neighbor
+	 */
+	private void setIntrazonalValue ( double[] skimRow, int i ) {
+
+        int minJ = 0;
+
+        // find minimum valued row element
+        double minValue = Double.MAX_VALUE;
+        for (int j=0; j < skimRow.length; j++) {
+            if ( i != j && skimRow[j] != Double.NEGATIVE_INFINITY && skimRow[j] < minValue ){
+                minValue = skimRow[j];
+                minJ = j;
+            }
+        }
+
+        // set intrazonal value
+        if(minValue < 0) {
+            logger.fatal("Hwy skim min value is " + minValue + "@ rowIndex " + i + ", colIndex " + minJ);
+            logger.fatal("System will exit, no hwy skims have been written");
+            System.exit(10);
+        }
+
+        if ( minValue < Double.MAX_VALUE )
+            skimRow[i] = 0.5*minValue;
+        else
+            skimRow[i] = Double.NEGATIVE_INFINITY;
+       
 	}
 
 
@@ -50,6 +50,7 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
@@ -1067,7 +1068,6 @@ public class TransitAssignAndSkimManager {
     private Matrix[] runTransitAssignment ( String identifier, NetworkHandlerIF nh, String timePeriod, String accessMode, String routeType, String tripMode , String demandMatricesPath) {
         
         double[][] tripTable = null;
-        double[] tripTableColumn = null;
         
         int numCentroids = nh.getNumCentroids();
         
@@ -1075,127 +1075,66 @@ public class TransitAssignAndSkimManager {
         if ( ! SKIM_ONLY ) {
             tripTable = dh.getTripTableForMode ( tripMode );
 
-            tripTableColumn = new double[tripTable[0].length];
-
             if (demandMatricesPath != null)
                 writeDemandMatrices(demandMatricesPath,identifier,timePeriod,tripTable);
         }
         
         
-                
-        // load the triptable on walk access transit network
-        // create an optimal strategy object for this highway and transit network
-        OptimalStrategy os = new OptimalStrategy( nh, identifier );
-        os.setTransitFareTables ( intracityFareTable, fareZones ); 
+        // arrays for skim values into 0-based float[][] dimensioned to number of actual zones including externals (2983),
+        // with indexZone mapping to be written to skims file.  The destination tasks write the skims into them directly.
+        float[][][] zeroBasedFloatArrays = new float[OptimalStrategy.NUM_SKIMS][numCentroids][numCentroids];
 
-        // arrays for skim values into 0-based double[][] dimensioned to number of actual zones including externals (2983)
-        double[][][] zeroBasedDoubleArray = new double[OptimalStrategy.NUM_SKIMS][numCentroids][numCentroids];
-                
-        double intrazonal = 0;
-        double totalTrips = 0;
-        double notLoadedTrips = 0;
+        RouteBoardingsAccumulator routeBoardings = new RouteBoardingsAccumulator( numCentroids, maxRoutes );
+        AtomicInteger nextDest = new AtomicInteger( 0 );
+        
         
-        int[] nodeIndex = nh.getNodeIndex();
-        int[] indexNode = nh.getIndexNode();
+        // load the triptable on walk access transit network
+        // each destination task creates an optimal strategy object for this highway and transit network,
+        // and builds, loads and skims the strategy for each destination it takes from nextDest.
+        int numberOfThreads = getNumberOfDestinationThreads( nh, identifier );
 
-        double[] routeBoardings = new double[maxRoutes];
+        if ( numberOfThreads == 1 ) {
+            new DestinationTask( identifier, nh, accessMode, routeType, tripTable, zeroBasedFloatArrays, routeBoardings, nextDest, false ).call();
+        }
+        else {
 
-        for ( int dest=0; dest < numCentroids; dest++ ) {
+            logger.info( String.format( "building %s %s %s optimal strategies for %d destinations in %d threads.", assignmentPeriod, accessMode, routeType, numCentroids, numberOfThreads ) );
 
-            
-            if ( TEST_DEST >= 0 && dest != nodeIndex[TEST_DEST] )
-                continue;
+            ExecutorService exec = Executors.newFixedThreadPool(numberOfThreads);
+            ArrayList<Future<OptimalStrategy>> results = new ArrayList<Future<OptimalStrategy>>();
+            for (int i=0; i < numberOfThreads; i++)
+                results.add ( exec.submit( new DestinationTask( identifier, nh, accessMode, routeType, tripTable, zeroBasedFloatArrays, routeBoardings, nextDest, true ) ) );
 
-            
-            if ( dest % 100 == 0 ) {
-                if ( SKIM_ONLY )
-                    logger.info( String.format( "building %s %s %s optimal strategy for destination index %d for writing skim tables.", assignmentPeriod, accessMode, routeType, dest) );
-                else
-                    logger.info( String.format( "building %s %s %s optimal strategy for destination index %d for loading network and writing skim tables.", assignmentPeriod, accessMode, routeType, dest) );
-            }
-            
-            
-            // prepare trip array to assign if SKIM_ONLY == false
-            double tripSum = 0.0;
-            if ( ! SKIM_ONLY ) {
-            
-                for (int orig=0; orig < tripTable.length; orig++) {
-    
-                    // don't assign intra-zonal trips on network, but keep track of the total.
-                    if ( orig == dest ) {
-                        intrazonal += tripTable[orig][dest];
-                        tripTableColumn[orig] = 0.0; 
-                        continue;
-                    }
-                    else {
-                        tripTableColumn[orig] = tripTable[orig][dest]; 
-                        tripSum += tripTable[orig][dest];
-                    }
-                    
-                }
-                
+            ArrayList<OptimalStrategy> strategies = new ArrayList<OptimalStrategy>();
+            try {
+                for ( Future<OptimalStrategy> fs : results )
+                    strategies.add( fs.get() );
             }
-            
-            
-            // build optimal strategy for this network
-            os.buildStrategy( dest, accessMode );
-
-            
-            // load trips onto strategy unless SKIM_ONLY == true
-            if ( ! SKIM_ONLY ) {
-
-                double destBoardings = 0.0;
-                if ( tripSum > 0 ) {
-    
-                    double[] routeBoardingsToDest = os.loadOptimalStrategyDest( tripTableColumn, maxRoutes );
-                    
-                    for (int r=0; r < routeBoardings.length; r++) {
-                        routeBoardings[r] += routeBoardingsToDest[r];
-                        destBoardings += routeBoardingsToDest[r];
-                    }
-                    
-                    totalTrips += tripSum;
-                    notLoadedTrips += os.getTripsNotLoaded();
-                    
-                }
-            
+            catch (InterruptedException e) {
+                logger.error( "", e );
+                throw new RuntimeException( e );
             }
-            else if ( TEST_ORIG >= 0 && TEST_DEST >= 0 && dest == nodeIndex[TEST_DEST] ) {
-                
-                os.getOptimalStrategyLinks ( nodeIndex[TEST_ORIG] );
-                os.testLoadOptimalStrategyDest();
-                //return null;
-                
+            catch (ExecutionException e) {
+                logger.error( "", e );
+                throw new RuntimeException( e.getCause() );
             }
-            
-            // calculate skim matrices for strategy
-            double[][] odSkimValues = os.getOptimalStrategySkimsDest();
-            
-            
-            // save skim table values
-            for (int k=0; k < OptimalStrategy.NUM_SKIMS; k++) {
-                for (int orig=0; orig < numCentroids; orig++) { 
-                    zeroBasedDoubleArray[k][orig][dest] = odSkimValues[k][orig];
-                }
+            finally {
+                exec.shutdown();
             }
 
+            if ( ! SKIM_ONLY )
+                mergeLinkFlows( nh, identifier, strategies );
+
         }
 
 
         // save loaded trips for summarizing unless SKIM_ONLY == true
         if ( ! SKIM_ONLY ) {
-            saveTransitBoardings ( nh, identifier, accessMode, routeType, routeBoardings );
+            saveTransitBoardings ( nh, identifier, accessMode, routeType, routeBoardings.getRouteBoardings() );
         }
         
         
         // save skim Matrix objects        
-        float[][][] zeroBasedFloatArrays = new float[OptimalStrategy.NUM_SKIMS][][];
-
-        for (int k=0; k < OptimalStrategy.NUM_SKIMS; k++) {
-            zeroBasedFloatArrays[k] = getZeroBasedFloatArray ( nh.getIndexNode(), zeroBasedDoubleArray[k], numCentroids );
-            zeroBasedDoubleArray[k] = null;
-        }
-        
         Matrix[] skimMatrices = new Matrix[OptimalStrategy.NUM_SKIMS];
         
 
@@ -1281,6 +1220,58 @@ public class TransitAssignAndSkimManager {
     
 
     
+    /**
+     * Return the number of threads to share the destinations of a transit assignment among.
+     * Destinations are built in the calling thread when debugging a strategy, or when a
+     * negative dwell time factor is left on the network, since OptimalStrategy.buildStrategy()
+     * replaces it the first time a strategy uses the link, so the strategies depend on the
+     * order in which the destinations are built.
+     */
+    private int getNumberOfDestinationThreads ( NetworkHandlerIF nh, String identifier ) {
+
+        if ( TEST_DEST >= 0 )
+            return 1;
+
+        double[] dwellTime = nh.getAuxDwellTime( identifier );
+        int auxLinkCount = nh.getAuxLinkCount( identifier );
+        for (int k=0; k < auxLinkCount; k++) {
+            if ( dwellTime[k] < 0 ) {
+                logger.info( String.format( "%s transit network has negative dwell times, so destinations are built in one thread.", identifier ) );
+                return 1;
+            }
+        }
+
+        return java.lang.Runtime.getRuntime().availableProcessors();
+
+    }
+
+
+
+    /**
+     * Set the transit network's link flows from the private link flow arrays of the strategies
+     * used by the destination tasks.  The flow for each link is taken from the strategy that
+     * loaded the link for the highest numbered destination, the value a single thread building
+     * the destinations in order would have left.
+     */
+    private void mergeLinkFlows ( NetworkHandlerIF nh, String identifier, ArrayList<OptimalStrategy> strategies ) {
+
+        double[] flow = nh.getAuxLinkFlow( identifier );
+
+        for (int k=0; k < flow.length; k++) {
+            int lastDest = -1;
+            for ( OptimalStrategy os : strategies ) {
+                int[] flowDest = os.getLinkFlowDestinations();
+                if ( flowDest[k] > lastDest ) {
+                    lastDest = flowDest[k];
+                    flow[k] = os.getLinkFlows()[k];
+                }
+            }
+        }
+
+    }
+
+
+
     private void  saveTransitBoardings ( NetworkHandlerIF nh, String identifier, String accessMode, String routeType, double[] transitBoardings ) {
         
         int accessIndex = -1;
@@ -1443,38 +1434,6 @@ public class TransitAssignAndSkimManager {
         
 
     
-    private float[][] getZeroBasedFloatArray ( int[] skimsInternalToExternal, double[][] zeroBasedDoubleArray, int numCentroids ) {
-
-        // convert the zero-based double[alphas+externals][alphas+externals] produced by the skimming procedure, with network centroid/zone index mapping
-        // to a zero-based float[alphas+externals][alphas+externals] with indexZone mapping to be written to skims file.
-        float[][] zeroBasedFloatArray = new float[numCentroids][numCentroids];
-        
-        int exRow;
-        int exCol;
-        int inRow;
-        int inCol;
-        for (int i=0; i < zeroBasedDoubleArray.length; i++) {
-            exRow = skimsInternalToExternal[i];
-            if ( zonesToSkim[exRow] == 1 ) {
-                inRow = externalToAlphaInternal[exRow];
-                for (int j=0; j < zeroBasedDoubleArray[i].length; j++) {
-                    exCol = skimsInternalToExternal[j];
-                    if ( zonesToSkim[exCol] == 1 ) {
-                        inCol = externalToAlphaInternal[exCol];
-                        zeroBasedFloatArray[inRow][inCol] = (float)zeroBasedDoubleArray[i][j];
-                    }
-                }
-            }
-        }
-
-        zeroBasedDoubleArray = null;
-
-        return zeroBasedFloatArray;
-
-    }
-
-
-    
     private void initSkimMatrices ( NetworkHandlerIF nh, String zoneCorrespondenceFile ) {
 
         int[] alphaNumberArray = null;
@@ -1833,6 +1792,189 @@ public class TransitAssignAndSkimManager {
     }
 
     
+    /**
+     * Builds, loads and skims the optimal strategy to each destination taken from a counter
+     * shared with the other tasks of the same transit assignment.  Each task has its own
+     * OptimalStrategy, so a task running in its own thread uses that thread's strategy workspace.
+     */
+    private class DestinationTask implements Callable<OptimalStrategy> {
+
+        private String identifier;
+        private NetworkHandlerIF nh;
+        private String accessMode;
+        private String routeType;
+        private double[][] tripTable;
+        private float[][][] zeroBasedFloatArrays;
+        private RouteBoardingsAccumulator routeBoardings;
+        private AtomicInteger nextDest;
+        private boolean privateLinkFlows;
+
+        private DestinationTask ( String identifier, NetworkHandlerIF nh, String accessMode, String routeType, double[][] tripTable,
+                float[][][] zeroBasedFloatArrays, RouteBoardingsAccumulator routeBoardings, AtomicInteger nextDest, boolean privateLinkFlows ) {
+            this.identifier = identifier;
+            this.nh = nh;
+            this.accessMode = accessMode;
+            this.routeType = routeType;
+            this.tripTable = tripTable;
+            this.zeroBasedFloatArrays = zeroBasedFloatArrays;
+            this.routeBoardings = routeBoardings;
+            this.nextDest = nextDest;
+            this.privateLinkFlows = privateLinkFlows;
+        }
+
+        public OptimalStrategy call() {
+
+            int numCentroids = nh.getNumCentroids();
+            int[] nodeIndex = nh.getNodeIndex();
+            int[] indexNode = nh.getIndexNode();
+
+            // create an optimal strategy object for this highway and transit network
+            OptimalStrategy os = new OptimalStrategy( nh, identifier );
+            os.setTransitFareTables ( intracityFareTable, fareZones ); 
+            if ( privateLinkFlows )
+                os.usePrivateLinkFlows();
+
+            double[] tripTableColumn = null;
+            if ( ! SKIM_ONLY )
+                tripTableColumn = new double[tripTable[0].length];
+
+            int dest;
+            while ( ( dest = nextDest.getAndIncrement() ) < numCentroids ) {
+
+                if ( TEST_DEST >= 0 && dest != nodeIndex[TEST_DEST] ) {
+                    routeBoardings.add( dest, null );
+                    continue;
+                }
+
+
+                if ( dest % 100 == 0 ) {
+                    if ( SKIM_ONLY )
+                        logger.info( String.format( "building %s %s %s optimal strategy for destination index %d for writing skim tables.", assignmentPeriod, accessMode, routeType, dest) );
+                    else
+                        logger.info( String.format( "building %s %s %s optimal strategy for destination index %d for loading network and writing skim tables.", assignmentPeriod, accessMode, routeType, dest) );
+                }
+
+
+                // prepare trip array to assign if SKIM_ONLY == false
+                double tripSum = 0.0;
+                if ( ! SKIM_ONLY ) {
+
+                    for (int orig=0; orig < tripTable.length; orig++) {
+
+                        // don't assign intra-zonal trips on network.
+                        if ( orig == dest ) {
+                            tripTableColumn[orig] = 0.0; 
+                        }
+                        else {
+                            tripTableColumn[orig] = tripTable[orig][dest]; 
+                            tripSum += tripTable[orig][dest];
+                        }
+
+                    }
+
+                }
+
+
+                // build optimal strategy for this network
+                os.buildStrategy( dest, accessMode );
+
+
+                // load trips onto strategy unless SKIM_ONLY == true
+                double[] loadColumn = null;
+                double[] routeBoardingsToDest = null;
+                if ( ! SKIM_ONLY ) {
+
+                    if ( tripSum > 0 ) {
+                        loadColumn = tripTableColumn;
+                        routeBoardingsToDest = new double[maxRoutes];
+                    }
+
+                }
+                else if ( TEST_ORIG >= 0 && TEST_DEST >= 0 && dest == nodeIndex[TEST_DEST] ) {
+
+                    os.getOptimalStrategyLinks ( nodeIndex[TEST_ORIG] );
+                    os.testLoadOptimalStrategyDest();
+
+                }
+
+
+                // load the strategy and calculate its skims
+                double[][] odSkimValues = os.loadAndSkimOptimalStrategyDest( loadColumn, routeBoardingsToDest );
+
+                routeBoardings.add( dest, routeBoardingsToDest );
+
+
+                // save skim table values in column dest of the float skim arrays, converted from network centroid index to indexZone mapping.
+                // each task writes only the columns of its own destinations.
+                int exCol = indexNode[dest];
+                if ( zonesToSkim[exCol] == 1 ) {
+                    int inCol = externalToAlphaInternal[exCol];
+                    for (int orig=0; orig < numCentroids; orig++) { 
+                        int exRow = indexNode[orig];
+                        if ( zonesToSkim[exRow] == 1 ) {
+                            int inRow = externalToAlphaInternal[exRow];
+                            for (int k=0; k < OptimalStrategy.NUM_SKIMS; k++)
+                                zeroBasedFloatArrays[k][inRow][inCol] = (float)odSkimValues[k][orig];
+                        }
+                    }
+                }
+
+            }
+
+            return os;
+
+        }
+
+    }
+
+
+
+    /**
+     * Sums the route boardings to each destination in destination order, whatever order the
+     * destination tasks finish them in, so the totals are the same for any number of threads.
+     * Boardings to a destination are held only until those to every lower numbered destination
+     * have been added.
+     */
+    private class RouteBoardingsAccumulator {
+
+        private double[] routeBoardings;
+        private double[][] pendingBoardings;
+        private boolean[] pending;
+        private int nextDest;
+
+        private RouteBoardingsAccumulator ( int numCentroids, int maxRoutes ) {
+            routeBoardings = new double[maxRoutes];
+            pendingBoardings = new double[numCentroids][];
+            pending = new boolean[numCentroids];
+            nextDest = 0;
+        }
+
+        // routeBoardingsToDest is null if no trips to dest were loaded.
+        private synchronized void add ( int dest, double[] routeBoardingsToDest ) {
+
+            pendingBoardings[dest] = routeBoardingsToDest;
+            pending[dest] = true;
+
+            while ( nextDest < pending.length && pending[nextDest] ) {
+                double[] boardings = pendingBoardings[nextDest];
+                if ( boardings != null ) {
+                    for (int r=0; r < routeBoardings.length; r++)
+                        routeBoardings[r] += boardings[r];
+                }
+                pendingBoardings[nextDest] = null;
+                nextDest++;
+            }
+
+        }
+
+        private synchronized double[] getRouteBoardings() {
+            return routeBoardings;
+        }
+
+    }
+
+
+
     public class AssignSkimTask implements Callable<String> {
         
         private Logger logger = Logger.getLogger(AssignSkimTask.class);
@@ -0,0 +1,435 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A single link function expression, e.g. a volume delay function, parsed once into a tree of
+ * arithmetic nodes that read link attributes directly from double[] columns.
+ *
+ * The expression may be given with or without its "name =" prefix.  Supported are numbers, link
+ * attribute names, the operators + - * / ^ (or **), the comparisons < <= > >= == != with && and ||,
+ * unary minus and !, parentheses, and the functions exp, log (or ln), log10, sqrt, abs, floor,
+ * ceil, min, max, pow and if(condition, valueIfTrue, valueIfFalse).  Comparisons evaluate to 1.0
+ * or 0.0.  Anything else makes compile() throw an IllegalArgumentException, so callers can fall back
+ * to interpreting the expression.
+ *
+ * Each distinct attribute name is given a slot in the variables list passed to compile(), which
+ * may be shared by several expressions; evaluate() then reads attribute slot i from columns[i].
+ *
+ * The grammar follows the common expression syntax but is not the LinkCalculator's own parser, so
+ * VdfKernelSet.validate() checks compiled expressions against a LinkCalculator before they are used.
+ *
+ */
+public class VdfKernel implements Serializable {
+
+    private String expression;
+    private Node root;
+    private boolean[] usesSlot;
+
+
+    private VdfKernel ( String expression, Node root, boolean[] usesSlot ) {
+        this.expression = expression;
+        this.root = root;
+        this.usesSlot = usesSlot;
+    }
+
+
+    /**
+     * Parse expression, adding any attribute names not already in variables to its end.
+     */
+    public static VdfKernel compile ( String expression, List<String> variables ) {
+
+        String body = expression.trim();
+
+        // drop a leading "fd1 =" style function name, but not a leading comparison.
+        int eq = body.indexOf('=');
+        if ( eq > 0 && (eq+1 == body.length() || body.charAt(eq+1) != '=') && body.substring(0, eq).trim().matches("[A-Za-z_][A-Za-z_0-9]*") )
+            body = body.substring(eq+1);
+
+        Parser parser = new Parser( body, variables );
+        Node root = parser.parseExpression();
+        if ( parser.token != Parser.END )
+            throw new IllegalArgumentException( "unexpected '" + parser.tokenText + "' in link function expression: " + expression );
+
+        boolean[] usesSlot = new boolean[variables.size()];
+        for ( int slot : parser.slots )
+            usesSlot[slot] = true;
+
+        return new VdfKernel( expression, root, usesSlot );
+
+    }
+
+
+    public String getExpression() {
+        return expression;
+    }
+
+
+    /**
+     * Return true if the expression reads the attribute in variables slot.
+     */
+    public boolean usesVariable ( int slot ) {
+        return slot < usesSlot.length && usesSlot[slot];
+    }
+
+
+    /**
+     * Evaluate the expression for link, reading attribute slot i from columns[i][link].
+     */
+    public double evaluate ( double[][] columns, int link ) {
+        return root.eval( columns, link );
+    }
+
+
+
+    private static abstract class Node implements Serializable {
+        abstract double eval ( double[][] c, int k );
+        boolean isConstant() { return false; }
+    }
+
+    private static final class Constant extends Node {
+        final double value;
+        Constant ( double value ) { this.value = value; }
+        double eval ( double[][] c, int k ) { return value; }
+        boolean isConstant() { return true; }
+    }
+
+    private static final class Variable extends Node {
+        final int slot;
+        Variable ( int slot ) { this.slot = slot; }
+        double eval ( double[][] c, int k ) { return c[slot][k]; }
+    }
+
+    private static final class Unary extends Node {
+        final char op;
+        final Node a;
+        Unary ( char op, Node a ) { this.op = op; this.a = a; }
+        double eval ( double[][] c, int k ) {
+            double x = a.eval( c, k );
+            switch ( op ) {
+                case '-': return -x;
+                case '!': return x == 0.0 ? 1.0 : 0.0;
+                case 'e': return Math.exp( x );
+                case 'l': return Math.log( x );
+                case 'L': return Math.log10( x );
+                case 's': return Math.sqrt( x );
+                case 'a': return Math.abs( x );
+                case 'f': return Math.floor( x );
+                default:  return Math.ceil( x );
+            }
+        }
+    }
+
+    private static final class Binary extends Node {
+        final char op;
+        final Node a;
+        final Node b;
+        Binary ( char op, Node a, Node b ) { this.op = op; this.a = a; this.b = b; }
+        double eval ( double[][] c, int k ) {
+            double x = a.eval( c, k );
+            switch ( op ) {
+                case '&': return x != 0.0 && b.eval( c, k ) != 0.0 ? 1.0 : 0.0;
+                case '|': return x != 0.0 || b.eval( c, k ) != 0.0 ? 1.0 : 0.0;
+            }
+            double y = b.eval( c, k );
+            switch ( op ) {
+                case '+': return x + y;
+                case '-': return x - y;
+                case '*': return x * y;
+                case '/': return x / y;
+                case '^': return Math.pow( x, y );
+                case '<': return x < y ? 1.0 : 0.0;
+                case 'l': return x <= y ? 1.0 : 0.0;
+                case '>': return x > y ? 1.0 : 0.0;
+                case 'g': return x >= y ? 1.0 : 0.0;
+                case '=': return x == y ? 1.0 : 0.0;
+                case '!': return x != y ? 1.0 : 0.0;
+                case 'm': return Math.min( x, y );
+                default:  return Math.max( x, y );
+            }
+        }
+    }
+
+    private static final class Conditional extends Node {
+        final Node test;
+        final Node a;
+        final Node b;
+        Conditional ( Node test, Node a, Node b ) { this.test = test; this.a = a; this.b = b; }
+        double eval ( double[][] c, int k ) {
+            return test.eval( c, k ) != 0.0 ? a.eval( c, k ) : b.eval( c, k );
+        }
+    }
+
+
+
+    /**
+     * Recursive descent parser; each level returns a node, folding subtrees with constant operands.
+     */
+    private static final class Parser {
+
+        static final int END = 0;
+        static final int NUMBER = 1;
+        static final int NAME = 2;
+        static final int OPERATOR = 3;
+
+        String text;
+        int pos;
+        List<String> variables;
+        List<Integer> slots = new ArrayList<Integer>();
+
+        int token;
+        String tokenText;
+        double tokenValue;
+
+
+        Parser ( String text, List<String> variables ) {
+            this.text = text;
+            this.variables = variables;
+            next();
+        }
+
+
+        void next() {
+
+            while ( pos < text.length() && Character.isWhitespace( text.charAt(pos) ) )
+                pos++;
+
+            if ( pos == text.length() ) {
+                token = END;
+                tokenText = "end of expression";
+                return;
+            }
+
+            int start = pos;
+            char ch = text.charAt(pos);
+
+            if ( Character.isDigit(ch) || (ch == '.' && pos+1 < text.length() && Character.isDigit(text.charAt(pos+1))) ) {
+                while ( pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.') )
+                    pos++;
+                if ( pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E') ) {
+                    int p = pos+1;
+                    if ( p < text.length() && (text.charAt(p) == '+' || text.charAt(p) == '-') )
+                        p++;
+                    if ( p < text.length() && Character.isDigit(text.charAt(p)) ) {
+                        pos = p;
+                        while ( pos < text.length() && Character.isDigit(text.charAt(pos)) )
+                            pos++;
+                    }
+                }
+                tokenText = text.substring( start, pos );
+                try {
+                    tokenValue = Double.parseDouble( tokenText );
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException( "invalid number '" + tokenText + "' in link function expression: " + text );
+                }
+                token = NUMBER;
+            }
+            else if ( Character.isLetter(ch) || ch == '_' ) {
+                while ( pos < text.length() && (Character.isLetterOrDigit(text.charAt(pos)) || text.charAt(pos) == '_') )
+                    pos++;
+                tokenText = text.substring( start, pos );
+                token = NAME;
+            }
+            else {
+                String two = pos+1 < text.length() ? text.substring( pos, pos+2 ) : "";
+                if ( two.equals("**") || two.equals("<=") || two.equals(">=") || two.equals("==") || two.equals("!=") || two.equals("&&") || two.equals("||") )
+                    pos += 2;
+                else if ( "+-*/^()<>!,".indexOf(ch) >= 0 )
+                    pos++;
+                else
+                    throw new IllegalArgumentException( "unsupported character '" + ch + "' in link function expression: " + text );
+                tokenText = text.substring( start, pos );
+                token = OPERATOR;
+            }
+
+        }
+
+
+        boolean accept ( String op ) {
+            if ( token == OPERATOR && tokenText.equals(op) ) {
+                next();
+                return true;
+            }
+            return false;
+        }
+
+
+        void expect ( String op ) {
+            if ( ! accept(op) )
+                throw new IllegalArgumentException( "expected '" + op + "' but found '" + tokenText + "' in link function expression: " + text );
+        }
+
+
+        Node parseExpression() {
+            Node a = parseAnd();
+            while ( accept("||") )
+                a = fold( new Binary( '|', a, parseAnd() ) );
+            return a;
+        }
+
+
+        Node parseAnd() {
+            Node a = parseComparison();
+            while ( accept("&&") )
+                a = fold( new Binary( '&', a, parseComparison() ) );
+            return a;
+        }
+
+
+        Node parseComparison() {
+            Node a = parseSum();
+            while ( true ) {
+                if ( accept("<") ) a = fold( new Binary( '<', a, parseSum() ) );
+                else if ( accept("<=") ) a = fold( new Binary( 'l', a, parseSum() ) );
+                else if ( accept(">") ) a = fold( new Binary( '>', a, parseSum() ) );
+                else if ( accept(">=") ) a = fold( new Binary( 'g', a, parseSum() ) );
+                else if ( accept("==") ) a = fold( new Binary( '=', a, parseSum() ) );
+                else if ( accept("!=") ) a = fold( new Binary( '!', a, parseSum() ) );
+                else return a;
+            }
+        }
+
+
+        Node parseSum() {
+            Node a = parseProduct();
+            while ( true ) {
+                if ( accept("+") ) a = fold( new Binary( '+', a, parseProduct() ) );
+                else if ( accept("-") ) a = fold( new Binary( '-', a, parseProduct() ) );
+                else return a;
+            }
+        }
+
+
+        Node parseProduct() {
+            Node a = parseUnary();
+            while ( true ) {
+                if ( accept("*") ) a = fold( new Binary( '*', a, parseUnary() ) );
+                else if ( accept("/") ) a = fold( new Binary( '/', a, parseUnary() ) );
+                else return a;
+            }
+        }
+
+
+        // unary minus binds more loosely than a power, so -x^2 is -(x^2).
+        Node parseUnary() {
+            if ( accept("-") )
+                return fold( new Unary( '-', parseUnary() ) );
+            if ( accept("+") )
+                return parseUnary();
+            if ( accept("!") )
+                return fold( new Unary( '!', parseUnary() ) );
+            return parsePower();
+        }
+
+
+        // powers are right associative, so a^b^c is a^(b^c).
+        Node parsePower() {
+            Node a = parsePrimary();
+            if ( accept("^") || accept("**") )
+                return fold( new Binary( '^', a, parseUnary() ) );
+            return a;
+        }
+
+
+        Node parsePrimary() {
+
+            if ( token == NUMBER ) {
+                double value = tokenValue;
+                next();
+                return new Constant( value );
+            }
+
+            if ( accept("(") ) {
+                Node a = parseExpression();
+                expect(")");
+                return a;
+            }
+
+            if ( token != NAME )
+                throw new IllegalArgumentException( "unexpected '" + tokenText + "' in link function expression: " + text );
+
+            String name = tokenText;
+            next();
+
+            if ( ! accept("(") ) {
+                int slot = variables.indexOf( name );
+                if ( slot < 0 ) {
+                    slot = variables.size();
+                    variables.add( name );
+                }
+                slots.add( slot );
+                return new Variable( slot );
+            }
+
+            List<Node> args = new ArrayList<Node>();
+            if ( ! accept(")") ) {
+                do {
+                    args.add( parseExpression() );
+                } while ( accept(",") );
+                expect(")");
+            }
+
+            String f = name.toLowerCase();
+            if ( args.size() == 1 ) {
+                if ( f.equals("exp") ) return fold( new Unary( 'e', args.get(0) ) );
+                if ( f.equals("log") || f.equals("ln") ) return fold( new Unary( 'l', args.get(0) ) );
+                if ( f.equals("log10") ) return fold( new Unary( 'L', args.get(0) ) );
+                if ( f.equals("sqrt") ) return fold( new Unary( 's', args.get(0) ) );
+                if ( f.equals("abs") ) return fold( new Unary( 'a', args.get(0) ) );
+                if ( f.equals("floor") ) return fold( new Unary( 'f', args.get(0) ) );
+                if ( f.equals("ceil") ) return fold( new Unary( 'c', args.get(0) ) );
+            }
+            if ( args.size() == 2 && f.equals("pow") )
+                return fold( new Binary( '^', args.get(0), args.get(1) ) );
+            if ( args.size() == 3 && f.equals("if") )
+                return fold( new Conditional( args.get(0), args.get(1), args.get(2) ) );
+            if ( args.size() >= 2 && (f.equals("min") || f.equals("max")) ) {
+                Node a = args.get(0);
+                for (int i=1; i < args.size(); i++)
+                    a = fold( new Binary( f.equals("min") ? 'm' : 'M', a, args.get(i) ) );
+                return a;
+            }
+
+            throw new IllegalArgumentException( "unsupported function " + name + " with " + args.size() + " arguments in link function expression: " + text );
+
+        }
+
+
+        // replace a node whose operands are all constants by its value.
+        Node fold ( Node node ) {
+
+            boolean constant;
+            if ( node instanceof Unary )
+                constant = ((Unary)node).a.isConstant();
+            else if ( node instanceof Binary )
+                constant = ((Binary)node).a.isConstant() && ((Binary)node).b.isConstant();
+            else
+                constant = ((Conditional)node).test.isConstant() && ((Conditional)node).a.isConstant() && ((Conditional)node).b.isConstant();
+
+            return constant ? new Constant( node.eval( null, 0 ) ) : node;
+
+        }
+
+    }
+
+}
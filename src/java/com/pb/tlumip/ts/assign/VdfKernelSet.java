@@ -0,0 +1,341 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import com.pb.common.calculator.LinkCalculator;
+import com.pb.tlumip.ts.TsThreads;
+
+
+/**
+ * The set of link functions of one type, e.g. the "fd" volume delay functions, compiled into
+ * VdfKernel objects so they can be evaluated for every link without interpreting the function
+ * strings again in each Frank-Wolfe iteration.  As with LinkCalculator, the function used for a
+ * link is selected by the value of the link's selection column, e.g. "vdf".
+ *
+ * A function is left to a LinkCalculator for the same function strings if its string cannot be
+ * compiled, if the link table does not have an attribute it refers to, or if validate() finds
+ * that it gives a different value than the LinkCalculator for any link.  solve(validLinks, lc)
+ * then evaluates the links selecting those functions with the LinkCalculator and the others with
+ * the compiled kernels.
+ *
+ * bind() takes the attribute arrays from a LinkAttributeStore without copying them.  Since the
+ * store replaces an array whenever its attribute is set, bind() must be called again before
+ * evaluating the functions after a change; it does nothing if the store has not changed.
+ *
+ */
+public class VdfKernelSet implements Serializable {
+
+    protected static transient Logger logger = Logger.getLogger(VdfKernelSet.class);
+
+    // below this many valid links, solve() evaluates the kernels on the calling thread.
+    public static final int MIN_PARALLEL_LINKS = 20000;
+
+    // largest difference from the LinkCalculator accepted by validate(), relative to values of magnitude 1 or more.
+    public static final double VALIDATION_TOLERANCE = 1.0e-5;
+
+    // number of times validate() checks the kernels, each with link attributes changed since the last check,
+    // so they are compared with free flow volumes at setup and with loaded volumes in the first iteration.
+    public static final int VALIDATION_PASSES = 2;
+
+    // validate() also checks each function on this many valid links that do not select it, e.g. for transit functions.
+    public static final int VALIDATION_SAMPLE_LINKS = 1000;
+
+    private int numberOfThreads = java.lang.Runtime.getRuntime().availableProcessors();
+
+    private String selectionColumn;
+    private VdfKernel[] kernels;
+    private String[] variableNames;
+
+    private transient double[][] columns;
+    private transient int[] selection;
+    private transient LinkAttributeStore boundStore;
+    private transient int boundVersion;
+    private transient int validations;
+    private transient int validatedVersion = -1;
+
+
+    public VdfKernelSet ( String[] functionStrings, String selectionColumn ) {
+
+        this.selectionColumn = selectionColumn;
+
+        kernels = new VdfKernel[functionStrings.length];
+        ArrayList<String> variables = new ArrayList<String>();
+
+        for (int i=0; i < functionStrings.length; i++) {
+            if ( functionStrings[i] == null || functionStrings[i].trim().length() == 0 )
+                continue;
+            try {
+                kernels[i] = VdfKernel.compile( functionStrings[i], variables );
+            }
+            catch (IllegalArgumentException e) {
+                logger.warn ( "link function " + i + " will be interpreted, it could not be compiled: " + e.getMessage() );
+            }
+        }
+
+        variableNames = variables.toArray( new String[variables.size()] );
+
+    }
+
+
+    /**
+     * Return true if any of the functions is compiled.
+     */
+    public boolean isCompiled() {
+        for (int i=0; i < kernels.length; i++) {
+            if ( kernels[i] != null )
+                return true;
+        }
+        return false;
+    }
+
+
+    public String[] getVariableNames() {
+        return variableNames;
+    }
+
+
+    public void setNumberOfThreads ( int numberOfThreads ) {
+        this.numberOfThreads = numberOfThreads;
+    }
+
+
+    /**
+     * Take the arrays of the attributes used by the functions, and of the selection column, from
+     * linkAttributes.  Functions using an attribute the store does not have are left to the
+     * LinkCalculator.  Returns false if no function is left compiled.
+     */
+    public boolean bind ( LinkAttributeStore linkAttributes ) {
+
+        if ( ! isCompiled() )
+            return false;
+
+        if ( boundStore == linkAttributes && boundVersion == linkAttributes.getVersion() )
+            return true;
+
+        double[][] newColumns = new double[variableNames.length][];
+        for (int i=0; i < variableNames.length; i++) {
+            if ( linkAttributes.hasColumn( variableNames[i] ) ) {
+                newColumns[i] = linkAttributes.getDouble( variableNames[i] );
+            }
+            else {
+                for (int j=0; j < kernels.length; j++) {
+                    if ( kernels[j] != null && kernels[j].usesVariable( i ) ) {
+                        logger.warn ( "link function " + j + " will be interpreted, link table has no " + variableNames[i] + " attribute." );
+                        kernels[j] = null;
+                    }
+                }
+            }
+        }
+
+        if ( ! isCompiled() )
+            return false;
+
+        columns = newColumns;
+        selection = linkAttributes.hasColumn( selectionColumn ) ? linkAttributes.getInt( selectionColumn ) : null;
+        boundStore = linkAttributes;
+        boundVersion = linkAttributes.getVersion();
+
+        return true;
+
+    }
+
+
+    /**
+     * Return true if every valid link selects a function that was compiled.  When this is false,
+     * the LinkCalculator reports the undefined function for the offending link.
+     */
+    public boolean coversLinks ( boolean[] validLinks ) {
+
+        if ( columns == null || selection == null )
+            return false;
+
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] && (selection[k] < 0 || selection[k] >= kernels.length || kernels[selection[k]] == null) )
+                return false;
+        }
+
+        return true;
+
+    }
+
+
+    /**
+     * Return true if validate() has not yet checked the kernels VALIDATION_PASSES times, and the
+     * link attributes have changed since it last did.
+     */
+    public boolean needsValidation () {
+        return boundStore != null && validations < VALIDATION_PASSES && validatedVersion != boundVersion;
+    }
+
+
+    /**
+     * Compare each compiled function with lc, which interprets the same function strings, on the
+     * valid links that select it and on a sample of the other valid links, using the attributes
+     * bound by the last bind().  A function whose value differs by more than VALIDATION_TOLERANCE
+     * on any of these links is left to lc from then on.
+     */
+    public synchronized void validate ( LinkCalculator lc, boolean[] validLinks ) {
+
+        // the calculator reads the link table, so bring it up to date first.
+        boundStore.getTable();
+
+        int numValid = 0;
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] )
+                numValid++;
+        }
+        int sampleStride = Math.max( 1, numValid/VALIDATION_SAMPLE_LINKS );
+
+        for (int i=0; i < kernels.length; i++) {
+
+            if ( kernels[i] == null )
+                continue;
+
+            int validCount = 0;
+            for (int k=0; k < validLinks.length; k++) {
+
+                if ( ! validLinks[k] )
+                    continue;
+
+                boolean selected = selection != null && selection[k] == i;
+                if ( ! selected && validCount++ % sampleStride != 0 )
+                    continue;
+
+                double expected = lc.solve( k, i );
+                double actual = kernels[i].evaluate( columns, k );
+                if ( ! agrees( expected, actual ) ) {
+                    logger.warn ( "link function " + i + " will be interpreted, its compiled value " + actual + " for link " + k + " differs from the interpreted value " + expected + ": " + kernels[i].getExpression() );
+                    kernels[i] = null;
+                    break;
+                }
+
+            }
+
+        }
+
+        validations++;
+        validatedVersion = boundVersion;
+
+    }
+
+
+    private static boolean agrees ( double expected, double actual ) {
+        if ( Double.isNaN( expected ) || Double.isNaN( actual ) )
+            return Double.isNaN( expected ) && Double.isNaN( actual );
+        if ( Double.isInfinite( expected ) || Double.isInfinite( actual ) )
+            return expected == actual;
+        return Math.abs( expected - actual ) <= VALIDATION_TOLERANCE*Math.max( 1.0, Math.abs( expected ) );
+    }
+
+
+    /**
+     * Evaluate the selected function for every valid link, with the compiled kernel where there
+     * is one and otherwise with lc, which interprets the same function strings; entries for other
+     * links are 0.  bind() must have returned true.
+     */
+    public double[] solve ( boolean[] validLinks, LinkCalculator lc ) {
+
+        if ( coversLinks( validLinks ) )
+            return solve( validLinks );
+
+        // links selecting a function that is not compiled, or no function, are left to the calculator,
+        // which also reports any undefined function.
+        boolean[] interpretedLinks = new boolean[validLinks.length];
+        boolean[] compiledLinks = new boolean[validLinks.length];
+        for (int k=0; k < validLinks.length; k++) {
+            if ( ! validLinks[k] )
+                continue;
+            if ( selection != null && selection[k] >= 0 && selection[k] < kernels.length && kernels[selection[k]] != null )
+                compiledLinks[k] = true;
+            else
+                interpretedLinks[k] = true;
+        }
+
+        double[] results = solve( compiledLinks );
+
+        boundStore.getTable();
+        double[] interpreted = lc.solve( interpretedLinks );
+        for (int k=0; k < validLinks.length; k++) {
+            if ( interpretedLinks[k] )
+                results[k] = interpreted[k];
+        }
+
+        return results;
+
+    }
+
+
+    /**
+     * Evaluate the selected function for every valid link; entries for other links are 0.
+     * bind() must have been called and coversLinks() must be true.
+     */
+    public double[] solve ( final boolean[] validLinks ) {
+
+        final double[] results = new double[validLinks.length];
+
+        if ( numberOfThreads == 1 || validLinks.length < MIN_PARALLEL_LINKS ) {
+            solveRange( validLinks, 0, validLinks.length, results );
+            return results;
+        }
+
+        // each pool thread evaluates the functions for its own range of links.
+        try {
+            TsThreads.forEachLinkRange( TsThreads.getLinkPool(), validLinks.length, numberOfThreads, new TsThreads.LinkRangeTask() {
+                public void run( int startLink, int endLink ) {
+                    solveRange( validLinks, startLink, endLink, results );
+                }
+            } );
+        }
+        catch (RuntimeException e) {
+            logger.error ( "exception evaluating compiled link functions.", e );
+            throw e;
+        }
+
+        return results;
+
+    }
+
+
+    private void solveRange ( boolean[] validLinks, int startLink, int endLink, double[] results ) {
+        for (int k=startLink; k < endLink; k++) {
+            if ( validLinks[k] )
+                results[k] = kernels[selection[k]].evaluate( columns, k );
+        }
+    }
+
+
+    /**
+     * Return true if function index was compiled and can be evaluated by solve(link, index).
+     */
+    public boolean hasFunction ( int index ) {
+        return columns != null && index >= 0 && index < kernels.length && kernels[index] != null;
+    }
+
+
+    /**
+     * Evaluate function index, rather than the one selected by the link's selection column, for link.
+     */
+    public double solve ( int link, int index ) {
+        return kernels[index].evaluate( columns, link );
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign.tests;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import com.pb.tlumip.ts.NetworkArrayClient;
+import com.pb.tlumip.ts.NetworkArrayServer;
+
+/**
+ * Sends link arrays between a NetworkArrayClient and a NetworkArrayServer in the same process,
+ * with a handler standing in for the NetworkHandler.
+ *
+ */
+public class NetworkArrayTransportTest extends TestCase {
+
+    static final int NUM_LINKS = 100000;
+
+    private NetworkArrayServer server;
+    private NetworkArrayClient client;
+    private LinkArrays handler;
+
+
+    /**
+     * Public, with public methods, so the server can call them by reflection.
+     */
+    public static class LinkArrays {
+
+        double[] volau;
+        double[][] flow;
+
+        public double[] getCongestedTime() {
+            double[] time = new double[NUM_LINKS];
+            for (int k=0; k < NUM_LINKS; k++)
+                time[k] = 0.1 + k/7.0;
+            return time;
+        }
+
+        public int[] getIa() {
+            int[] ia = new int[NUM_LINKS];
+            for (int k=0; k < NUM_LINKS; k++)
+                ia[k] = NUM_LINKS - k;
+            return ia;
+        }
+
+        public boolean[] getValidLinksForClass( int userClass ) {
+            boolean[] valid = new boolean[NUM_LINKS];
+            for (int k=0; k < NUM_LINKS; k++)
+                valid[k] = ( k % (userClass + 2) != 0 );
+            return valid;
+        }
+
+        public int[][] getTurnPenaltyIndices() {
+            return new int[][] { { 3, 1 }, null, {} };
+        }
+
+        public float[] getAuxLinkPces( String identifier ) {
+            return new float[] { identifier.length(), -1.5f };
+        }
+
+        public int setVolau( double[] volau ) {
+            this.volau = volau;
+            return 1;
+        }
+
+        public int setFlows( double[][] flow ) {
+            this.flow = flow;
+            return flow.length;
+        }
+
+        public int getLinkCount() {
+            throw new IllegalStateException( "no network" );
+        }
+
+    }
+
+
+    public void setUp() throws Exception {
+        handler = new LinkArrays();
+        server = new NetworkArrayServer( handler, 0 );
+        server.start();
+        client = new NetworkArrayClient( "localhost", server.getPort() );
+    }
+
+
+    public void tearDown() {
+        client.close();
+        server.stop();
+    }
+
+
+    public void testGetArrays() throws Exception {
+
+        assertTrue( Arrays.equals( handler.getCongestedTime(), (double[])client.execute( "getCongestedTime", new Object[0] ) ) );
+        assertTrue( Arrays.equals( handler.getIa(), (int[])client.execute( "getIa", new Object[0] ) ) );
+        assertTrue( Arrays.equals( handler.getValidLinksForClass( 3 ), (boolean[])client.execute( "getValidLinksForClass", new Object[] { 3 } ) ) );
+        assertTrue( Arrays.equals( new float[] { 4.0f, -1.5f }, (float[])client.execute( "getAuxLinkPces", new Object[] { "hwy1" } ) ) );
+
+        int[][] indices = (int[][])client.execute( "getTurnPenaltyIndices", new Object[0] );
+        assertEquals( 3, indices.length );
+        assertTrue( Arrays.equals( new int[] { 3, 1 }, indices[0] ) );
+        assertNull( indices[1] );
+        assertEquals( 0, indices[2].length );
+
+    }
+
+
+    public void testSetArrays() throws Exception {
+
+        double[] volau = new double[NUM_LINKS];
+        for (int k=0; k < NUM_LINKS; k++)
+            volau[k] = k*1.25 - 17.0;
+        assertEquals( 1, client.execute( "setVolau", new Object[] { volau } ) );
+        assertTrue( Arrays.equals( volau, handler.volau ) );
+
+        double[][] flow = { { 1.0, 2.0 }, { Double.MAX_VALUE, Double.MIN_VALUE } };
+        assertEquals( 2, client.execute( "setFlows", new Object[] { flow } ) );
+        assertTrue( Arrays.equals( flow[1], handler.flow[1] ) );
+
+    }
+
+
+    public void testErrorKeepsConnection() throws Exception {
+
+        try {
+            client.execute( "getLinkCount", new Object[0] );
+            fail( "exception in handler method was not reported." );
+        }
+        catch (RuntimeException e) {
+            assertTrue( e.getMessage().indexOf( "no network" ) >= 0 );
+        }
+
+        try {
+            client.execute( "getNoSuchArray", new Object[0] );
+            fail( "missing handler method was not reported." );
+        }
+        catch (RuntimeException e) {
+        }
+
+        assertEquals( NUM_LINKS, ((int[])client.execute( "getIa", new Object[0] )).length );
+
+    }
+
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(NetworkArrayTransportTest.class));
+    }
+
+}
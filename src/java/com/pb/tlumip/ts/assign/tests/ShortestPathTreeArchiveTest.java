@@ -0,0 +1,119 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign.tests;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import com.pb.tlumip.ts.ShortestPathTreeArchive;
+
+/**
+ * Writes shortest path trees to a ShortestPathTreeArchive and reads them back.
+ *
+ */
+public class ShortestPathTreeArchiveTest extends TestCase {
+
+    static final int NUM_NODES = 5000;
+    static final int NUM_ORIGINS = 40;
+
+    private File file;
+
+
+    public void setUp() throws Exception {
+        file = File.createTempFile( "savedTrees", ".bin" );
+    }
+
+
+    public void tearDown() {
+        file.delete();
+    }
+
+
+    public void testRoundTrip() throws Exception {
+
+        char[] userClasses = { 'a', 'd' };
+        int[][][] trees = new int[userClasses.length][NUM_ORIGINS][];
+
+        Random random = new Random( 17 );
+        for (int m=0; m < userClasses.length; m++) {
+            for (int i=0; i < NUM_ORIGINS; i++) {
+                // leave some origins without trees, as for origins with no demand.
+                if ( i % 7 == 3 )
+                    continue;
+                trees[m][i] = new int[NUM_NODES + 1];
+                for (int j=0; j <= NUM_NODES; j++)
+                    trees[m][i][j] = ( random.nextInt( 5 ) == 0 ) ? -1 : random.nextInt( 4*NUM_NODES );
+            }
+        }
+        trees[1][0][1] = Integer.MAX_VALUE;
+        trees[1][0][2] = Integer.MIN_VALUE;
+
+        ShortestPathTreeArchive.write( file.getPath(), 4, userClasses, NUM_NODES + 1, trees );
+
+        ShortestPathTreeArchive archive = new ShortestPathTreeArchive( file.getPath() );
+        assertEquals( 4, archive.getIteration() );
+        assertEquals( 2, archive.getNumUserClasses() );
+        assertEquals( 'd', archive.getUserClass( 1 ) );
+        assertEquals( NUM_ORIGINS, archive.getNumOrigins() );
+        assertEquals( NUM_NODES + 1, archive.getTreeLength() );
+
+        // read in reverse order to check the index.
+        int[] tree = null;
+        for (int m=userClasses.length-1; m >= 0; m--) {
+            for (int i=NUM_ORIGINS-1; i >= 0; i--) {
+                assertEquals( trees[m][i] != null, archive.hasTree( m, i ) );
+                if ( trees[m][i] == null ) {
+                    assertNull( archive.getTree( m, i, tree ) );
+                }
+                else {
+                    tree = archive.getTree( m, i, tree );
+                    assertTrue( "user class " + m + ", origin " + i, Arrays.equals( trees[m][i], tree ) );
+                }
+            }
+        }
+
+    }
+
+
+    public void testNotAnArchive() throws Exception {
+
+        FileWriter writer = new FileWriter( file );
+        writer.write( "predecessorLinkId Arrays by origin for: iteration=0" );
+        writer.close();
+
+        try {
+            new ShortestPathTreeArchive( file.getPath() );
+            fail( "text file was read as an archive." );
+        }
+        catch (IOException e) {
+        }
+
+    }
+
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(ShortestPathTreeArchiveTest.class));
+    }
+
+}
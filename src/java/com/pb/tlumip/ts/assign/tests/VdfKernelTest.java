@@ -0,0 +1,277 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.assign.tests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import com.pb.common.calculator.LinkCalculator;
+import com.pb.common.datafile.TableDataSet;
+import com.pb.tlumip.ts.assign.LinkAttributeStore;
+import com.pb.tlumip.ts.assign.VdfKernel;
+import com.pb.tlumip.ts.assign.VdfKernelSet;
+
+/**
+ * Checks that the compiled link functions used by Network.applyVdfs() give the same link
+ * times as the LinkCalculator interpreting the same function strings.
+ *
+ */
+public class VdfKernelTest extends TestCase {
+
+    static final double TOLERANCE = 1.0e-9;
+
+    static final String[] FUNCTION_STRINGS = {
+        "fd0 = length * 60 / ul1",
+        "fd1 = length * 60 / ul1 * (1 + 0.15 * (volau / capacity) ^ 4)",
+        "fd2 = ul3 + 0.5 * length * 60 / ul1 * (volau + volad) / capacity",
+        "fd3 = ul3"
+    };
+
+    // volume delay and integral functions in the form of the TS fd function files: BPR and conical
+    // functions of the auto and truck volumes, with constants, unary minus and built in functions.
+    static final String[] TS_FUNCTION_STRINGS = {
+        "fd0 = length * 60 / ul1",
+        "fd1 = length * 60 / ul1 * (1 + 0.15 * ((volau + volad) / capacity) ^ 4)",
+        "fd2 = length * 60 / ul1 * (2 + sqrt(16 * (1 - (volau + volad) / capacity) ^ 2 + 1.1736) - 4 * (1 - (volau + volad) / capacity) - 1.0833)",
+        "fd3 = length * 60 / ul1 * ((volau + volad) + 0.03 * (volau + volad) ^ 5 / capacity ^ 4)",
+        "fd4 = max(ul3, length * 60 / ul1) + min(2, ln(1 + volau / capacity)) - -ul3 * exp(-volad / capacity)"
+    };
+
+    private TableDataSet linkTable;
+    private boolean[] validLinks;
+
+
+    public void setUp() {
+        validLinks = new boolean[200];
+        linkTable = createLinkTable( validLinks );
+    }
+
+
+    // a link table with a mix of functions and attribute values; every eleventh link is not valid.
+    private static TableDataSet createLinkTable( boolean[] validLinks ) {
+
+        int numLinks = validLinks.length;
+
+        ArrayList<String> headers = new ArrayList<String>();
+        headers.add( "vdf" );
+        headers.add( "length" );
+        headers.add( "ul1" );
+        headers.add( "ul3" );
+        headers.add( "volau" );
+        headers.add( "volad" );
+        headers.add( "capacity" );
+
+        float[][] values = new float[numLinks][headers.size()];
+
+        for (int k=0; k < numLinks; k++) {
+            values[k][0] = k % FUNCTION_STRINGS.length;
+            values[k][1] = 0.05f + (k % 17)*0.13f;
+            values[k][2] = 25.0f + (k % 5)*10.0f;
+            values[k][3] = 0.2f + (k % 7)*0.4f;
+            values[k][4] = (k*37 % 2500);
+            values[k][5] = (k % 3)*15.0f;
+            values[k][6] = 900.0f + (k % 4)*500.0f;
+            validLinks[k] = ( k % 11 != 0 );
+        }
+
+        return TableDataSet.create( values, headers );
+
+    }
+
+
+    public void testMatchesLinkCalculator() {
+
+        double[] expected = new LinkCalculator( linkTable, FUNCTION_STRINGS, "vdf" ).solve( validLinks );
+
+        VdfKernelSet kernels = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        assertTrue( kernels.isCompiled() );
+        assertTrue( kernels.bind( new LinkAttributeStore( linkTable ) ) );
+        assertTrue( kernels.coversLinks( validLinks ) );
+
+        double[] actual = kernels.solve( validLinks );
+
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] )
+                assertEquals( "link " + k, expected[k], actual[k], TOLERANCE*Math.max( 1.0, Math.abs(expected[k]) ) );
+        }
+
+    }
+
+
+    public void testParallelMatchesSerial() {
+
+        // enough links that solve() divides them among the pool threads.
+        boolean[] manyValidLinks = new boolean[2*VdfKernelSet.MIN_PARALLEL_LINKS];
+        TableDataSet largeTable = createLinkTable( manyValidLinks );
+
+        VdfKernelSet serial = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        serial.setNumberOfThreads( 1 );
+        serial.bind( new LinkAttributeStore( largeTable ) );
+
+        VdfKernelSet parallel = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        parallel.setNumberOfThreads( 4 );
+        parallel.bind( new LinkAttributeStore( largeTable ) );
+
+        double[] a = serial.solve( manyValidLinks );
+        double[] b = parallel.solve( manyValidLinks );
+        for (int k=0; k < a.length; k++)
+            assertEquals( a[k], b[k], 0.0 );
+
+    }
+
+
+    public void testSingleLinkWithGivenFunction() {
+
+        VdfKernelSet kernels = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        kernels.bind( new LinkAttributeStore( linkTable ) );
+
+        LinkCalculator lc = new LinkCalculator( linkTable, FUNCTION_STRINGS, "vdf" );
+        for (int k=0; k < validLinks.length; k += 13) {
+            assertTrue( kernels.hasFunction( 2 ) );
+            assertEquals( lc.solve( k, 2 ), kernels.solve( k, 2 ), TOLERANCE );
+        }
+
+    }
+
+
+    public void testRebindAfterAttributeIsSet() {
+
+        LinkAttributeStore linkAttributes = new LinkAttributeStore( linkTable );
+
+        VdfKernelSet kernels = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        kernels.bind( linkAttributes );
+        kernels.solve( validLinks );
+
+        double[] volau = linkAttributes.getDouble( "volau" ).clone();
+        for (int k=0; k < volau.length; k++)
+            volau[k] *= 2.0;
+        linkAttributes.setDouble( "volau", volau );
+
+        // the calculator sees the new volumes only through the table written back by the store.
+        double[] expected = new LinkCalculator( linkAttributes.getTable(), FUNCTION_STRINGS, "vdf" ).solve( validLinks );
+
+        assertTrue( kernels.bind( linkAttributes ) );
+        double[] actual = kernels.solve( validLinks );
+
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] )
+                assertEquals( "link " + k, expected[k], actual[k], TOLERANCE*Math.max( 1.0, Math.abs(expected[k]) ) );
+        }
+
+    }
+
+
+    public void testOperatorPrecedence() {
+
+        ArrayList<String> variables = new ArrayList<String>();
+        VdfKernel kernel = VdfKernel.compile( "fd9 = -x^2 + 2*y - if(x > y, 1, 0) + max(x, y, 3) / 2", variables );
+        assertEquals( Arrays.asList( "x", "y" ), variables );
+
+        double[][] columns = { { 3.0 }, { 1.0 } };
+        assertEquals( -9.0 + 2.0 - 1.0 + 1.5, kernel.evaluate( columns, 0 ), TOLERANCE );
+
+        kernel = VdfKernel.compile( "2 ^ 3 ^ 2", variables );
+        assertEquals( 512.0, kernel.evaluate( columns, 0 ), TOLERANCE );
+
+    }
+
+
+    public void testTsFunctionsMatchLinkCalculator() {
+
+        LinkAttributeStore linkAttributes = new LinkAttributeStore( linkTable );
+        LinkCalculator lc = new LinkCalculator( linkTable, TS_FUNCTION_STRINGS, "vdf" );
+        double[] expected = lc.solve( validLinks );
+
+        VdfKernelSet kernels = new VdfKernelSet( TS_FUNCTION_STRINGS, "vdf" );
+        assertTrue( kernels.bind( linkAttributes ) );
+        assertTrue( kernels.needsValidation() );
+        kernels.validate( lc, validLinks );
+        assertFalse( kernels.needsValidation() );
+
+        double[] actual = kernels.solve( validLinks, lc );
+
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] )
+                assertEquals( "link " + k, expected[k], actual[k], VdfKernelSet.VALIDATION_TOLERANCE*Math.max( 1.0, Math.abs(expected[k]) ) );
+        }
+
+    }
+
+
+    public void testMismatchedFunctionFallsBack() {
+
+        // the calculator's fd1 differs from the one compiled, as if the kernel grammar read it differently.
+        String[] interpretedStrings = FUNCTION_STRINGS.clone();
+        interpretedStrings[1] = "fd1 = length * 60 / ul1 * (1 + 0.15 * (volau / capacity) ^ 2)";
+
+        LinkCalculator lc = new LinkCalculator( linkTable, interpretedStrings, "vdf" );
+        double[] expected = lc.solve( validLinks );
+
+        VdfKernelSet kernels = new VdfKernelSet( FUNCTION_STRINGS, "vdf" );
+        assertTrue( kernels.bind( new LinkAttributeStore( linkTable ) ) );
+        kernels.validate( lc, validLinks );
+
+        assertTrue( kernels.hasFunction( 0 ) );
+        assertFalse( kernels.hasFunction( 1 ) );
+        assertTrue( kernels.hasFunction( 2 ) );
+        assertFalse( kernels.coversLinks( validLinks ) );
+
+        double[] actual = kernels.solve( validLinks, lc );
+
+        for (int k=0; k < validLinks.length; k++) {
+            if ( validLinks[k] )
+                assertEquals( "link " + k, expected[k], actual[k], TOLERANCE*Math.max( 1.0, Math.abs(expected[k]) ) );
+        }
+
+    }
+
+
+    public void testUnsupportedFunctionFallsBack() {
+
+        String[] functionStrings = { "fd0 = length * 60 / ul1", "fd1 = put(volau) + get(1)" };
+
+        VdfKernelSet kernels = new VdfKernelSet( functionStrings, "vdf" );
+        assertTrue( kernels.isCompiled() );
+        assertTrue( kernels.bind( new LinkAttributeStore( linkTable ) ) );
+        assertTrue( kernels.hasFunction( 0 ) );
+        assertFalse( kernels.hasFunction( 1 ) );
+
+    }
+
+
+    public void testMissingAttributeFallsBack() {
+
+        String[] functionStrings = { "fd0 = length * 60 / ul2", "fd1 = length * 60 / ul1" };
+
+        VdfKernelSet kernels = new VdfKernelSet( functionStrings, "vdf" );
+        assertTrue( kernels.isCompiled() );
+        assertTrue( kernels.bind( new LinkAttributeStore( linkTable ) ) );
+        assertFalse( kernels.hasFunction( 0 ) );
+        assertTrue( kernels.hasFunction( 1 ) );
+
+    }
+
+
+    public static void main(String[] args) {
+        new TestRunner().doRun(new TestSuite(VdfKernelTest.class));
+    }
+
+}
@@ -107,6 +107,9 @@ public class AonBuildLoadCommonTask extends MessageProcessingTask {
         	// initialize the combined AON Flows array to zero
         	flowResults.initializeFlowArray( gManager.getNetworkHandler().getLinkCount(), gManager.getNetworkHandler().getNumUserClasses() );
         	
+        	// make sure there are slots for the shortest path trees saved in this iteration
+        	pathResults.initializePathArray( gManager.getNetworkHandler().getNumCentroids(), gManager.getNetworkHandler().getNumUserClasses(), fwIteration + 1 );
+        	
         }
 
     }
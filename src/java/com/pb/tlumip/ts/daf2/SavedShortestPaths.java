@@ -22,8 +22,6 @@
  */
 package com.pb.tlumip.ts.daf2;
 
-import java.util.HashMap;
-
 import org.apache.log4j.Logger;
 
 /**
@@ -34,13 +32,20 @@ import org.apache.log4j.Logger;
  * in the AonBuildLoadResultsTask which will return saved paths to the AonBuildLoadController
  * upon its request. 
  *
+ * Trees are kept in an array with a slot for each iteration, origin zone and user class,
+ * allocated by initializePathArray() when AonBuildLoadCommonTask receives the assignment
+ * information for an iteration.  Each worker stores its trees in slots no other worker
+ * uses, so trees are stored without locking; they are read once the workers have reported
+ * their work elements complete.
+ *
  */
 final class SavedShortestPaths {
 	
-    protected static Object objLock = new Object();
-
     static Logger logger = Logger.getLogger("com.pb.tlumip.ts.daf2");
-    protected HashMap storedPaths = new HashMap();
+    protected int[][] storedPaths = new int[0][];
+    
+    private int numZones;
+    private int numClasses;
 	
 	private static SavedShortestPaths instance = new SavedShortestPaths();
 
@@ -59,29 +64,49 @@ final class SavedShortestPaths {
 	}
 
 	
-	public void initializePathHashMap () {
-		storedPaths.clear();
+	/** Allocate a slot for the tree of every iteration up to numIterations, origin zone and user class,
+	 * keeping the trees stored for earlier iterations if the zones and classes are unchanged.
+	 * Must not be called while workers are storing trees.
+	 */
+	public void initializePathArray ( int numZones, int numClasses, int numIterations ) {
+	    
+	    int numSlots = numIterations*numZones*numClasses;
+	    
+	    if ( numZones == this.numZones && numClasses == this.numClasses ) {
+	        if ( numSlots > storedPaths.length ) {
+	            int[][] newPaths = new int[numSlots][];
+	            System.arraycopy( storedPaths, 0, newPaths, 0, storedPaths.length );
+	            storedPaths = newPaths;
+	        }
+	    }
+	    else {
+	        this.numZones = numZones;
+	        this.numClasses = numClasses;
+	        storedPaths = new int[numSlots][];
+	    }
+	    
 	}
 	
 
-	public void storeShortestPathTree ( int[] predecessorLink, int numZones, int numClasses, int fwIter, int rootTaz, int userClass ) {
+	public void storeShortestPathTree ( int[] predecessorLink, int fwIter, int rootTaz, int userClass ) {
 		
-        // Calculate the index used for storing shortest path tree in a HashMap.
-		// This HashMap will be retrieved by AonBuilLoadControllerTask and saved in a DiskObjectArray
-	    Integer storedPathIndex = Integer.valueOf( fwIter*numZones*numClasses + rootTaz*numClasses + userClass );
+        // Calculate the index of the slot used for storing the shortest path tree.
+		// These trees will be retrieved by AonBuilLoadControllerTask and saved in a DiskObjectArray
+	    int storedPathIndex = fwIter*numZones*numClasses + rootTaz*numClasses + userClass;
 	    
-        synchronized (objLock) {
-
-		    // store the shortest path tree for this iteration, origin zone, and user class
-		    try {
-		        storedPaths.put ( storedPathIndex, predecessorLink );
-		    } catch (Exception e) {
-		        logger.error ( "could not store shortest path tree using index=" + storedPathIndex + ", for iter=" + fwIter + ", for origin=" + rootTaz + ", and class=" + userClass, e );	        e.printStackTrace();
-		        System.exit(1);
-		    }
-		        
-        }
+	    if ( storedPathIndex < 0 || storedPathIndex >= storedPaths.length ) {
+	        logger.error ( "could not store shortest path tree using index=" + storedPathIndex + ", for iter=" + fwIter + ", for origin=" + rootTaz + ", and class=" + userClass + "; " + storedPaths.length + " slots were allocated." );
+	        throw new RuntimeException( "no slot allocated for the shortest path tree of iteration " + fwIter + ", origin " + rootTaz + ", class " + userClass + "." );
+	    }
+	    
+	    // store the shortest path tree for this iteration, origin zone, and user class
+	    storedPaths[storedPathIndex] = predecessorLink;
         	
 	}
 	
+	
+	public int[] getShortestPathTree ( int fwIter, int rootTaz, int userClass ) {
+	    return storedPaths[fwIter*numZones*numClasses + rootTaz*numClasses + userClass];
+	}
+	
 }
@@ -21,8 +21,11 @@ import java.util.Arrays;
 import org.apache.log4j.Logger;
 
 import com.pb.tlumip.ts.DemandHandler;
+import com.pb.tlumip.ts.IndexedLinkHeap;
 import com.pb.tlumip.ts.NetworkHandler;
 import com.pb.tlumip.ts.NetworkHandlerIF;
+import com.pb.tlumip.ts.PredecessorTreeLoader;
+import com.pb.tlumip.ts.SparseTripTable;
 
 /**
  * Class for shortest path trees.
@@ -65,8 +68,9 @@ public class ShortestPathTreeH {
     long buildTime = 0;
     long loadTime = 0;
 
-    Heap candidateHeap;
-    int[] heapContents;
+    IndexedLinkHeap candidateHeap;
+
+    PredecessorTreeLoader treeLoader;
 
 
     public ShortestPathTreeH () {
@@ -93,8 +97,9 @@ public class ShortestPathTreeH {
         nodeLabels = new double[numNodes+1];
 
         //Create a new heap structure to sort candidate node labels
-        candidateHeap = new Heap(numNodes+1);
-		heapContents = new int[numNodes];
+        candidateHeap = new IndexedLinkHeap( numNodes+1, ia, ib, indexNode, nodeLabels );
+
+        treeLoader = new PredecessorTreeLoader( numNodes, numZones, ia, indexNode );
         
     }
 
@@ -200,22 +205,7 @@ public class ShortestPathTreeH {
         long start = System.currentTimeMillis();
 
         Arrays.fill (aonFlow, 0.0);
-        
-        int k;
-        for (int j=0; j < numZones; j++) {
-            if ( tripRow[j] > 0 && j != inOrigin ) {
-                k = predecessorLink[j];
-                if (k == -1) {
-                    logger.info ("no path from " + indexNode[inOrigin] + " to " + indexNode[j] + " for userClass " + userClass);
-                    continue;
-                }
-                aonFlow[k] += tripRow[j];
-                while (ia[k] != inOrigin) {
-                    k = predecessorLink[ia[k]];
-                    aonFlow[k] += tripRow[j];
-                }
-            }
-        }
+        treeLoader.loadTree( inOrigin, predecessorLink, tripRow, userClass, aonFlow );
         loadTime += (System.currentTimeMillis() - start);
         
         return aonFlow;
@@ -225,15 +215,13 @@ public class ShortestPathTreeH {
 
 
     /**
-     * For the user class and origin zone pair, get the trip table row from the DemandHandler
+     * For the user class and origin zone pair, get the trip table from the DemandHandler
      * and buid and load the shortest path tree from the origin.
      * The loaded Aon link flows are then returned. 
      */
     public double[] buildAndLoadTrees ( int userClass, int origin  ) {
 
-        int k;
-        
-        double[] tripTableRow = null;
+        SparseTripTable tripTable = null;
         
         Arrays.fill (aonFlow, 0.0);
         
@@ -246,35 +234,20 @@ public class ShortestPathTreeH {
         DemandHandler dh = new DemandHandler();
         
         
-        // get the user class m trips from zone z to all other zones (trip table row z).
+        // get the user class m trip table, whose row z has the trips from zone z to the other zones with trips.
         try {
-            tripTableRow = dh.getTripTableRow( userClass, origin );
+            tripTable = dh.getMulticlassSparseTripTables()[userClass];
         }
         catch ( Exception e ) {
-            logger.error ( "Exception caught getting trip table row for user class = " + userClass + ", origin zone index = " + origin + ".", e ); 
+            logger.error ( "Exception caught getting trip table for user class = " + userClass + ", origin zone index = " + origin + ".", e ); 
             System.exit(1);
         }
 
         
         
         // load these trips onto the links on routes from z to all destinations j, if there are trips from z to j. 
-        for (int j=0; j < numZones; j++) {
-            
-            if ( tripTableRow[j] > 0 && j != origin ) {
-                
-                k = predecessorLink[j];
-                if (k == -1) {
-                    logger.info ("no path from " + indexNode[origin] + " to " + indexNode[j] + " for userClass " + userClass );
-                    continue;
-                }
-                
-                aonFlow[k] += tripTableRow[j];
-                while (ia[k] != origin) {
-                    k = predecessorLink[ia[k]];
-                    aonFlow[k] += tripTableRow[j];
-                }
-            }
-        }
+        int[] rowStart = tripTable.getRowStart();
+        treeLoader.loadTree( origin, predecessorLink, tripTable.getDestinations(), tripTable.getTrips(), rowStart[origin], rowStart[origin+1], userClass, aonFlow );
 
 
         return aonFlow;
@@ -438,248 +411,4 @@ public class ShortestPathTreeH {
         
     }
 
-    
-    
-    
-
-    
-    
-    
-    
-    /*-------------------- Inner class --------------------*/
-
-    public class Heap {
-
-
-
-        private int data[];
-        private int last;
-
-
-        public Heap(int size) {
-            data = new int[size];
-            last = -1;
-        }
-
-
-        public Heap(int initData[]) {
-            data = new int[100];
-            for (int i = 0; i < initData.length; i++) {
-                data[i] = initData[i];
-            }
-            last = initData.length - 1;
-            heapify();
-        }
-
-
-        public int peek() {
-            if (last == -1) return -1;   // no item left
-            return data[0];              // return element at top of heap
-        }
-
-
-        public void clear() {
-            last = -1;
-            for (int i=0; i < heapContents.length; i++)
-                heapContents[i] = 0;
-        }
-
-
-        //Rearrange current data into a heap
-        public void heapify() {
-            for (int i = (last - 1) / 2; i >= 0; i--) {
-                percolateDown(i);
-            }
-        }
-
-
-        public void add(int x) {
-            
-            if(logger.isDebugEnabled()) {
-                logger.debug("adding " + x + ", last=" + last + "   " + indexNode[ia[x]] + "   " + indexNode[ib[x]] + "   " + nodeLabels[ib[x]]);
-            }
-  
-            if (heapContents[ib[x]] == 1) {
-				for (int i = last; i >= 0; i--) {
-				    if ( ib[data[i]] == ib[x] )
-				        percolateUp(i);
-				}
-            }
-            else {
-				data[++last] = x;
-				percolateUp(last);
-
-				heapContents[ib[x]] = 1;
-            }
-
-            
-			
-        }
-
-
-		public int remove() {
-			if (last == -1) return -1;   // no item left
-			int min = data[0];           // remove element at top of heap
-			data[0] = data[last];        // move last element to top of heap
-
-			if (last == 0) {
-				last = -1;
-				if(logger.isDebugEnabled()) {
-                    logger.debug("remove " + min + ", last=" + last);
-                }
-				return min;
-			}
-
-			last--;                      // reduce heap size
-			percolateDown(0);            // move element at top down
-
-			if(logger.isDebugEnabled()) {
-                logger.debug("remove " + min + ", last=" + last);
-            }
-			return min;
-		}
-
-
-		/**
-		 * remove element i from the heap. 
-		 * 
-		 */
-		public int remove(int i) {
-			if (last == -1) return -1;   // no item left
-			int min = data[i];           // remove element at top of heap
-			data[i] = data[last];        // move last element to top of heap
-
-			if (last == 0) {
-				last = -1;
-				if(logger.isDebugEnabled()) {
-                    logger.debug("remove " + min + ", last=" + last);
-                }
-				return min;
-			}
-
-			last--;                      // reduce heap size
-			percolateDown(i);            // move element at top down
-
-			if(logger.isDebugEnabled()) {
-                logger.debug("remove " + min + ", last=" + last);
-            }
-			return min;
-		}
-
-
-        //Let element move up and settle
-        public void percolateUp(int idx) {
-            if(logger.isDebugEnabled()) {
-                logger.debug("pu " + idx);
-            }
-            if (idx == 0) return;
-            int parentIdx = (idx - 1) / 2;
-            int k = data[idx];                                  // added
-            int kParent = data[parentIdx];          // added
-			if(logger.isDebugEnabled()) {
-				logger.debug("k=" + k + ", ib[k]=" + ib[k] + ", an[k]=" + indexNode[ia[k]] + ", bn[k]=" + indexNode[ib[k]] + ", nodeLabels[ib[k]]=" + nodeLabels[ib[k]]);
-				logger.debug("kParent=" + kParent + ", ib[kParent]=" + ib[kParent] + ", an[kParent]=" + indexNode[ia[kParent]] + ", bn[kParent]=" + indexNode[ib[kParent]] + ", nodeLabels[ib[kParent]]=" + nodeLabels[ib[kParent]]);
-				logger.debug("nodeLabels[ib[k]] - nodeLabels[ib[kParent]]=" + (nodeLabels[ib[k]] - nodeLabels[ib[kParent]]) );
-			}
-
-			if (nodeLabels[ib[k]] - nodeLabels[ib[kParent]] < -COMPARE_EPSILON) {
-				swap(parentIdx, idx);           // move larger parent down
-				percolateUp(parentIdx);
-            }
-			else if ((nodeLabels[ib[k]] - nodeLabels[ib[kParent]] <= COMPARE_EPSILON) && (indexNode[ib[k]] < indexNode[ib[kParent]])) {           // added
-                swap(parentIdx, idx);           // move larger parent down
-                percolateUp(parentIdx);
-            }
-        }
-
-
-        public void percolateDown(int idx) {
-            if(logger.isDebugEnabled()) {
-                logger.debug("pd " + idx);
-            }
-            int childIdx = idx * 2 + 1;
-            if (childIdx > last) return;
-            int k = data[idx];
-            int kChild = data[childIdx];
-            int kChildp1 = data[childIdx+1];
-
-			if(logger.isDebugEnabled()) {
-				logger.debug("idx=" + idx + ", childIdx=" + childIdx + ", last=" + last);
-				logger.debug("k=" + k + ", ib[k]=" + ib[k] + ", an[k]=" + indexNode[ia[k]] + ", bn[k]=" + indexNode[ib[k]] + ", nodeLabels[ib[k]]=" + nodeLabels[ib[k]]);
-				logger.debug("kChild=" + kChild + ", ib[kChild]=" + ib[kChild] + ", an[kChild]=" + indexNode[ia[kChild]] + ", bn[kChild]=" + indexNode[ib[kChild]] + ", nodeLabels[ib[kChild]]=" + nodeLabels[ib[kChild]]);
-				logger.debug("kChildp1=" + kChildp1 + ", ib[kChildp1]=" + ib[kChildp1] + ", an[kChildp1]=" + indexNode[ia[kChildp1]] + ", bn[kChildp1]=" + indexNode[ib[kChildp1]] + ", nodeLabels[ib[kChildp1]]=" + nodeLabels[ib[kChildp1]]);
-				logger.debug("nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]]=" + (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]]) );
-				logger.debug("nodeLabels[ib[kChild]] - nodeLabels[ib[k]]=" + (nodeLabels[ib[kChild]] - nodeLabels[ib[k]]) );
-			}
-			if ((childIdx + 1) <= last && (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]] < -COMPARE_EPSILON)) {
-                childIdx = childIdx + 1;
-                kChild = data[childIdx];
-            }
-            else if ((childIdx + 1) <= last && (nodeLabels[ib[kChildp1]] - nodeLabels[ib[kChild]] <= COMPARE_EPSILON) && (indexNode[ib[kChildp1]] < indexNode[ib[kChild]])) {
-                childIdx = childIdx + 1;
-                kChild = data[childIdx];
-            }
-            
-			if (nodeLabels[ib[kChild]] - nodeLabels[ib[k]] < -COMPARE_EPSILON) {
-				swap(idx, childIdx);
-				percolateDown(childIdx);
-			}
-            else if ((nodeLabels[ib[kChild]] - nodeLabels[ib[k]] <= COMPARE_EPSILON) && (indexNode[ib[kChild]] < indexNode[ib[k]])) {
-                swap(idx, childIdx);
-                percolateDown(childIdx);
-            }
-        }
-
-
-        public void swap(int idx1, int idx2) {
-            int temp = data[idx1];
-            data[idx1] = data[idx2];
-            data[idx2] = temp;
-        }
-
-
-		//Print heap contents to console (note in sorted order)
-		public void dataPrint() {
-			int k;
-
-			for (int i = 0; i <= last; i++) {
-				k = data[i];
-				logger.debug("i=" + i + ", k=" + k + ", ib[k]=" + ib[k] + ", an=" + indexNode[ia[k]] + ", bn=" + indexNode[ib[k]] + ", nodeLabels[ib]=" + nodeLabels[ib[k]] + ", nodeLabeled[ib]=" + nodeLabeled[ib[k]]);
-			}
-			logger.debug("");
-		}
-
-
-        /*
-        //Used to test as a stand alone class
-        static final int initData[] =  { 10, 3, 5, 6, 2, 7, 1 };
-
-        public static void main(String argv[]) {
-        	logger.info("Initial data:");
-            for (int i = 0; i < initData.length; i++) {
-                logger.info(initData[i] + ", ");
-            }
-            logger.info();
-
-            Heap heap = new Heap(initData);
-            heap.dataPrint();
-
-            heap.add(8);
-            heap.dataPrint();
-
-            int min = heap.removeMin();
-            heap.dataPrint();
-
-            heap.add(9);
-            heap.dataPrint();
-
-            heap.add(4);
-            heap.dataPrint();
-
-            min = heap.removeMin();
-            heap.dataPrint();
-        }
-    */
-    }
-
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.transit;
+
+
+/**
+ * A read-only snapshot of the link impedances of an auxiliary transit network, taken once the
+ * network has been built, so OptimalStrategy can read them from an array rather than asking the
+ * NetworkHandler for the impedance of each link it examines.
+ *
+ * The impedance of link k is AuxTrNet.getLinkImped(k) at the time the snapshot was taken.
+ *
+ */
+public final class AuxLinkImpedances {
+
+    private final double[] linkImped;
+
+
+    /**
+     * The array is kept, not copied, so the caller must not modify it afterwards.
+     */
+    public AuxLinkImpedances ( double[] linkImped ) {
+        this.linkImped = linkImped;
+    }
+
+
+    public int getNumLinks() {
+        return linkImped.length;
+    }
+
+    public double getLinkImped ( int k ) {
+        return linkImped[k];
+    }
+
+}
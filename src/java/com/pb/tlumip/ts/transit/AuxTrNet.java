@@ -827,7 +827,7 @@ public class AuxTrNet implements Serializable {
         boolean[] validLinks = new boolean[nh.getLinkCount()];
 
         // build shortest path tree object and set cost and valid link attributes for this user class.
-        ShortestPathTreeH sp = new ShortestPathTreeH( nh );
+        ShortestPathTreeH sp = new ShortestPathTreeH( nh, true );
         
         // let any link in the network be used in shortest paths from centroid to boarding nodes.
         Arrays.fill(validLinks, true);
@@ -843,8 +843,8 @@ public class AuxTrNet implements Serializable {
                 
                 Set<Integer> connectedRoutes = new HashSet<Integer>();
 
-                // build a shortest path tree from/to the centroid.
-                sp.buildTree ( centroid );
+                // build a shortest path tree from/to the centroid, only as far as the nodes within walking distance.
+                sp.buildTree ( centroid, MAX_WALK_ACCESS_DIST );
                 
                 ArrayList<double[]>[] endPoints = new ArrayList[routeTypeStrings.length];
                 
@@ -943,15 +943,21 @@ public class AuxTrNet implements Serializable {
         double increment = 2.0;
         double distanceIncrement = 0;
         // build shortest path tree object and set cost and valid link attributes for this user class.
-        ShortestPathTreeH sp = new ShortestPathTreeH( nh );
+        ShortestPathTreeH sp = new ShortestPathTreeH( nh, true );
         
         sp.setValidLinks( validLinksForClasses[autoClass] );
         sp.setLinkCost( linkCost );
 
+        // the upper limit of the last time band that can be searched below, so trees need not be built beyond it.
+        double maxBandDist = MAX_WALK_ACCESS_DIST;
+        while ( maxBandDist < maxDriveAccessDist )
+            maxBandDist += increment;
+        double maxDriveAccessTime = 60.0*maxBandDist/avgSpeed;
+
         for (int centroid=0; centroid < nh.getNumCentroids(); centroid++) {
 
             
-            sp.buildTree ( centroid );
+            sp.buildTree ( centroid, maxDriveAccessTime );
             
             ArrayList<double[]>[] endPoints = new ArrayList[routeTypeStrings.length];
             
@@ -1428,6 +1434,22 @@ public class AuxTrNet implements Serializable {
 	}
 
 
+	/**
+	 * Return the impedance of every auxiliary link, as returned by getLinkImped(k).
+	 */
+	public double[] getLinkImpedances () {
+	    double[] linkImped = new double[auxLinks];
+	    for (int k=0; k < auxLinks; k++)
+	        linkImped[k] = getLinkImped(k);
+	    return linkImped;
+	}
+
+
+	public AuxLinkImpedances getImpedanceSnapshot () {
+	    return new AuxLinkImpedances( getLinkImpedances() );
+	}
+
+
 	// for debugging purposes only
 	// linkImped in optimal strategy is generalized cost, not including wait time.
 	double getLinkImped (int k, int temp) {
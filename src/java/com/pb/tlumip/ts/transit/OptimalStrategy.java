@@ -82,9 +82,9 @@ public class OptimalStrategy {
 	
     int numCentroids;
     
-	Heap candidateHeap;
-	int[] heapContents;
+	StrategyLinkHeap candidateHeap;
 
+	// node and link arrays, taken from the OptimalStrategyWorkspace of the thread building the strategy.
 	double[] nodeLabel, trfWalkLabel, nodeFreq, linkLabel;
 	boolean[] inStrategy;
 	int[] orderInStrategy;
@@ -92,6 +92,13 @@ public class OptimalStrategy {
 	
 	double[] nodeFlow;
 
+	// node skim arrays, also from the workspace, and the skims from each origin to dest returned by skimStrategy().
+	double[][] nodeSkims;
+	double[] railDist, busDist, tranIvt;
+	double[][] skimResults;
+
+	int[] originsNotLoaded;
+
     int[] ia = null;
     int[] ib = null;
     int[] ipa = null;
@@ -110,10 +117,15 @@ public class OptimalStrategy {
     double[] invTime = null;
     double[] freq = null;
     double[] flow = null;
+    int[] flowDest = null;
     double[] rteHeadway = null;
     int[] linkType = null;
     char[] rteMode = null;
     String[] rteNames = null;
+
+    // link impedances read once per period, and those of links whose dwell time was set while building a strategy.
+    AuxLinkImpedances impedances = null;
+    double[] updatedLinkImped = null;
     
 	int[] gia;
 	int[] gib;
@@ -150,20 +162,6 @@ public class OptimalStrategy {
         auxLinkCount = nh.getAuxLinkCount( identifier );
         
         
-		nodeFlow = new double[auxNodeCount+1];
-        nodeLabel = new double[auxNodeCount+1];
-        trfWalkLabel = new double[auxNodeCount+1];
-		nodeFreq = new double[auxNodeCount+1];
-		linkLabel = new double[auxLinkCount+1];
-		inStrategy = new boolean[auxLinkCount+1];
-		orderInStrategy = new int[auxLinkCount+1];
-		strategyOrderForLink = new int[auxLinkCount+1];
-		
-		//Create a new heap structure to sort candidate node labels
-        //candidateHeap = new Heap(auxNodeCount+1);  // old Heap 
-        candidateHeap = new Heap( auxLinkCount ); // new SortedSet
-		heapContents = new int[auxNodeCount+1];
-
         ia = nh.getAuxIa(identifier);
         ib = nh.getAuxIb(identifier);
         ipa = nh.getAuxIpa(identifier);
@@ -185,6 +183,7 @@ public class OptimalStrategy {
         freq = nh.getAuxLinkFreq(identifier);
         flow = nh.getAuxLinkFlow(identifier);
         rteHeadway = nh.getAuxRouteHeadway(identifier);
+        impedances = nh.getAuxImpedanceSnapshot(identifier);
         
 		gia = nh.getIa();
 		gib = nh.getIb();
@@ -194,6 +193,8 @@ public class OptimalStrategy {
 		gNodeY = nh.getNodeY();
 		gDist = nh.getDist();
 
+		useThreadWorkspace();
+
         if (rb != null) {
             busFareAlpha = ResourceUtil.getDoubleProperty(rb,BUS_FARE_ALPHA_PROPRERTY,busFareAlpha);
             busFareBeta = ResourceUtil.getDoubleProperty(rb,BUS_FARE_BETA_PROPRERTY,busFareBeta);
@@ -204,7 +205,30 @@ public class OptimalStrategy {
 	}
 
 
+	/**
+	 * Point the node and link arrays and the candidate heap at the calling thread's workspace,
+	 * so strategies built by one thread reuse the same arrays for every destination.
+	 */
+	private void useThreadWorkspace() {
+		OptimalStrategyWorkspace ws = OptimalStrategyWorkspace.getThreadInstance( auxNodeCount, auxLinkCount, linkType );
+		nodeFlow = ws.nodeFlow;
+		nodeLabel = ws.nodeLabel;
+		trfWalkLabel = ws.trfWalkLabel;
+		nodeFreq = ws.nodeFreq;
+		linkLabel = ws.linkLabel;
+		inStrategy = ws.inStrategy;
+		orderInStrategy = ws.orderInStrategy;
+		strategyOrderForLink = ws.strategyOrderForLink;
+		candidateHeap = ws.candidateHeap;
+		nodeSkims = ws.nodeSkims;
+		railDist = ws.railDist;
+		busDist = ws.busDist;
+		tranIvt = ws.tranIvt;
+	}
+
+
 	private void initData() {
+		useThreadWorkspace();
 		Arrays.fill(nodeLabel, AuxTrNet.INFINITY);
         Arrays.fill(trfWalkLabel, 0.0);
         Arrays.fill(nodeFlow, 0.0);
@@ -255,14 +279,7 @@ public class OptimalStrategy {
 		    debugLogger.info ("building optimal strategy to " + dest + "(" + indexNode[dest] + ")");
 		
 		
-		ArrayList<Integer> linksInStrategyList = new ArrayList<Integer>();
-		
-        
-        //while ((k = candidateHeap.remove()) != -1) {  //old Heap
-        while ( candidateHeap.size() > 0 ) {
-
-            HeapElement he = candidateHeap.getFirst();
-            k = he.getIndex();
+        while ((k = candidateHeap.remove()) != -1) {
             
             
             int dummy=0;
@@ -280,7 +297,7 @@ public class OptimalStrategy {
     			}
     			
     			
-				linkImped = nh.getAuxLinkImped(identifier, k);
+				linkImped = getLinkImped(k);
 				
 				// log some information about the starting condition of the candidate link being examined
 				if ( debug ) {
@@ -334,12 +351,13 @@ public class OptimalStrategy {
 							if ( dwellTime[k-1] < 0 )
 								dwellTime[k-1] = 0;
 							
+							updateLinkImped(k-1);
+							
 						}
 
 						inStrategy[k] = true;
 						strategyOrderForLink[k] = inStrategyCount;
                         orderInStrategy[inStrategyCount++] = k;
-                        linksInStrategyList.add(k);
 						updateEnteringLabels(ia[k]);
 
 					}
@@ -364,7 +382,6 @@ public class OptimalStrategy {
 						inStrategy[k] = true;
 						strategyOrderForLink[k] = inStrategyCount;
 						orderInStrategy[inStrategyCount++] = k;
-                        linksInStrategyList.add(k);
 						updateEnteringLabels (ia[k]);
 							
 					}
@@ -387,7 +404,6 @@ public class OptimalStrategy {
     						inStrategy[k] = true;
     						strategyOrderForLink[k] = inStrategyCount;
     						orderInStrategy[inStrategyCount++] = k;
-                            linksInStrategyList.add(k);
     						updateEnteringLabels(ia[k]);
                         }
                         
@@ -425,7 +441,8 @@ public class OptimalStrategy {
 //            logger.info( "" );
 //            logger.info( "Strategy Contents:" );
 //            int cnt = 0;
-//            for ( int el : linksInStrategyList ) {
+//            for ( int s=0; s < inStrategyCount; s++ ) {
+//                int el = orderInStrategy[s];
 //                int an = ia[el] < indexNode.length ? indexNode[ia[el]] : -1;
 //                int bn = ib[el] < indexNode.length ? indexNode[ib[el]] : -1;
 //                String name = trRoute[el] >= 0 ? rteNames[trRoute[el]] : "N/A";
@@ -483,7 +500,7 @@ public class OptimalStrategy {
                 continue;
 
             
-            linkImped = nh.getAuxLinkImped(identifier, k);
+            linkImped = getLinkImped(k);
 
             // if the anode's label is already smaller than the bnode's label plus the link impedance,
             // no need to add the link to the heap. 
@@ -516,17 +533,13 @@ public class OptimalStrategy {
                 debugLogger.info ("adding   " + i + ", indexb[i] or k=" + k + ", linkType=" + linkType[k] + ", route=" + name + ", ia=" + ia[k] + "(" + ( ia[k] < indexNode.length ? indexNode[ia[k]] : -1) + "), ib=" + ib[k] + "(" + (ib[k] < indexNode.length ? indexNode[ib[k]] : -1) + "), linkLabel[k]=" + String.format("%15.6f", linkLabel[k]) + ", nodeLabel[ag.ib[k]]=" + nodeLabel[ib[k]] + ", linkImped=" + linkImped);
             }
 
-            HeapElement he = new HeapElement(k, linkType[k], linkLabel[k]);
-            
-            if ( candidateHeap.contains(k))
-                candidateHeap.remove(he);
-            
-            candidateHeap.add(he);
+            // adds k, or moves it to the position for its new label if it is already in the heap.
+            candidateHeap.add(k);
 
         }
 
         if ( debugLogger.isDebugEnabled() )
-            candidateHeap.dataPrintSorted();
+            dataPrintSortedHeap();
             
         return 0;
     }
@@ -535,16 +548,70 @@ public class OptimalStrategy {
 
 
 
+    private double getLinkImped (int k) {
+        if ( updatedLinkImped != null && !Double.isNaN(updatedLinkImped[k]) )
+            return updatedLinkImped[k];
+        return impedances.getLinkImped(k);
+    }
+
+
+    // the impedance of link k changes with its dwell time, so get it again from the network
+    // rather than the snapshot taken before the dwell time was set.
+    private void updateLinkImped (int k) {
+        if ( updatedLinkImped == null ) {
+            updatedLinkImped = new double[auxLinkCount+1];
+            Arrays.fill(updatedLinkImped, Double.NaN);
+        }
+        updatedLinkImped[k] = nh.getAuxLinkImped(identifier, k);
+    }
+
+
+
+
+
     public double[] loadOptimalStrategyDest ( double[] tripColumn, int maxRoutes ) {
 
+        // allocate an array to store boardings by route to be passed back to calling method.
+        double[] routeBoardingsToDest = new double[maxRoutes];
+        
+        loadStrategy( tripColumn, routeBoardingsToDest );
+        
+        return routeBoardingsToDest;
+
+    }
+
+
+    /**
+     * Load the trips in tripColumn, if it is not null, onto the strategy built for dest, adding
+     * the boardings by route to routeBoardingsToDest, then skim the strategy.  Loading and
+     * skimming are separate passes over the strategy links, since flows are allocated from the
+     * origins toward dest and skims are accumulated from dest back toward the origins.
+     * 
+     * The skims from origin i are returned in [skim][i], in an array that is reused by the
+     * next call, so the caller should copy the values it keeps before skimming another strategy.
+     */
+    public double[][] loadAndSkimOptimalStrategyDest ( double[] tripColumn, double[] routeBoardingsToDest ) {
+
+        if ( tripColumn != null )
+            loadStrategy( tripColumn, routeBoardingsToDest );
+
+        return skimStrategy();
+
+    }
+
+
+    private void loadStrategy ( double[] tripColumn, double[] routeBoardingsToDest ) {
+
         // tripColumn is the column of the trip table for the destination zone for this optimal strategy 
         int k, m;
         int count;
         double linkFlow;
         boolean debug = false;
         
-        int[] originsNotLoaded = new int[tripColumn.length];
-        ArrayList origList = new ArrayList();
+        if ( originsNotLoaded == null || originsNotLoaded.length != tripColumn.length )
+            originsNotLoaded = new int[tripColumn.length];
+        else
+            Arrays.fill( originsNotLoaded, 0 );
         
         tripsNotLoaded = 0;
         
@@ -557,16 +624,11 @@ public class OptimalStrategy {
             nodeFlow[origTaz] = tripColumn[origTaz];
             
             if ( tripColumn[origTaz] > 0.0 ) {
-                origList.add(origTaz);
                 originsNotLoaded[origTaz] = 1;
             }
         }
 
 
-        // allocate an array to store boardings by route to be passed back to calling method.
-        double[] routeBoardingsToDest = new double[maxRoutes];
-        
-        
         // loop through links in optimal strategy in reverse order and allocate
         // flow at the nodes to exiting links in the optimal strategy
         count = 0;
@@ -581,6 +643,8 @@ public class OptimalStrategy {
 
                 if ( linkFlow > 0 ) {
                     flow[k] = linkFlow;
+                    if ( flowDest != null )
+                        flowDest[k] = dest;
                     nodeFlow[ib[k]] += linkFlow;
                     routeBoardingsToDest[trRoute[k]] += linkFlow;
                 }
@@ -593,6 +657,8 @@ public class OptimalStrategy {
                 if ( linkFlow > 0 ) {
                     if ( nodeLabel[ib[k]] != AuxTrNet.INFINITY ) {
                         flow[k] = linkFlow;
+                        if ( flowDest != null )
+                            flowDest[k] = dest;
                         nodeFlow[ib[k]] += linkFlow;
                         nodeFlow[ia[k]] -= linkFlow;
                         
@@ -618,8 +684,6 @@ public class OptimalStrategy {
                 tripsNotLoaded += tripColumn[origTaz];
         }
         
-        return routeBoardingsToDest;
-
     }
 
 
@@ -751,30 +815,67 @@ public class OptimalStrategy {
     public double getTripsNotLoaded () {
         return tripsNotLoaded;
     }
+
+
+    /**
+     * Load link flows into a private copy of the transit network's link flow array, so that
+     * strategies to different destinations can be loaded by OptimalStrategy objects in separate
+     * threads.  The destination whose loading last set each link's flow is kept as well, so the
+     * copies can be merged into the network's array in destination order.
+     */
+    public void usePrivateLinkFlows () {
+        double[] privateFlow = new double[flow.length];
+        System.arraycopy( flow, 0, privateFlow, 0, flow.length );
+        flow = privateFlow;
+
+        flowDest = new int[flow.length];
+        Arrays.fill( flowDest, -1 );
+    }
+
+
+    public double[] getLinkFlows () {
+        return flow;
+    }
+
+
+    // flowDest[k] is the destination whose loading last set flow[k], or -1; null unless usePrivateLinkFlows() was called.
+    public int[] getLinkFlowDestinations () {
+        return flowDest;
+    }
     
 
 
 
     public double[][] getOptimalStrategySkimsDest () {
 
+        double[][] skims = skimStrategy();
+        
+        double[][] skimsDest = new double[NUM_SKIMS][];
+        for (int k=0; k < NUM_SKIMS; k++)
+            skimsDest[k] = skims[k].clone();
+        
+        return skimsDest;
+        
+    }
+
+
+    /**
+     * Skim the strategy built for dest into skimResults.  The node skim arrays and railDist,
+     * busDist and tranIvt come from the thread's workspace and are all UNCONNECTED on entry;
+     * only the anodes of strategy links are written, so only those are reset afterwards.
+     */
+    private double[][] skimStrategy () {
+
         int k, m;
         int count;
         
         boolean debug = classDebug;
         
 
-        // create temp arrays to hold rail ivt, bus dist, and tran ivt - to be used by fare calculation methods for fare tables
-        double[] railDist = new double[auxNodeCount];
-        double[] busDist = new double[auxNodeCount];
-        double[] tranIvt = new double[auxNodeCount];
-        
-        
-        double[][] nodeSkims = new double[NUM_SKIMS][auxNodeCount];
-        double[][] skimResults = new double[NUM_SKIMS][numCentroids];
-        for (k=0; k < NUM_SKIMS; k++) {
-            Arrays.fill (nodeSkims[k], AuxTrNet.UNCONNECTED);
+        if ( skimResults == null )
+            skimResults = new double[NUM_SKIMS][numCentroids];
+        for (k=0; k < NUM_SKIMS; k++)
             Arrays.fill (skimResults[k], AuxTrNet.UNCONNECTED);
-        }
 
         
         
@@ -1066,6 +1167,17 @@ public class OptimalStrategy {
             skimResults[TRAN$][i] = getSkimTableLookupFare ( i, tranIvt, transitFareLookupTable );
         }
 
+        
+        // reset the node values written above for the next strategy skimmed by this thread.
+        for (int i=0; i < inStrategyCount; i++) {
+            int a = ia[orderInStrategy[i]];
+            for (k=0; k < NUM_SKIMS; k++)
+                nodeSkims[k][a] = AuxTrNet.UNCONNECTED;
+            railDist[a] = AuxTrNet.UNCONNECTED;
+            busDist[a] = AuxTrNet.UNCONNECTED;
+            tranIvt[a] = AuxTrNet.UNCONNECTED;
+        }
+
         return skimResults;
         
     }
@@ -1168,118 +1280,16 @@ public class OptimalStrategy {
     
     
 
-    // Inner classes
+    private void dataPrintSortedHeap() {
 
-    public class HeapElement implements Comparable {
-        
-        int index;
-        int type;
-        double label;
-        
-        public HeapElement (int index, int type, double label) {
-            this.index = index;
-            this.type = type;
-            this.label = label;
-        }
-        
-        
-        public int compareTo(Object obj) {
-            
-            int returnValue = 0;
-            HeapElement el = (HeapElement)obj;
-            
-            if ( label > el.getLabel() )
-                returnValue = 1;
-            else if ( label < el.getLabel() )
-                returnValue = -1;
-            else {
-                if ( type > el.getType() )
-                    returnValue = 1;
-                else if ( type < el.getType() )
-                    returnValue = -1;
-                else {
-                    if ( index > el.getIndex() )
-                        returnValue = 1;
-                    else if ( index < el.getIndex() )
-                        returnValue = -1;
-                }
-            }
-            
-            return returnValue;
-        }
+        debugLogger.debug( "Heap contents sorted by linklabel" );
+        int[] sorted = candidateHeap.getSortedContents();
 
-        public int getIndex() {
-            return index;
-        }
-        
-        public int getType() {
-            return type;
-        }
-        
-        public double getLabel() {
-            return label;
-        }
-        
-    }
-
-    
-    
-    public class Heap {
-        
-        boolean[] inHeap = null;
-        SortedSet elements = null;
-        
-        public Heap( int numLinks ) {
-            elements = new TreeSet();
-            inHeap = new boolean[numLinks];
-        }
-
-        public void clear() {
-            elements.clear();
-            Arrays.fill ( inHeap, false );
-        }
-
-        public int size() {
-            return elements.size();
-        }
-
-        public void add( HeapElement el ) {
-            int k = el.getIndex();
-            inHeap[k] = true;
-            elements.add(el);
-        }
-        
-        public boolean remove( HeapElement el ) {
-            int k = el.getIndex();
-            inHeap[k] = false;
-            return elements.remove(el);
-        }
-        
-        public boolean contains( int k ) {
-            return inHeap[k];
-        }
-        
-        public HeapElement getFirst() {
-            HeapElement el = (HeapElement)elements.first();
-            if ( el != null )
-                remove(el);
-            return el;
-        }
-
-        public void dataPrintSorted() {
-
-            debugLogger.debug( "Heap contents sorted by linklabel" );
-            Iterator it = elements.iterator();
-
-            int i=0;
-            while ( it.hasNext() ) {
-                HeapElement h = (HeapElement)it.next();
-                int k = h.getIndex();
-                int m = hwyLink[k];
-                debugLogger.info ("i=" + (i++) + ",k=" + k + ", ag.ia[k]=" + ia[k] + "(g.an=" + (m>=0 ? indexNode[gia[m]] : -1) + "), ag.ib[k]=" + ib[k] + "(g.bn=" + (m>=0 ? indexNode[gib[m]] : -1) + "), linkType=" + linkType[k] + ", Route=" + trRoute[k] + ", linkLabel[k]=" + String.format("%10.6f", linkLabel[k]) );
-            }
+        for (int i=0; i < sorted.length; i++) {
+            int k = sorted[i];
+            int m = hwyLink[k];
+            debugLogger.info ("i=" + i + ",k=" + k + ", ag.ia[k]=" + ia[k] + "(g.an=" + (m>=0 ? indexNode[gia[m]] : -1) + "), ag.ib[k]=" + ib[k] + "(g.bn=" + (m>=0 ? indexNode[gib[m]] : -1) + "), linkType=" + linkType[k] + ", Route=" + trRoute[k] + ", linkLabel[k]=" + String.format("%10.6f", linkLabel[k]) );
         }
-
     }
 
-}	
\ No newline at end of file
+}
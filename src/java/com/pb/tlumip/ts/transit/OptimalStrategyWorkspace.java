@@ -0,0 +1,104 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.transit;
+
+
+/**
+ * Node and link arrays and the candidate link heap used by OptimalStrategy while building,
+ * loading and skimming the strategy to a destination.
+ *
+ * A workspace is meant to be owned by one thread and reused for every strategy that thread
+ * builds, for every destination, access mode and period, so the arrays are allocated once per
+ * thread and transit network size rather than once per OptimalStrategy object.
+ *
+ */
+public class OptimalStrategyWorkspace {
+
+    private static ThreadLocal<OptimalStrategyWorkspace> threadWorkspace = new ThreadLocal<OptimalStrategyWorkspace>();
+
+    private int auxNodeCount;
+    private int auxLinkCount;
+    private int[] linkType;
+
+    double[] nodeLabel;
+    double[] trfWalkLabel;
+    double[] nodeFreq;
+    double[] nodeFlow;
+
+    double[] linkLabel;
+    boolean[] inStrategy;
+    int[] orderInStrategy;
+    int[] strategyOrderForLink;
+
+    StrategyLinkHeap candidateHeap;
+
+    // node skim values, which OptimalStrategy leaves at AuxTrNet.UNCONNECTED between strategies.
+    double[][] nodeSkims;
+    double[] railDist;
+    double[] busDist;
+    double[] tranIvt;
+
+
+    public OptimalStrategyWorkspace ( int auxNodeCount, int auxLinkCount, int[] linkType ) {
+
+        this.auxNodeCount = auxNodeCount;
+        this.auxLinkCount = auxLinkCount;
+        this.linkType = linkType;
+
+        nodeFlow = new double[auxNodeCount+1];
+        nodeLabel = new double[auxNodeCount+1];
+        trfWalkLabel = new double[auxNodeCount+1];
+        nodeFreq = new double[auxNodeCount+1];
+
+        linkLabel = new double[auxLinkCount+1];
+        inStrategy = new boolean[auxLinkCount+1];
+        orderInStrategy = new int[auxLinkCount+1];
+        strategyOrderForLink = new int[auxLinkCount+1];
+
+        candidateHeap = new StrategyLinkHeap( auxLinkCount+1, linkLabel, linkType );
+
+        nodeSkims = new double[OptimalStrategy.NUM_SKIMS][auxNodeCount+1];
+        railDist = new double[auxNodeCount+1];
+        busDist = new double[auxNodeCount+1];
+        tranIvt = new double[auxNodeCount+1];
+
+    }
+
+
+    /**
+     * Return the workspace held by the calling thread, creating it if the thread does not have
+     * one yet or if the one it has was created for a different sized transit network.
+     */
+    public static OptimalStrategyWorkspace getThreadInstance ( int auxNodeCount, int auxLinkCount, int[] linkType ) {
+
+        OptimalStrategyWorkspace ws = threadWorkspace.get();
+
+        if ( ws == null || ws.auxNodeCount != auxNodeCount || ws.auxLinkCount != auxLinkCount ) {
+            ws = new OptimalStrategyWorkspace( auxNodeCount, auxLinkCount, linkType );
+            threadWorkspace.set( ws );
+        }
+        else if ( ws.linkType != linkType ) {
+            // same sized network, e.g. the other period, so keep the work arrays.
+            ws.linkType = linkType;
+            ws.candidateHeap = new StrategyLinkHeap( auxLinkCount+1, ws.linkLabel, linkType );
+        }
+
+        return ws;
+
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright  2005 PB Consult Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ *
+ */
+package com.pb.tlumip.ts.transit;
+
+import java.util.Arrays;
+
+
+/**
+ * Binary heap of candidate links used by OptimalStrategy.buildStrategy().
+ *
+ * Heap elements are transit network link indices ordered by linkLabel[k], with ties broken on
+ * linkType[k] and then on k, the order of the TreeSet of HeapElement objects it replaces.  At
+ * most one element per link is held in the heap: adding a link that is already in the heap
+ * moves it to the position for its new label, so the label update is a single percolate from
+ * that position.  A link removed from the heap may be added again.  Link positions are stamped
+ * with an epoch so that clear() does not have to touch per-link arrays.
+ *
+ */
+public class StrategyLinkHeap {
+
+    // position value for a link that was added to and then removed from the heap in the current epoch
+    static final int REMOVED = -1;
+
+    private double[] linkLabel;
+    private int[] linkType;
+
+    private int[] data;
+    private int last;
+
+    // heap position of each link, valid only if linkEpoch[k] == epoch.
+    private int[] position;
+    private int[] linkEpoch;
+    private int epoch;
+
+
+    public StrategyLinkHeap( int size, double[] linkLabel, int[] linkType ) {
+        this.linkLabel = linkLabel;
+        this.linkType = linkType;
+
+        data = new int[size];
+        position = new int[size];
+        linkEpoch = new int[size];
+        epoch = 1;
+        last = -1;
+    }
+
+
+    public boolean isEmpty() {
+        return last == -1;
+    }
+
+
+    public int size() {
+        return last + 1;
+    }
+
+
+    public boolean contains( int k ) {
+        return linkEpoch[k] == epoch && position[k] != REMOVED;
+    }
+
+
+    /**
+     * Empty the heap.  Link positions are invalidated by advancing the epoch, so this is O(1)
+     * except when the epoch counter wraps around.
+     */
+    public void clear() {
+        last = -1;
+        epoch++;
+        if ( epoch == Integer.MAX_VALUE ) {
+            Arrays.fill( linkEpoch, 0 );
+            epoch = 1;
+        }
+    }
+
+
+    /**
+     * Add link k to the heap with its current linkLabel[k], or if k is already in the heap, move
+     * it up or down to reflect a changed label.
+     */
+    public void add( int k ) {
+
+        if ( contains( k ) ) {
+            int idx = position[k];
+            percolateUp( idx );
+            if ( position[k] == idx )
+                percolateDown( idx );
+        }
+        else {
+            data[++last] = k;
+            linkEpoch[k] = epoch;
+            percolateUp( last );
+        }
+
+    }
+
+
+    /**
+     * Remove and return the first link in the heap, or -1 if the heap is empty.
+     */
+    public int remove() {
+        if (last == -1) return -1;   // no item left
+
+        int min = data[0];
+        position[min] = REMOVED;
+
+        if ( last > 0 ) {
+            data[0] = data[last];        // move last element to the top
+            last--;
+            percolateDown( 0 );
+        }
+        else {
+            last--;
+        }
+
+        return min;
+    }
+
+
+    // true if link ka should be above link kb in the heap.
+    private boolean precedes( int ka, int kb ) {
+        if ( linkLabel[ka] != linkLabel[kb] )
+            return linkLabel[ka] < linkLabel[kb];
+        else if ( linkType[ka] != linkType[kb] )
+            return linkType[ka] < linkType[kb];
+        return ka < kb;
+    }
+
+
+    //Let element move up and settle
+    private void percolateUp( int idx ) {
+        int k = data[idx];
+        while ( idx > 0 ) {
+            int parentIdx = (idx - 1) / 2;
+            int kParent = data[parentIdx];
+            if ( !precedes( k, kParent ) )
+                break;
+
+            // move larger parent down
+            data[idx] = kParent;
+            position[kParent] = idx;
+            idx = parentIdx;
+        }
+        data[idx] = k;
+        position[k] = idx;
+    }
+
+
+    private void percolateDown( int idx ) {
+        int k = data[idx];
+        int childIdx = idx * 2 + 1;
+        while ( childIdx <= last ) {
+            int kChild = data[childIdx];
+            if ( childIdx + 1 <= last && precedes( data[childIdx+1], kChild ) ) {
+                childIdx++;
+                kChild = data[childIdx];
+            }
+            if ( !precedes( kChild, k ) )
+                break;
+
+            data[idx] = kChild;
+            position[kChild] = idx;
+            idx = childIdx;
+            childIdx = idx * 2 + 1;
+        }
+        data[idx] = k;
+        position[k] = idx;
+    }
+
+
+    /**
+     * Return the links in the heap in the order they would be removed, without removing them.
+     */
+    public int[] getSortedContents() {
+
+        int[] sorted = new int[size()];
+        for (int i=0; i < sorted.length; i++)
+            sorted[i] = data[i];
+
+        // insertion sort is adequate for the occasional debug listing.
+        for (int i=1; i < sorted.length; i++) {
+            int k = sorted[i];
+            int j = i - 1;
+            while ( j >= 0 && precedes( k, sorted[j] ) ) {
+                sorted[j+1] = sorted[j];
+                j--;
+            }
+            sorted[j+1] = k;
+        }
+
+        return sorted;
+
+    }
+
+}